@@ -0,0 +1,119 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.config.SharedFrameEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * CPU for one room broadcast to 500 subscribers, from the payload the broker hands out to the bytes each
+ * connection writes:
+ * <ul>
+ *   <li>{@code sockjs}: /ws before, a STOMP frame per subscriber, then a SockJS {@code a[...]} frame per subscriber</li>
+ *   <li>{@code native}: /ws-native with Spring's default encoder, a STOMP frame per subscriber</li>
+ *   <li>{@code shared}: /ws-native with SharedFrameEncoder, one STOMP frame shared by all subscribers</li>
+ * </ul>
+ * With {@code deflate} every connection also compresses its frame, as permessage-deflate does (one compression
+ * context per connection, so this part cannot be shared).
+ * <p>
+ * {@code broadcast} includes the per-subscriber copies sharing can't remove (TextMessage decodes the frame to a
+ * String, the container encodes it back); {@code stompOnly} is the STOMP encoding alone, the part that is shared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastEncodingBenchmark {
+
+    @Param({"sockjs", "native", "shared"})
+    public String transport;
+
+    @Param({"false", "true"})
+    public boolean deflate;
+
+    @Param({"500"})
+    public int subscribers;
+
+    private static final byte[] PAYLOAD = ("{\"content\":\"hey everyone, see you all at the next match tonight\","
+            + "\"sender\":\"Alice\",\"type\":\"CHAT\",\"id\":null,\"timestamp\":1718036000123,\"seq\":171}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private StompEncoder encoder;
+    private final SockJsMessageCodec sockJsCodec = new Jackson2SockJsMessageCodec();
+    private Deflater[] deflaters;
+    private final byte[] compressed = new byte[4096];
+    private long messageId;
+
+    @Setup
+    public void setUp() {
+        encoder = "shared".equals(transport) ? new SharedFrameEncoder() : new StompEncoder();
+        if (deflate) {
+            deflaters = new Deflater[subscribers];
+            for (int i = 0; i < subscribers; i++) deflaters[i] = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (deflaters != null) for (Deflater deflater : deflaters) deflater.end();
+    }
+
+    @Benchmark
+    public long broadcast() {
+        // The broker hands every subscriber the same payload array; a fresh one per broadcast
+        byte[] payload = PAYLOAD.clone();
+        String id = "n1-" + (++messageId);
+
+        long written = 0;
+        for (int i = 0; i < subscribers; i++) {
+            byte[] frame = encoder.encode(headers(i, id), payload);
+
+            // TextMessage -> String, then the container writes it back out as UTF-8
+            String text = new String(frame, StandardCharsets.UTF_8);
+            byte[] wire = "sockjs".equals(transport)
+                    ? sockJsCodec.encode(text).getBytes(StandardCharsets.UTF_8)
+                    : text.getBytes(StandardCharsets.UTF_8);
+
+            written += deflate ? compress(deflaters[i], wire) : wire.length;
+        }
+        return written;
+    }
+
+    @Benchmark
+    public long stompOnly() {
+        byte[] payload = PAYLOAD.clone();
+        String id = "n1-" + (++messageId);
+
+        long written = 0;
+        for (int i = 0; i < subscribers; i++) written += encoder.encode(headers(i, id), payload).length;
+        return written;
+    }
+
+    private Map<String, Object> headers(int subscriber, String sharedId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/topic/a1b2c3d4");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setNativeHeader("content-type", "application/json");
+        accessor.setNativeHeader("message-id", "shared".equals(transport) ? sharedId
+                : "session" + subscriber + "-" + messageId);
+        return accessor.getMessageHeaders();
+    }
+
+    private int compress(Deflater deflater, byte[] input) {
+        deflater.setInput(input);
+        int total = 0;
+        int n;
+        while ((n = deflater.deflate(compressed, 0, compressed.length, Deflater.SYNC_FLUSH)) > 0) total += n;
+        return total;
+    }
+}
@@ -0,0 +1,136 @@
+package com.anonchat.backend.benchmark;
+
+import org.apache.commons.logging.LogFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The clientInboundChannel in both execution modes (spring.threads.virtual.enabled), with per-session receive
+ * order preserved as WebSocketConfig does. Each round, every session sends a short burst of messages whose
+ * handler blocks for one Redis round trip each; the {@code messages} column is the resulting message rate.
+ * <p>
+ * "platform" is Spring's default inbound pool (2 x cores threads); it tops out at threads / latency
+ * messages per second however many sessions there are. "virtual" runs a thread per message, so the rate grows
+ * with the number of sessions until the CPU or Redis is the limit. {@code outOfOrder} must stay 0 in both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final String SEQ_HEADER = "bench-seq";
+    private static final String SESSION_HEADER = "bench-session";
+
+    // More than one in flight per session, so receive order is actually exercised
+    private static final int BURST = 3;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"100", "1000", "5000"})
+    public int sessions;
+
+    // One blocking Redis call per message (INCR for the sequence, in sendMessage)
+    @Param({"500"})
+    public long redisLatencyMicros;
+
+    private ExecutorService virtualExecutor;
+    private ThreadPoolTaskExecutor platformExecutor;
+    private MessageChannel[] sessionChannels;
+    private long[] nextSeq;
+    private AtomicLongArray lastHandled;
+    private final AtomicLong outOfOrder = new AtomicLong();
+    private volatile CountDownLatch round;
+
+    @Setup
+    public void setUp() {
+        ExecutorSubscribableChannel channel;
+        if ("virtual".equals(mode)) {
+            virtualExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stomp-inbound-", 0).factory());
+            channel = new ExecutorSubscribableChannel(virtualExecutor);
+        } else {
+            // What Spring configures for clientInboundChannel when no executor is registered
+            platformExecutor = new ThreadPoolTaskExecutor();
+            platformExecutor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+            platformExecutor.setAllowCoreThreadTimeOut(true);
+            platformExecutor.setThreadNamePrefix("clientInboundChannel-");
+            platformExecutor.initialize();
+            channel = new ExecutorSubscribableChannel(platformExecutor);
+        }
+
+        long latencyNanos = TimeUnit.MICROSECONDS.toNanos(redisLatencyMicros);
+        channel.subscribe(message -> {
+            int session = (Integer) message.getHeaders().get(SESSION_HEADER);
+            long seq = (Long) message.getHeaders().get(SEQ_HEADER);
+            if (lastHandled.getAndSet(session, seq) != seq - 1) outOfOrder.incrementAndGet();
+
+            LockSupport.parkNanos(latencyNanos);
+            round.countDown();
+        });
+
+        // preserveReceiveOrder: one ordered decorator per WebSocket session
+        OrderedMessageChannelDecorator.configureInterceptor(channel, true);
+        sessionChannels = new MessageChannel[sessions];
+        for (int i = 0; i < sessions; i++) {
+            sessionChannels[i] = new OrderedMessageChannelDecorator(channel, LogFactory.getLog(getClass()));
+        }
+        nextSeq = new long[sessions];
+        lastHandled = new AtomicLongArray(sessions);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (virtualExecutor != null) virtualExecutor.shutdownNow();
+        if (platformExecutor != null) platformExecutor.shutdown();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long messages;
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Ordering {
+        public long outOfOrder;
+    }
+
+    @Benchmark
+    public void burstPerSession(Counters counters, Ordering ordering) throws InterruptedException {
+        round = new CountDownLatch(sessions * BURST);
+        for (int n = 0; n < BURST; n++) {
+            for (int i = 0; i < sessions; i++) {
+                sessionChannels[i].send(message(i, ++nextSeq[i]));
+            }
+        }
+        round.await();
+
+        counters.messages += (long) sessions * BURST;
+        ordering.outOfOrder = outOfOrder.get();
+    }
+
+    private static Message<byte[]> message(int session, long seq) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("session-" + session);
+        accessor.setHeader(SESSION_HEADER, session);
+        accessor.setHeader(SEQ_HEADER, seq);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,71 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.service.FilterService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Old engine (one regex replaceAll per dictionary word) vs the Aho-Corasick engine behind FilterService.sanitize.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterEngineBenchmark {
+
+    @Param({"4", "1000", "5000", "20000"})
+    public int dictionarySize;
+
+    private static final String MESSAGE =
+            "hey everyone, that last round was honestly kind of stupid but the team played well overall";
+
+    private List<Pattern> legacyPatterns;
+    private FilterService filterService;
+
+    @Setup
+    public void setUp() {
+        Map<String, Integer> dictionary = dictionary(dictionarySize);
+
+        legacyPatterns = dictionary.keySet().stream()
+                .map(word -> Pattern.compile("\\b" + Pattern.quote(word) + "\\b", Pattern.CASE_INSENSITIVE))
+                .toList();
+
+        filterService = new FilterService("", 1, 0);
+        filterService.swapDictionary(dictionary);
+    }
+
+    @Benchmark
+    public String legacyRegex() {
+        String sanitized = MESSAGE;
+        for (Pattern pattern : legacyPatterns) {
+            sanitized = pattern.matcher(sanitized)
+                    .replaceAll(match -> "*".repeat(match.group().length()));
+        }
+        return sanitized;
+    }
+
+    @Benchmark
+    public String ahoCorasick() {
+        return filterService.sanitize(MESSAGE);
+    }
+
+    /**
+     * The four production words plus random filler words, seeded so runs are comparable.
+     */
+    static Map<String, Integer> dictionary(int size) {
+        Map<String, Integer> words = new HashMap<>(Map.of("stupid", 1, "idiot", 1, "dumb", 1, "ass", 2));
+        Random random = new Random(42);
+        while (words.size() < size) {
+            int length = 4 + random.nextInt(7);
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(26)));
+            words.putIfAbsent(sb.toString(), 1 + random.nextInt(3));
+        }
+        return words;
+    }
+}
@@ -0,0 +1,43 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.service.FilterService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FilterService as ChatController calls it: sanitize on every message, isValidUsername on every join.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterServiceBenchmark {
+
+    private static final String CLEAN = "hey everyone, see you all at the next match tonight";
+    private static final String DIRTY = "that was a stupid move, you dumb idiot";
+
+    private final FilterService filterService = new FilterService("", 1, 0);
+
+    @Benchmark
+    public String sanitizeClean() {
+        return filterService.sanitize(CLEAN);
+    }
+
+    @Benchmark
+    public String sanitizeDirty() {
+        return filterService.sanitize(DIRTY);
+    }
+
+    @Benchmark
+    public boolean isValidUsernameAllowed() {
+        return filterService.isValidUsername("Alice_the_Great");
+    }
+
+    @Benchmark
+    public boolean isValidUsernameReserved() {
+        return filterService.isValidUsername("sup3r_4dm1n");
+    }
+}
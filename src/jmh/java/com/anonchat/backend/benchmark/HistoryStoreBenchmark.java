@@ -0,0 +1,113 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.config.RedisConfig;
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import com.anonchat.backend.service.HistoryMigrator;
+import com.anonchat.backend.service.HistoryStore;
+import com.anonchat.backend.service.ListHistoryStore;
+import com.anonchat.backend.service.StreamHistoryStore;
+import com.anonchat.backend.util.ChatMessageCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * List vs stream history backend against a real Redis: numbering and appending a write-behind batch
+ * (one sequence INCR per message, as ChatService does, plus the append), reading the newest page,
+ * and reading a full room. Needs Redis on localhost:6379 (override with -Dredis.host / -Dredis.port).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryStoreBenchmark {
+
+    private static final int HISTORY_LIMIT = 1000;
+
+    @Param({"list", "stream"})
+    public String backend;
+
+    @Param({"1", "20"})
+    public int batchSize;
+
+    private LettuceConnectionFactory connectionFactory;
+    private HistoryStore store;
+    private String roomId;
+    private List<ChatMessage> batch;
+
+    @Setup
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        RedisTemplate<String, Object> template = new RedisConfig().redisTemplate(connectionFactory, "compact",
+                ChatMessageCodec.LATEST_VERSION);
+        template.afterPropertiesSet();
+
+        store = "list".equals(backend)
+                ? new ListHistoryStore(template, new HistoryMigrator(template, "compact", false))
+                : new StreamHistoryStore(template);
+
+        roomId = "bench-" + backend + "-" + batchSize;
+        store.delete(roomId);
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) batch.add(message(i));
+
+        // Start from a full room so trimming is part of every append
+        List<ChatMessage> fill = new ArrayList<>(HISTORY_LIMIT);
+        for (int i = 0; i < HISTORY_LIMIT; i++) fill.add(message(i));
+        number(fill);
+        store.append(roomId, fill);
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.delete(roomId);
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public void append() {
+        number(batch);
+        store.append(roomId, batch);
+    }
+
+    @Benchmark
+    public HistoryPage readNewestPage() {
+        return store.readPage(roomId, 50, null, null);
+    }
+
+    @Benchmark
+    public HistoryPage readAfterCursor() {
+        return store.readPage(roomId, 50, null, store.latestSequence(roomId) - 100);
+    }
+
+    @Benchmark
+    public List<Object> readAll() {
+        return store.readAll(roomId);
+    }
+
+    private void number(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) message.setSeq(store.allocateSequences(roomId, 1));
+    }
+
+    private static ChatMessage message(int i) {
+        return ChatMessage.builder()
+                .type(ChatMessage.MessageType.CHAT)
+                .sender("user" + (i % 50))
+                .content("message number " + i + " with a typical amount of chat text in it")
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+}
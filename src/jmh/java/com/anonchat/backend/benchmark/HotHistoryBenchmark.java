@@ -0,0 +1,99 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.config.RedisConfig;
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import com.anonchat.backend.service.HistoryMigrator;
+import com.anonchat.backend.service.HistoryStore;
+import com.anonchat.backend.service.HotHistoryTier;
+import com.anonchat.backend.service.ListHistoryStore;
+import com.anonchat.backend.util.ChatMessageCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History reads of a full active room (1000 messages, compact codec, list backend) the way ChatService does
+ * them: {@code redis} reads and decodes from the store, {@code memory} checks the room counter (one small
+ * round trip) and answers from the hot history tier. Needs Redis on localhost:6379 (override with
+ * -Dredis.host / -Dredis.port).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotHistoryBenchmark {
+
+    private static final int HISTORY_LIMIT = 1000;
+
+    @Param({"redis", "memory"})
+    public String source;
+
+    private LettuceConnectionFactory connectionFactory;
+    private HistoryStore store;
+    private HotHistoryTier tier;
+    private String roomId;
+
+    @Setup
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        RedisTemplate<String, Object> template = new RedisConfig().redisTemplate(connectionFactory, "compact",
+                ChatMessageCodec.LATEST_VERSION);
+        template.afterPropertiesSet();
+
+        store = new ListHistoryStore(template, new HistoryMigrator(template, "compact", false));
+        tier = new HotHistoryTier(true, 64L << 20, 600_000, 0);
+
+        roomId = "bench-hot-" + source;
+        store.delete(roomId);
+
+        // Written through, as saveMessage does
+        List<ChatMessage> fill = new ArrayList<>(HISTORY_LIMIT);
+        for (int i = 0; i < HISTORY_LIMIT; i++) {
+            ChatMessage message = message(i);
+            message.setSeq(store.allocateSequences(roomId, 1));
+            tier.append(roomId, message);
+            fill.add(message);
+        }
+        store.append(roomId, fill);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tier.shutdown();
+        store.delete(roomId);
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public List<Object> readAll() {
+        if ("memory".equals(source)) return tier.readAll(roomId, store.latestSequence(roomId));
+        return store.readAll(roomId);
+    }
+
+    @Benchmark
+    public HistoryPage readNewestPage() {
+        if ("memory".equals(source)) return tier.readPage(roomId, store.latestSequence(roomId), 50, null, null);
+        return store.readPage(roomId, 50, null, null);
+    }
+
+    private static ChatMessage message(int i) {
+        return ChatMessage.builder()
+                .type(ChatMessage.MessageType.CHAT)
+                .sender("user" + (i % 50))
+                .content("message number " + i + " with a typical amount of chat text in it")
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+}
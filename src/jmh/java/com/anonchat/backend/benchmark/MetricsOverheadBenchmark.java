@@ -0,0 +1,116 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.service.FilterService;
+import com.anonchat.backend.service.RateLimitService;
+import com.anonchat.backend.service.RoomMessageRates;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the hot-path metrics: the same calls with no MeterRegistry ("off", as before) and with a Prometheus
+ * registry publishing percentile histograms, configured like application.properties ("on").
+ * <p>
+ * {@code saveMessage} is only what ChatService.saveMessage adds around its Redis round trip (the timer and the
+ * per-room rate), so "on" is the absolute cost per message; the others can be compared between modes directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsOverheadBenchmark {
+
+    private static final String MESSAGE = "hey everyone, see you all at the next match tonight";
+    private static final int IP_COUNT = 10_000;
+    private static final int ROOM_COUNT = 1_000;
+
+    @Param({"off", "on"})
+    public String metrics;
+
+    private FilterService filterService;
+    private RateLimitService rateLimitService;
+    private RoomMessageRates roomMessageRates;
+    private Timer saveTimer;
+    private String[] ips;
+    private String[] rooms;
+
+    @Setup
+    public void setUp() {
+        filterService = new FilterService("", 1, 0);
+        rateLimitService = new RateLimitService(100_000, 0);
+
+        MeterRegistry registry;
+        if ("on".equals(metrics)) {
+            registry = prometheusRegistry();
+            filterService.setMeterRegistry(registry);
+            rateLimitService.setMeterRegistry(registry);
+            saveTimer = Timer.builder("anonchat.chat.save").register(registry);
+        } else {
+            registry = new CompositeMeterRegistry();   // No registries behind it: nothing recorded
+        }
+        roomMessageRates = new RoomMessageRates(registry, 10, 10_000);
+
+        ips = new String[IP_COUNT];
+        for (int i = 0; i < IP_COUNT; i++) {
+            ips[i] = "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF);
+        }
+        rooms = new String[ROOM_COUNT];
+        for (int i = 0; i < ROOM_COUNT; i++) rooms[i] = Integer.toHexString(0x10000000 + i * 7919);
+    }
+
+    @TearDown
+    public void tearDown() {
+        roomMessageRates.shutdown();
+    }
+
+    @Benchmark
+    public String sanitize() {
+        return filterService.sanitize(MESSAGE);
+    }
+
+    @Benchmark
+    public boolean allowRequest() {
+        return rateLimitService.allowRequest(ips[ThreadLocalRandom.current().nextInt(IP_COUNT)]);
+    }
+
+    @Benchmark
+    public long saveMessage() {
+        Timer timer = saveTimer;
+        if (timer == null) return 0;
+
+        long start = System.nanoTime();
+        roomMessageRates.record(rooms[ThreadLocalRandom.current().nextInt(ROOM_COUNT)]);
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return start;
+    }
+
+    private static MeterRegistry prometheusRegistry() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().startsWith("anonchat")) return config;
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .minimumExpectedValue((double) Duration.ofNanos(1_000).toNanos())
+                        .maximumExpectedValue((double) Duration.ofSeconds(10).toNanos())
+                        .build()
+                        .merge(config);
+            }
+        });
+        return registry;
+    }
+}
@@ -0,0 +1,45 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.service.PdfService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PdfService.exportChatToPdf for rooms of 10, 100 and 1000 messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfExportBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int messages;
+
+    private final PdfService pdfService = new PdfService(4, 0);
+    private List<Object> history;
+
+    @Setup
+    public void setUp() {
+        history = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            history.add(ChatMessage.builder()
+                    .type(i % 20 == 0 ? ChatMessage.MessageType.JOIN : ChatMessage.MessageType.CHAT)
+                    .sender("user" + (i % 25))
+                    .content(i % 20 == 0 ? "joined the room." : "message " + i + " about tonight's plans")
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public ByteArrayInputStream export() {
+        return pdfService.exportChatToPdf("room1", history);
+    }
+}
@@ -0,0 +1,44 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.service.RateLimitService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimitService.allowRequest under contention: 8 threads on one hot IP, and 8 threads spread over many IPs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class RateLimitBenchmark {
+
+    private static final int IP_COUNT = 10_000;
+
+    private RateLimitService rateLimitService;
+    private String[] ips;
+
+    @Setup
+    public void setUp() {
+        rateLimitService = new RateLimitService(100_000, 0);
+        ips = new String[IP_COUNT];
+        for (int i = 0; i < IP_COUNT; i++) {
+            ips[i] = "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF);
+        }
+    }
+
+    @Benchmark
+    public boolean sameIp() {
+        return rateLimitService.allowRequest("10.0.0.1");
+    }
+
+    @Benchmark
+    public boolean manyIps() {
+        return rateLimitService.allowRequest(ips[ThreadLocalRandom.current().nextInt(IP_COUNT)]);
+    }
+}
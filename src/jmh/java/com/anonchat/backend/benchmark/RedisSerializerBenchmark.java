@@ -0,0 +1,58 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.config.RedisConfig;
+import com.anonchat.backend.model.ChatMessage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode of a ChatMessage with the value serializer configured in RedisConfig:
+ * "json" is the typed JSON used before the compact codec, "compact" is what is written now.
+ * The stored size per message is reported in the {@code bytes} column of {@link Size}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisSerializerBenchmark {
+
+    @Param({"json", "compact"})
+    public String codec;
+
+    private RedisSerializer<Object> serializer;
+    private ChatMessage message;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        serializer = "json".equals(codec) ? RedisConfig.jsonSerializer() : RedisConfig.valueSerializer(true);
+        message = ChatMessage.builder()
+                .type(ChatMessage.MessageType.CHAT)
+                .sender("Alice")
+                .content("hey everyone, see you all at the next match tonight")
+                .build();
+        encoded = serializer.serialize(message);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Size {
+        public long bytes;
+    }
+
+    @Benchmark
+    public byte[] encode(Size size) {
+        byte[] bytes = serializer.serialize(message);
+        size.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+}
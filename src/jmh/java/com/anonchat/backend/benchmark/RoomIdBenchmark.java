@@ -0,0 +1,73 @@
+package com.anonchat.backend.benchmark;
+
+import com.anonchat.backend.service.RoomIdAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RoomIdAllocator: ID generation single-threaded and with 8 concurrent callers, and room creations per second
+ * with 8 concurrent callers, reserving each ID directly ({@code poolSize=0}) or taking it from the pre-reserved
+ * pool. Creations need Redis on localhost:6379 (override with -Dredis.host / -Dredis.port); the created names
+ * expire with the normal room TTL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomIdBenchmark {
+
+    // ID generation never touches Redis
+    private final RoomIdAllocator generator = new RoomIdAllocator(null, 0, 100);
+
+    @Benchmark
+    public String generate() {
+        return generator.generateRoomId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String generateContended() {
+        return generator.generateRoomId();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Creation {
+
+        @Param({"0", "4096"})
+        public int poolSize;
+
+        private LettuceConnectionFactory connectionFactory;
+        RoomIdAllocator allocator;
+
+        @Setup
+        public void setUp() throws InterruptedException {
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                    System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+
+            allocator = new RoomIdAllocator(new StringRedisTemplate(connectionFactory), poolSize, 10);
+            allocator.start();
+            // Start from a full pool, as a node does once it has been up for a moment
+            while (poolSize > 0 && (int) allocator.stats().get("pooled") < poolSize) Thread.sleep(10);
+        }
+
+        @TearDown
+        public void tearDown() {
+            allocator.shutdown();
+            connectionFactory.destroy();
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String create(Creation creation) {
+        return creation.allocator.allocate("bench");
+    }
+}
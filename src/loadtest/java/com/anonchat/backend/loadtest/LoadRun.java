@@ -0,0 +1,276 @@
+package com.anonchat.backend.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One execution of a scenario against a running server: connect and join every client (spread over the ramp),
+ * send for the scenario's duration once everyone is in, let in-flight messages arrive, and summarize.
+ * <p>
+ * Send times travel inside the message content, encoded in letters that can't spell a dictionary word (the
+ * server runs every message through the profanity filter). Senders and receivers share this JVM's clock, so
+ * fan-out latency is measured end to end: from before the SEND frame is written to after the MESSAGE frame is read.
+ */
+@Slf4j
+final class LoadRun {
+
+    private static final String MARK = "lt ";
+    private static final String DIGITS = "cfghjklmnqrvwxyz";
+
+    // After the last connect attempt, how long stragglers get to finish joining
+    private static final long JOIN_GRACE_MS = 30_000;
+    // After the last send, how long in-flight messages get to arrive
+    private static final long DRAIN_MS = 3_000;
+
+    private final Scenario scenario;
+    private final String target;
+    private final ObjectMapper objectMapper;
+    private final long origin = System.nanoTime();
+    private final String runId = Long.toString(System.currentTimeMillis() % 1_000_000, 36);
+
+    private final LatencyHistogram joinLatency = new LatencyHistogram();
+    private final LatencyHistogram fanOutLatency = new LatencyHistogram();
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final AtomicLongArray sentPerRoom;
+
+    private volatile boolean finishing;
+
+    LoadRun(Scenario scenario, String target, ObjectMapper objectMapper) {
+        this.scenario = scenario;
+        this.target = target;
+        this.objectMapper = objectMapper;
+        this.sentPerRoom = new AtomicLongArray(scenario.rooms);
+    }
+
+    Map<String, Object> execute() throws InterruptedException {
+        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+        WebSocketClient client = scenario.sockJs()
+                ? new SockJsClient(List.of(new WebSocketTransport(webSocketClient)))
+                : webSocketClient;
+        WebSocketStompClient stompClient = new WebSocketStompClient(client);
+        String url = scenario.sockJs() ? target + "/ws" : target.replaceFirst("^http", "ws") + "/ws-native";
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4, r -> {
+            Thread t = new Thread(r, "loadtest-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        List<SimulatedClient> clients = plan();
+        Instant startedAt = Instant.now();
+
+        try {
+            stompClient.start();
+
+            // Join phase
+            log.info("Connecting {} clients to {} over {}s", clients.size(), url, scenario.rampSeconds);
+            long rampNanos = (long) (scenario.rampSeconds * 1e9);
+            for (int i = 0; i < clients.size(); i++) {
+                SimulatedClient simulated = clients.get(i);
+                long delay = clients.size() == 1 ? 0 : rampNanos * i / (clients.size() - 1);
+                scheduler.schedule(() -> simulated.connect(stompClient, url, scenario.distinctIps),
+                        delay, TimeUnit.NANOSECONDS);
+            }
+            awaitJoins(clients, rampNanos / 1_000_000 + JOIN_GRACE_MS);
+
+            int[] members = new int[scenario.rooms];
+            for (SimulatedClient simulated : clients) if (simulated.joined()) members[simulated.room]++;
+            log.info("{} of {} clients joined; sending for {}s", joined.sum(), clients.size(), scenario.durationSeconds);
+
+            // Send phase
+            List<ScheduledFuture<?>> senders = new ArrayList<>();
+            if (scenario.sendRate > 0) {
+                long periodNanos = (long) (1e9 / scenario.sendRate);
+                for (SimulatedClient simulated : clients) {
+                    if (!simulated.sender || !simulated.joined()) continue;
+                    long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos);
+                    senders.add(scheduler.scheduleAtFixedRate(simulated::sendChat, initialDelay, periodNanos,
+                            TimeUnit.NANOSECONDS));
+                }
+            }
+            long sendStart = System.nanoTime();
+            Thread.sleep((long) (scenario.durationSeconds * 1000));
+            senders.forEach(future -> future.cancel(false));
+            double sendSeconds = (System.nanoTime() - sendStart) / 1e9;
+
+            Thread.sleep(DRAIN_MS);
+            return report(startedAt, clients.size(), members, sendSeconds);
+        } finally {
+            finishing = true;
+            clients.forEach(SimulatedClient::disconnect);
+            stompClient.stop();
+            scheduler.shutdownNow();
+        }
+    }
+
+    // Room and role of every client; deterministic for a given scenario
+    private List<SimulatedClient> plan() {
+        Random random = new Random(42);
+        int hot = (int) Math.round(scenario.clients * scenario.hotRoomShare);
+        boolean[] monitored = new boolean[scenario.rooms];
+
+        List<SimulatedClient> clients = new ArrayList<>(scenario.clients);
+        for (int i = 0; i < scenario.clients; i++) {
+            int room;
+            if (i < hot || scenario.rooms == 1) room = 0;
+            else if (hot > 0) room = 1 + (i - hot) % (scenario.rooms - 1);
+            else room = i % scenario.rooms;
+
+            boolean sender = random.nextDouble() >= scenario.idleShare;
+            boolean monitor = !monitored[room];
+            monitored[room] = true;
+            clients.add(new SimulatedClient(this, i, room, "lt" + runId + "-" + room, sender, monitor));
+        }
+        return clients;
+    }
+
+    private void awaitJoins(List<SimulatedClient> clients, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long lastLog = 0;
+        while (System.currentTimeMillis() < deadline && joined.sum() + connectFailures.sum() < clients.size()) {
+            if (System.currentTimeMillis() - lastLog >= 5_000) {
+                lastLog = System.currentTimeMillis();
+                log.info("  connected {}, joined {}, failed {}", connected.sum(), joined.sum(), connectFailures.sum());
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private Map<String, Object> report(Instant startedAt, int attempted, int[] members, double sendSeconds) {
+        long sent = 0;
+        long expected = 0;
+        for (int room = 0; room < members.length; room++) {
+            sent += sentPerRoom.get(room);
+            expected += sentPerRoom.get(room) * members[room];
+        }
+        long deliveredCount = delivered.sum();
+        long errorCount = errors.sum() + connectFailures.sum();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("scenario", objectMapper.convertValue(scenario, Map.class));
+        report.put("target", target);
+        report.put("startedAt", startedAt.toString());
+
+        Map<String, Object> connections = new LinkedHashMap<>();
+        connections.put("attempted", attempted);
+        connections.put("connected", connected.sum());
+        connections.put("joined", joined.sum());
+        connections.put("failed", connectFailures.sum());
+        report.put("connections", connections);
+        report.put("joinLatencyMs", joinLatency.summaryMillis());
+        report.put("fanOutLatencyMs", fanOutLatency.summaryMillis());
+
+        Map<String, Object> messages = new LinkedHashMap<>();
+        messages.put("sent", sent);
+        messages.put("delivered", deliveredCount);
+        messages.put("expectedDeliveries", expected);
+        messages.put("deliveryRatio", expected == 0 ? 0 : round((double) deliveredCount / expected));
+        messages.put("sentPerSecond", round(sent / sendSeconds));
+        messages.put("deliveredPerSecond", round(deliveredCount / sendSeconds));
+        report.put("messages", messages);
+
+        report.put("errors", errorCount);
+        report.put("errorRate", round((double) errorCount / Math.max(1, sent + attempted)));
+        report.put("rateLimited", rateLimited.sum());
+        report.put("rateLimitRate", sent == 0 ? 0 : round((double) rateLimited.sum() / sent));
+        return report;
+    }
+
+    // Callbacks from SimulatedClient
+
+    void connected() {
+        connected.increment();
+    }
+
+    void connectFailed(Throwable ex) {
+        connectFailures.increment();
+        log.debug("Connect failed: {}", ex.toString());
+    }
+
+    void joined(long latencyNanos) {
+        joined.increment();
+        joinLatency.recordNanos(latencyNanos);
+    }
+
+    void sent(int room) {
+        sentPerRoom.incrementAndGet(room);
+    }
+
+    void delivered(long sentAt) {
+        delivered.increment();
+        fanOutLatency.recordNanos(System.nanoTime() - origin - sentAt);
+    }
+
+    void rateLimited() {
+        rateLimited.increment();
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    boolean finishing() {
+        return finishing;
+    }
+
+    String stampedContent() {
+        StringBuilder content = new StringBuilder(MARK);
+        long now = System.nanoTime() - origin;
+        for (int shift = 60; shift >= 0; shift -= 4) content.append(DIGITS.charAt((int) (now >>> shift & 0xF)));
+        content.append(' ');
+        while (content.length() < scenario.messageBytes) content.append('z');
+        return content.toString();
+    }
+
+    // Send time (nanos since origin) from a load-test message, or -1 for anything else
+    long sentAt(String content) {
+        if (!content.startsWith(MARK) || content.length() < MARK.length() + 16) return -1;
+
+        long value = 0;
+        for (int i = MARK.length(); i < MARK.length() + 16; i++) {
+            int digit = DIGITS.indexOf(content.charAt(i));
+            if (digit < 0) return -1;
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    byte[] json(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    JsonNode parse(byte[] payload) {
+        try {
+            return objectMapper.readTree(payload);
+        } catch (IOException e) {
+            errors.increment();
+            return null;
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
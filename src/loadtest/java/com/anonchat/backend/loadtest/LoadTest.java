@@ -0,0 +1,151 @@
+package com.anonchat.backend.loadtest;
+
+import com.anonchat.backend.BackendApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * STOMP load generator.
+ * <pre>
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--scenario=hot-room --clients=2000"
+ * </pre>
+ * Options:
+ * <ul>
+ *   <li>{@code --scenario=<name|file.json>}: steady (default), join-storm, hot-room, idle-rooms, or a JSON file
+ *       with the fields of {@link Scenario}</li>
+ *   <li>{@code --<field>=<value>}: override any scenario field</li>
+ *   <li>{@code --target=http://host:port}: load a running server instead of starting one</li>
+ *   <li>{@code --redis=host:port}: start the app against this Redis instead of a throwaway container</li>
+ *   <li>{@code --threads=platform|virtual|both}: execution mode of the started app
+ *       ({@code spring.threads.virtual.enabled}); {@code both} runs the scenario once in each, one report per mode</li>
+ *   <li>{@code --report-dir=<dir>}: where the JSON report goes (target/loadtest)</li>
+ * </ul>
+ */
+@Slf4j
+public final class LoadTest {
+
+    private static final String REDIS_IMAGE = "redis:7-alpine";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String scenarioName = options.getOrDefault("scenario", "steady");
+        String target = options.remove("target");
+        String redis = options.remove("redis");
+        List<String> modes = modes(options.getOrDefault("threads", "platform"));
+        Path reportDir = Path.of(options.getOrDefault("report-dir", "target/loadtest"));
+        options.remove("scenario");
+        options.remove("threads");
+        options.remove("report-dir");
+        if (target != null && modes.size() > 1)
+            throw new IllegalArgumentException("--threads=both starts the app itself; it can't be used with --target");
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Scenario scenario = Scenario.load(scenarioName, options, objectMapper);
+
+        GenericContainer<?> redisContainer = null;
+        int exitCode = 0;
+        try {
+            String redisHost = null;
+            int redisPort = 0;
+            if (target == null) {
+                if (redis == null) {
+                    redisContainer = new GenericContainer<>(DockerImageName.parse(REDIS_IMAGE)).withExposedPorts(6379);
+                    redisContainer.start();
+                    redisHost = redisContainer.getHost();
+                    redisPort = redisContainer.getMappedPort(6379);
+                } else {
+                    redisHost = redis.substring(0, redis.lastIndexOf(':'));
+                    redisPort = Integer.parseInt(redis.substring(redis.lastIndexOf(':') + 1));
+                }
+            }
+
+            // One run per execution mode, each against a freshly started app on the same Redis
+            for (String mode : modes) {
+                ConfigurableApplicationContext app = null;
+                try {
+                    String runTarget = target;
+                    if (runTarget == null) {
+                        app = new SpringApplicationBuilder(BackendApplication.class)
+                                .properties("server.port=0",
+                                        "spring.data.redis.host=" + redisHost,
+                                        "spring.data.redis.port=" + redisPort,
+                                        "spring.threads.virtual.enabled=" + mode.equals("virtual"),
+                                        // Trust X-Forwarded-For from localhost, so each simulated client has its own address
+                                        "server.forward-headers-strategy=native")
+                                .run();
+                        runTarget = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                    }
+
+                    Map<String, Object> report = new LinkedHashMap<>();
+                    // A --target server runs in whatever mode it was started with
+                    report.put("threads", target == null ? mode : "unknown");
+                    report.putAll(new LoadRun(scenario, runTarget, objectMapper).execute());
+                    writeReport(report, reportDir, scenario.name + (target == null ? "-" + mode : ""), objectMapper);
+                } finally {
+                    if (app != null) app.close();
+                }
+            }
+        } catch (Exception e) {
+            log.error("Load test failed", e);
+            exitCode = 1;
+        } finally {
+            if (redisContainer != null) redisContainer.stop();
+        }
+
+        // WebSocket client and container threads would otherwise keep the JVM alive
+        System.exit(exitCode);
+    }
+
+    private static void writeReport(Map<String, Object> report, Path reportDir, String name,
+                                    ObjectMapper objectMapper) throws IOException {
+        Files.createDirectories(reportDir);
+        Path file = reportDir.resolve(name + "-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        objectMapper.writer(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+
+        log.info("Threads:              {}", report.get("threads"));
+        log.info("Join latency (ms):    {}", report.get("joinLatencyMs"));
+        log.info("Fan-out latency (ms): {}", report.get("fanOutLatencyMs"));
+        log.info("Messages:             {}", report.get("messages"));
+        log.info("Errors: {} (rate {}), rate-limited: {} (rate {})", report.get("errors"),
+                report.get("errorRate"), report.get("rateLimited"), report.get("rateLimitRate"));
+        log.info("Report: {}", file.toAbsolutePath());
+    }
+
+    private static List<String> modes(String threads) {
+        return switch (threads) {
+            case "platform", "virtual" -> List.of(threads);
+            case "both" -> List.of("platform", "virtual");
+            default -> throw new IllegalArgumentException("--threads must be platform, virtual or both: " + threads);
+        };
+    }
+
+    // "--key=value" pairs; a bare "--flag" means "true"
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,71 @@
+package com.anonchat.backend.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * What a load run does, read from JSON: a built-in scenario from {@code scenarios/<name>.json} on the classpath,
+ * or a file path. Any field can be overridden from the command line ({@code --clients=5000}).
+ */
+public class Scenario {
+
+    public String name = "custom";
+
+    // "websocket" (/ws-native) or "sockjs" (/ws, WebSocket transport)
+    public String transport = "websocket";
+
+    public int clients = 100;
+    public int rooms = 10;
+
+    // Share of clients put in the first room; the rest are spread evenly over the others
+    public double hotRoomShare = 0;
+
+    // Share of clients that join and listen but never send
+    public double idleShare = 0;
+
+    // Connections are spread over this long; 0 opens them all at once (a join storm)
+    public double rampSeconds = 5;
+
+    // Messages per second per sending client, and how long to send for once everyone has joined
+    public double sendRate = 0.2;
+    public double durationSeconds = 30;
+
+    public int messageBytes = 100;
+
+    // One X-Forwarded-For address per client, so the per-IP rate limit applies per client as in production;
+    // false puts every client behind one address
+    public boolean distinctIps = true;
+
+    static Scenario load(String nameOrPath, Map<String, String> overrides, ObjectMapper objectMapper) throws IOException {
+        Scenario scenario = new Scenario();
+
+        Path path = Path.of(nameOrPath);
+        if (Files.isRegularFile(path)) {
+            objectMapper.readerForUpdating(scenario).readValue(path.toFile());
+        } else {
+            try (InputStream in = Scenario.class.getResourceAsStream("/scenarios/" + nameOrPath + ".json")) {
+                if (in == null) throw new IllegalArgumentException("No scenario file or built-in scenario: " + nameOrPath);
+                objectMapper.readerForUpdating(scenario).readValue(in);
+            }
+        }
+
+        if (!overrides.isEmpty()) {
+            ObjectNode node = objectMapper.createObjectNode();
+            overrides.forEach(node::put);
+            objectMapper.readerForUpdating(scenario).readValue(node);
+        }
+
+        if (scenario.clients < 1 || scenario.rooms < 1) throw new IllegalArgumentException("clients and rooms must be positive");
+        return scenario;
+    }
+
+    boolean sockJs() {
+        return "sockjs".equalsIgnoreCase(transport);
+    }
+}
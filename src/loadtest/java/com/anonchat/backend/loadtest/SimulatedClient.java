@@ -0,0 +1,148 @@
+package com.anonchat.backend.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * One chat user: connects, subscribes to its room, joins with addUser, then (unless idle) sends at the
+ * scenario's rate. Every CHAT message it receives from the load run counts as one fan-out delivery.
+ */
+final class SimulatedClient extends StompSessionHandlerAdapter {
+
+    final int room;
+    final String roomId;
+    final boolean sender;
+
+    // Counts the room's rate-limit notices, which every member receives
+    final boolean monitor;
+
+    private final LoadRun run;
+    private final int index;
+    private final String username;
+
+    private volatile StompSession session;
+    private volatile long connectStartedAt;
+    private volatile boolean joined;
+
+    SimulatedClient(LoadRun run, int index, int room, String roomId, boolean sender, boolean monitor) {
+        this.run = run;
+        this.index = index;
+        this.room = room;
+        this.roomId = roomId;
+        this.sender = sender;
+        this.monitor = monitor;
+        this.username = "u" + index;   // No reserved names, no dictionary words
+    }
+
+    void connect(WebSocketStompClient stompClient, String url, boolean distinctIp) {
+        connectStartedAt = System.nanoTime();
+
+        WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+        if (distinctIp) handshakeHeaders.add("X-Forwarded-For", "10." + (index >> 16 & 0xFF) + "."
+                + (index >> 8 & 0xFF) + "." + (index & 0xFF));
+
+        stompClient.connectAsync(url, handshakeHeaders, new StompHeaders(), this)
+                .whenComplete((connected, ex) -> {
+                    if (ex != null) run.connectFailed(ex);
+                });
+    }
+
+    boolean joined() {
+        return joined;
+    }
+
+    void sendChat() {
+        if (!joined) return;
+        if (send("/app/chat/" + roomId + "/sendMessage",
+                Map.of("sender", username, "type", "CHAT", "content", run.stampedContent()))) {
+            run.sent(room);
+        }
+    }
+
+    void disconnect() {
+        StompSession current = session;
+        if (current != null && current.isConnected()) {
+            try {
+                current.disconnect();
+            } catch (RuntimeException ignored) {
+                // Already gone
+            }
+        }
+    }
+
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        this.session = session;
+        run.connected();
+
+        // Same socket, handled in order: the subscription exists before the JOIN is broadcast
+        session.subscribe("/topic/" + roomId, this);
+        send("/app/chat/" + roomId + "/addUser", Map.of("sender", username));
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        return byte[].class;
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        // Frames outside a subscription are ERROR frames
+        if (headers.getSubscription() == null) {
+            run.error();
+            return;
+        }
+
+        JsonNode message = run.parse((byte[]) payload);
+        if (message == null) return;
+
+        String type = message.path("type").asText();
+        String sender = message.path("sender").asText();
+        if ("JOIN".equals(type) || "PRESENCE".equals(type)) {
+            // In a join storm the server announces joins as one PRESENCE summary instead of a JOIN each
+            if (!joined && ("PRESENCE".equals(type) || username.equals(sender))) {
+                joined = true;
+                run.joined(System.nanoTime() - connectStartedAt);
+            }
+        } else if ("CHAT".equals(type)) {
+            long sentAt = run.sentAt(message.path("content").asText());
+            if (sentAt >= 0) run.delivered(sentAt);
+            else if (monitor && "System".equals(sender)) run.rateLimited();
+        }
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload,
+                                Throwable exception) {
+        run.error();
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        if (!run.finishing()) run.error();
+    }
+
+    private boolean send(String destination, Map<String, String> body) {
+        StompSession current = session;
+        if (current == null) return false;
+        try {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination(destination);
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            current.send(headers, run.json(body));
+            return true;
+        } catch (RuntimeException ex) {
+            run.error();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.anonchat.backend.config;
+
+import com.anonchat.backend.service.PresenceService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gauges for the STOMP side of a node: work waiting on the inbound and outbound channels, WebSocket sessions,
+ * rooms with local members and the per-session send queues (OutboundBackpressure).
+ * <p>
+ * Channel depth is counted by an interceptor on each channel (registered last, so messages held back by
+ * other interceptors are not counted): one task per subscribed handler when a message is sent, one started
+ * and one finished per handler call. It works the same on the default pools and on virtual threads.
+ */
+@Component
+@RequiredArgsConstructor
+public class BrokerChannelMetrics implements MeterBinder {
+
+    private final OutboundBackpressure outboundBackpressure;
+    private final PresenceService presenceService;
+
+    private final ChannelDepth inbound = new ChannelDepth();
+    private final ChannelDepth outbound = new ChannelDepth();
+
+    public ChannelInterceptor inboundInterceptor() {
+        return inbound;
+    }
+
+    public ChannelInterceptor outboundInterceptor() {
+        return outbound;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        inbound.bindTo(registry, "inbound");
+        outbound.bindTo(registry, "outbound");
+
+        Gauge.builder("anonchat.websocket.sessions", outboundBackpressure, OutboundBackpressure::sessionCount)
+                .description("Open WebSocket sessions on this node")
+                .register(registry);
+        Gauge.builder("anonchat.presence.sessions", presenceService, PresenceService::localSessionCount)
+                .description("Sessions on this node that joined a room")
+                .register(registry);
+        Gauge.builder("anonchat.rooms.active", presenceService, PresenceService::localRoomCount)
+                .description("Rooms with at least one session on this node")
+                .register(registry);
+
+        Gauge.builder("anonchat.outbound.queued", outboundBackpressure, OutboundBackpressure::queuedFrames)
+                .description("Frames waiting in per-session send queues")
+                .register(registry);
+        FunctionCounter.builder("anonchat.outbound.dropped", outboundBackpressure, OutboundBackpressure::droppedCount)
+                .description("Broadcasts dropped for slow sessions")
+                .register(registry);
+        FunctionCounter.builder("anonchat.outbound.disconnects", outboundBackpressure,
+                        OutboundBackpressure::slowDisconnectCount)
+                .description("Sessions closed for not keeping up")
+                .register(registry);
+    }
+
+    static final class ChannelDepth implements ExecutorChannelInterceptor {
+
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder started = new LongAdder();
+        private final LongAdder finished = new LongAdder();
+
+        @Override
+        public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+            // With an executor, send() only queued one task per handler; without one they have already run
+            if (sent) submitted.add(channel instanceof AbstractSubscribableChannel subscribable
+                    ? subscribable.getSubscribers().size() : 1);
+        }
+
+        @Override
+        public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+            started.increment();
+            return message;
+        }
+
+        @Override
+        public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                        Exception ex) {
+            finished.increment();
+        }
+
+        long queued() {
+            return Math.max(0, submitted.sum() - started.sum());
+        }
+
+        long active() {
+            return Math.max(0, started.sum() - finished.sum());
+        }
+
+        void bindTo(MeterRegistry registry, String channel) {
+            Gauge.builder("anonchat.broker.queue.depth", this, ChannelDepth::queued)
+                    .description("Messages waiting for a thread on a client channel")
+                    .tag("channel", channel)
+                    .register(registry);
+            Gauge.builder("anonchat.broker.active", this, ChannelDepth::active)
+                    .description("Messages being handled on a client channel")
+                    .tag("channel", channel)
+                    .register(registry);
+        }
+    }
+}
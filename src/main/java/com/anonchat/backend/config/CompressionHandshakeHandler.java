@@ -0,0 +1,35 @@
+package com.anonchat.backend.config;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * Handshake handler for the native WebSocket endpoint. Tomcat implements permessage-deflate and agrees to it
+ * whenever the client offers it; this only lets it be switched off ({@code anonchat.websocket.permessage-deflate})
+ * when the CPU it costs per connection matters more than the bandwidth it saves.
+ */
+public class CompressionHandshakeHandler extends DefaultHandshakeHandler {
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean deflate;
+
+    public CompressionHandshakeHandler(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requestedExtensions,
+                                                                 List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> accepted = super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+        if (deflate) return accepted;
+
+        return accepted.stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                .toList();
+    }
+}
@@ -0,0 +1,431 @@
+package com.anonchat.backend.config;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-session outbound queues, so a slow client only ever slows down itself.
+ * <p>
+ * Every WebSocket session gets a bounded queue in front of its socket. Dispatch threads (the broker, the
+ * outbound channel) only enqueue and return; each session is written by its own drain task, which parks a
+ * virtual thread while the socket is slow. When a session's queue goes over {@code anonchat.outbound.buffer-size-limit}
+ * bytes, {@code anonchat.outbound.overflow-policy} decides what happens:
+ * <ul>
+ *   <li>{@code drop-oldest}: the oldest queued broadcasts are dropped (the client sees a gap in {@code seq})</li>
+ *   <li>{@code coalesce}: the backlog is written as few large WebSocket messages instead of one per frame, and the
+ *       oldest broadcasts are dropped only if that still doesn't keep up</li>
+ *   <li>{@code disconnect}: the session is closed with a hint to reconnect and resume (see StompResumeHandler)</li>
+ * </ul>
+ * A socket that has been stuck on one write for longer than {@code anonchat.outbound.send-time-limit-ms} is
+ * closed the same way under every policy. Only MESSAGE frames are ever dropped.
+ */
+@Component
+@Slf4j
+public class OutboundBackpressure {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, COALESCE, DISCONNECT;
+
+        static OverflowPolicy parse(String value) {
+            return switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "coalesce" -> COALESCE;
+                case "disconnect" -> DISCONNECT;
+                default -> DROP_OLDEST;
+            };
+        }
+    }
+
+    // Clients that get this close status should reconnect and subscribe with resume-from
+    static final CloseStatus SLOW_CONSUMER =
+            CloseStatus.SESSION_NOT_RELIABLE.withReason("slow consumer; reconnect and subscribe with resume-from");
+
+    // Upper bound for one coalesced WebSocket message
+    private static final int MAX_BATCH_CHARS = 64 * 1024;
+
+    // Sessions listed individually in stats(), slowest first
+    private static final int STATS_SESSIONS = 20;
+
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    private final long sendTimeLimitMs;
+    private final int bufferSizeLimit;
+    private final OverflowPolicy policy;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    private final Map<String, SessionQueue> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong slowDisconnects = new AtomicLong();
+
+    @Autowired
+    public OutboundBackpressure(@Value("${anonchat.outbound.send-time-limit-ms:10000}") long sendTimeLimitMs,
+                                @Value("${anonchat.outbound.buffer-size-limit:524288}") int bufferSizeLimit,
+                                @Value("${anonchat.outbound.overflow-policy:drop-oldest}") String policy) {
+        this(sendTimeLimitMs, bufferSizeLimit, OverflowPolicy.parse(policy),
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-send-", 0).factory()));
+    }
+
+    OutboundBackpressure(long sendTimeLimitMs, int bufferSizeLimit, OverflowPolicy policy, Executor executor) {
+        this.sendTimeLimitMs = Math.max(100, sendTimeLimitMs);
+        this.bufferSizeLimit = Math.max(1024, bufferSizeLimit);
+        this.policy = policy;
+        this.executor = executor;
+        this.ownedExecutor = executor instanceof ExecutorService service ? service : null;
+    }
+
+    /**
+     * Handler decorator for WebSocketTransportRegistration: gives each session its queue before the STOMP
+     * handler sees it.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionQueue queue = new SessionQueue(session);
+                sessions.put(session.getId(), queue);
+                super.afterConnectionEstablished(queue);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                SessionQueue queue = sessions.remove(session.getId());
+                if (queue != null) queue.discard();
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        SessionQueue queue = sessions.get(accessor.getSessionId());
+        String destination = accessor.getDestination();
+        if (queue != null && accessor.getSubscriptionId() != null && destination != null
+                && destination.startsWith(TOPIC_PREFIX)) {
+            queue.rooms.put(accessor.getSubscriptionId(), destination.substring(TOPIC_PREFIX.length()));
+        }
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        SessionQueue queue = sessions.get(accessor.getSessionId());
+        if (queue != null && accessor.getSubscriptionId() != null) queue.rooms.remove(accessor.getSubscriptionId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ownedExecutor != null) ownedExecutor.shutdownNow();
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    public long queuedFrames() {
+        long total = 0;
+        for (SessionQueue queue : sessions.values()) total += queue.depth();
+        return total;
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public long slowDisconnectCount() {
+        return slowDisconnects.get();
+    }
+
+    public Map<String, Object> stats() {
+        long queuedFrames = 0;
+        long queuedBytes = 0;
+        List<Map.Entry<SessionQueue, SessionQueue.Snapshot>> slow = new ArrayList<>();
+        Map<String, long[]> rooms = new TreeMap<>();   // roomId -> {sessions, queuedFrames, dropped}
+        for (SessionQueue queue : sessions.values()) {
+            SessionQueue.Snapshot s = queue.snapshot();
+            queuedFrames += s.queuedFrames();
+            queuedBytes += s.queuedBytes();
+            if (s.queuedFrames() > 0 || s.dropped() > 0) slow.add(Map.entry(queue, s));
+
+            // A session's backlog counts towards every room it's in; clients are normally in one
+            for (String roomId : new HashSet<>(queue.rooms.values())) {
+                long[] room = rooms.computeIfAbsent(roomId, id -> new long[3]);
+                room[0]++;
+                room[1] += s.queuedFrames();
+            }
+            s.droppedByRoom().forEach((roomId, count) -> rooms.computeIfAbsent(roomId, id -> new long[3])[2] += count);
+        }
+        slow.sort(Comparator.comparingLong((Map.Entry<SessionQueue, SessionQueue.Snapshot> e) ->
+                e.getValue().queuedBytes()).reversed());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", policy.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        stats.put("sendTimeLimitMs", sendTimeLimitMs);
+        stats.put("bufferSizeLimit", bufferSizeLimit);
+        stats.put("sessions", sessions.size());
+        stats.put("queuedFrames", queuedFrames);
+        stats.put("queuedBytes", queuedBytes);
+        stats.put("dropped", dropped.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("slowDisconnects", slowDisconnects.get());
+
+        List<Map<String, Object>> slowSessions = new ArrayList<>();
+        for (Map.Entry<SessionQueue, SessionQueue.Snapshot> e : slow.subList(0, Math.min(STATS_SESSIONS, slow.size()))) {
+            SessionQueue.Snapshot s = e.getValue();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("sessionId", e.getKey().getId());
+            entry.put("rooms", new TreeSet<>(e.getKey().rooms.values()));
+            entry.put("queuedFrames", s.queuedFrames());
+            entry.put("queuedBytes", s.queuedBytes());
+            entry.put("dropped", s.dropped());
+            entry.put("coalesced", s.coalesced());
+            entry.put("sendingForMs", s.sendingForMs());
+            slowSessions.add(entry);
+        }
+        stats.put("slowSessions", slowSessions);
+
+        Map<String, Object> roomStats = new LinkedHashMap<>();
+        rooms.forEach((roomId, room) -> {
+            if (room[1] == 0 && room[2] == 0) return;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("sessions", room[0]);
+            entry.put("queuedFrames", room[1]);
+            entry.put("dropped", room[2]);
+            roomStats.put(roomId, entry);
+        });
+        stats.put("rooms", roomStats);
+        return stats;
+    }
+
+    SessionQueue session(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    // Only broadcasts may be dropped; CONNECTED, RECEIPT and ERROR frames always go out
+    private static boolean isBroadcast(WebSocketMessage<?> message) {
+        return message instanceof TextMessage text && text.getPayload().startsWith("MESSAGE\n");
+    }
+
+    // "destination:/topic/{roomId}" from the frame's headers, or null
+    static String roomOf(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage text)) return null;
+        String frame = text.getPayload();
+        int headersEnd = frame.indexOf("\n\n");
+        int start = frame.indexOf("\ndestination:" + TOPIC_PREFIX);
+        if (start < 0 || (headersEnd >= 0 && start > headersEnd)) return null;
+
+        start += "\ndestination:".length() + TOPIC_PREFIX.length();
+        int end = frame.indexOf('\n', start);
+        return end < 0 ? null : frame.substring(start, end);
+    }
+
+    /**
+     * The session the STOMP handler writes to. {@link #sendMessage} queues and returns; {@link #drain} writes
+     * the queue to the real session, one drain task at a time.
+     */
+    final class SessionQueue extends WebSocketSessionDecorator {
+
+        record Snapshot(int queuedFrames, long queuedBytes, long dropped, long coalesced, long sendingForMs,
+                        Map<String, Long> droppedByRoom) {
+        }
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<WebSocketMessage<?>> queue = new ArrayDeque<>();
+        private long queuedBytes;
+        private boolean draining;
+        private boolean closing;
+        private long sessionDropped;
+        private long sessionCoalesced;
+        private final Map<String, Long> droppedByRoom = new HashMap<>();
+
+        // When the write in progress started, 0 when idle
+        private volatile long sendStartedAt;
+
+        // subscriptionId -> roomId
+        final Map<String, String> rooms = new ConcurrentHashMap<>();
+
+        SessionQueue(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            boolean disconnect = false;
+            boolean startDrain = false;
+
+            lock.lock();
+            try {
+                if (closing) return;
+                queue.addLast(message);
+                queuedBytes += message.getPayloadLength();
+
+                long started = sendStartedAt;
+                if (started != 0 && System.currentTimeMillis() - started > sendTimeLimitMs) {
+                    disconnect = true;   // The socket isn't moving at all
+                } else if (queuedBytes > bufferSizeLimit) {
+                    disconnect = policy == OverflowPolicy.DISCONNECT || !dropOldest();
+                }
+
+                if (disconnect) {
+                    closing = true;
+                    queue.clear();
+                    queuedBytes = 0;
+                } else if (!draining) {
+                    draining = true;
+                    startDrain = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (disconnect) {
+                slowDisconnects.incrementAndGet();
+                log.info("Closing slow WebSocket session {} ({})", getId(), policy);
+                executor.execute(() -> closeQuietly(SLOW_CONSUMER));
+            } else if (startDrain) {
+                executor.execute(this::drain);
+            }
+        }
+
+        @Override
+        public void close(CloseStatus status) throws IOException {
+            discard();
+            super.close(status);
+        }
+
+        void discard() {
+            lock.lock();
+            try {
+                closing = true;
+                queue.clear();
+                queuedBytes = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int depth() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Snapshot snapshot() {
+            lock.lock();
+            try {
+                long started = sendStartedAt;
+                return new Snapshot(queue.size(), queuedBytes, sessionDropped, sessionCoalesced,
+                        started == 0 ? 0 : System.currentTimeMillis() - started, new HashMap<>(droppedByRoom));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Lock held; false when only frames that can't be dropped are left over the limit
+        private boolean dropOldest() {
+            Iterator<WebSocketMessage<?>> it = queue.iterator();
+            while (queuedBytes > bufferSizeLimit && it.hasNext()) {
+                WebSocketMessage<?> message = it.next();
+                if (!isBroadcast(message)) continue;
+
+                it.remove();
+                queuedBytes -= message.getPayloadLength();
+                sessionDropped++;
+                dropped.incrementAndGet();
+                String roomId = roomOf(message);
+                if (roomId != null) droppedByRoom.merge(roomId, 1L, Long::sum);
+            }
+            return queuedBytes <= bufferSizeLimit;
+        }
+
+        void drain() {
+            while (true) {
+                WebSocketMessage<?> next;
+                lock.lock();
+                try {
+                    if (closing || queue.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    next = take();
+                    sendStartedAt = System.currentTimeMillis();
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    getDelegate().sendMessage(next);
+                } catch (IOException | RuntimeException ex) {
+                    log.debug("Send to WebSocket session {} failed: {}", getId(), ex.getMessage());
+                    discard();
+                    closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+                    return;
+                } finally {
+                    sendStartedAt = 0;
+                }
+            }
+        }
+
+        // Lock held; the next frame, or with COALESCE the text frames queued behind it as one message
+        private WebSocketMessage<?> take() {
+            WebSocketMessage<?> first = queue.pollFirst();
+            queuedBytes -= first.getPayloadLength();
+            if (policy != OverflowPolicy.COALESCE || !(first instanceof TextMessage text)
+                    || !(queue.peekFirst() instanceof TextMessage)) {
+                return first;
+            }
+
+            // STOMP frames are NUL-terminated, so several can share one WebSocket message
+            StringBuilder batch = new StringBuilder(text.getPayload());
+            int frames = 1;
+            while (queue.peekFirst() instanceof TextMessage more
+                    && batch.length() + more.getPayload().length() <= MAX_BATCH_CHARS) {
+                queue.pollFirst();
+                queuedBytes -= more.getPayloadLength();
+                batch.append(more.getPayload());
+                frames++;
+            }
+            if (frames == 1) return first;
+
+            sessionCoalesced += frames - 1;
+            coalesced.addAndGet(frames - 1);
+            return new TextMessage(batch.toString());
+        }
+
+        private void closeQuietly(CloseStatus status) {
+            try {
+                getDelegate().close(status);
+            } catch (IOException | RuntimeException ex) {
+                log.debug("Closing WebSocket session {} failed: {}", getId(), ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.anonchat.backend.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fans "/topic/{roomId}" broadcasts out to every node through Redis pub/sub.
+ * Local delivery still goes through the simple broker; each broadcast is published once per node,
+ * and a node only listens on the channels of rooms that have local subscribers.
+ */
+@Component
+@ConditionalOnProperty(name = "anonchat.broker.mode", havingValue = "redis")
+@Slf4j
+public class RedisBrokerRelay implements ChannelInterceptor, MessageListener {
+
+    static final String CHANNEL_PREFIX = "broker:topic:";
+    static final String ORIGIN_HEADER = "x-relay-origin";
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MessageChannel brokerChannel;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // roomId -> number of local STOMP subscriptions
+    private final Map<String, Integer> localSubscribers = new ConcurrentHashMap<>();
+
+    // Rooms whose channel this node is subscribed to; changed only under the room's listener lock
+    private final Set<String> listening = ConcurrentHashMap.newKeySet();
+    private final Object[] listenerLocks = new Object[64];
+
+    // sessionId -> (subscriptionId -> roomId), needed because UNSUBSCRIBE carries no destination
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    public RedisBrokerRelay(RedisTemplate<String, Object> redisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.brokerChannel = brokerChannel;
+        for (int i = 0; i < listenerLocks.length; i++) listenerLocks[i] = new Object();
+    }
+
+    // Outbound: publish local broadcasts to the other nodes
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (headers.containsKey(ORIGIN_HEADER)) return message; // Arrived from another node
+
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type != null && type != SimpMessageType.MESSAGE) return message;
+
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (destination == null || !destination.startsWith(TOPIC_PREFIX)) return message;
+
+        byte[] payload = toBytes(message.getPayload());
+        if (payload == null) return message;
+
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        String roomId = destination.substring(TOPIC_PREFIX.length());
+
+        try {
+            byte[] channelName = (CHANNEL_PREFIX + roomId).getBytes(StandardCharsets.UTF_8);
+            byte[] body = encode(nodeId, destination, contentType != null ? contentType.toString() : "", payload);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channelName, body));
+        } catch (Exception e) {
+            // Local subscribers still get the message
+            log.error("Failed to relay broadcast for room {}", roomId, e);
+        }
+
+        return message;
+    }
+
+    // Inbound: re-inject broadcasts from other nodes into the local broker
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        Envelope envelope;
+        try {
+            envelope = decode(message.getBody());
+        } catch (IOException e) {
+            log.warn("Dropping malformed relay message.", e);
+            return;
+        }
+
+        if (nodeId.equals(envelope.origin())) return; // Already delivered locally
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(envelope.destination());
+        if (!envelope.contentType().isEmpty()) {
+            accessor.setContentType(MimeType.valueOf(envelope.contentType()));
+        }
+        accessor.setHeader(ORIGIN_HEADER, envelope.origin());
+
+        brokerChannel.send(MessageBuilder.createMessage(envelope.payload(), accessor.getMessageHeaders()));
+    }
+
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+
+        if (destination == null || !destination.startsWith(TOPIC_PREFIX) || sessionId == null || subscriptionId == null)
+            return;
+
+        String roomId = destination.substring(TOPIC_PREFIX.length());
+        String previous = sessionSubscriptions
+                .computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, roomId);
+
+        if (previous != null) release(previous);
+        acquire(roomId);
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> subscriptions = sessionSubscriptions.get(accessor.getSessionId());
+        if (subscriptions == null || accessor.getSubscriptionId() == null) return;
+
+        String roomId = subscriptions.remove(accessor.getSubscriptionId());
+        if (roomId != null) release(roomId);
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = sessionSubscriptions.remove(event.getSessionId());
+        if (subscriptions == null) return;
+
+        subscriptions.values().forEach(this::release);
+    }
+
+    int localSubscriberCount(String roomId) {
+        return localSubscribers.getOrDefault(roomId, 0);
+    }
+
+    private void acquire(String roomId) {
+        if (localSubscribers.merge(roomId, 1, Integer::sum) == 1) syncListener(roomId);
+    }
+
+    private void release(String roomId) {
+        if (localSubscribers.computeIfPresent(roomId, (id, count) -> count <= 1 ? null : count - 1) == null) {
+            syncListener(roomId);
+        }
+    }
+
+    // Subscribes or unsubscribes the room's channel to match its current count. Runs after the count changed, not
+    // inside the map's compute, so a slow (un)subscribe never blocks other rooms' counts; it rereads the count under
+    // the room's lock, so a join and a leave racing on the same room settle on the state of the last one.
+    private void syncListener(String roomId) {
+        synchronized (listenerLocks[Math.floorMod(roomId.hashCode(), listenerLocks.length)]) {
+            ChannelTopic topic = new ChannelTopic(CHANNEL_PREFIX + roomId);
+            if (localSubscribers.containsKey(roomId)) {
+                if (listening.add(roomId)) listenerContainer.addMessageListener(this, topic);
+            } else if (listening.remove(roomId)) {
+                listenerContainer.removeMessageListener(this, topic);
+            }
+        }
+    }
+
+    private static byte[] toBytes(Object payload) {
+        if (payload instanceof byte[] bytes) return bytes;
+        if (payload instanceof String text) return text.getBytes(StandardCharsets.UTF_8);
+        return null;
+    }
+
+    static byte[] encode(String origin, String destination, String contentType, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(origin);
+        out.writeUTF(destination);
+        out.writeUTF(contentType);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Envelope decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        String origin = in.readUTF();
+        String destination = in.readUTF();
+        String contentType = in.readUTF();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return new Envelope(origin, destination, contentType, payload);
+    }
+
+    record Envelope(String origin, String destination, String contentType, byte[] payload) {
+    }
+}
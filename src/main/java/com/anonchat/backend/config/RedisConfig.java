@@ -1,12 +1,16 @@
 package com.anonchat.backend.config;
 
+import com.anonchat.backend.util.ChatMessageCodec;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
@@ -14,10 +18,34 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 public class RedisConfig {
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory,
+                                                       @Value("${anonchat.history.codec:compact}") String codec,
+                                                       @Value("${anonchat.history.codec-write-version:3}") int writeVersion) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
+        RedisSerializer<Object> serializer = valueSerializer(!"json".equalsIgnoreCase(codec), writeVersion);
+
+        // Set serializers
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(serializer);
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(serializer);
+
+        return template;
+    }
+
+    // Shared with the benchmarks so they measure exactly what production stores
+    public static RedisSerializer<Object> valueSerializer(boolean compactWrites) {
+        return valueSerializer(compactWrites, ChatMessageCodec.LATEST_VERSION);
+    }
+
+    public static RedisSerializer<Object> valueSerializer(boolean compactWrites, int writeVersion) {
+        return new ChatMessageRedisSerializer(jsonSerializer(), compactWrites, writeVersion);
+    }
+
+    // Everything that is not a ChatMessage, and history written before the compact codec
+    public static GenericJackson2JsonRedisSerializer jsonSerializer() {
         // Create your custom Jackson 2 Mapper
         ObjectMapper mapper = new ObjectMapper();
         mapper.activateDefaultTyping(
@@ -28,14 +56,15 @@ public class RedisConfig {
 
         // This is the correct class for Spring Boot 3.x applications using Jackson 2.
         //noinspection removal
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(mapper);
-
-        // Set serializers
-        template.setKeySerializer(RedisSerializer.string());
-        template.setValueSerializer(serializer);
-        template.setHashKeySerializer(RedisSerializer.string());
-        template.setHashValueSerializer(serializer);
+        return new GenericJackson2JsonRedisSerializer(mapper);
+    }
 
-        return template;
+    // Pub/sub listener for the cross-node broker relay
+    @Bean
+    @ConditionalOnProperty(name = "anonchat.broker.mode", havingValue = "redis")
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
     }
 }
\ No newline at end of file
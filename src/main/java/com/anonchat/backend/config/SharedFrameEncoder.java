@@ -0,0 +1,99 @@
+package com.anonchat.backend.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * STOMP encoder that encodes a room broadcast once and hands the same bytes to every subscriber.
+ * <p>
+ * The simple broker gives all subscribers of a broadcast the same payload array, and {@link MessageIds} gives
+ * them the same {@code message-id}; what is left to differ per subscriber is the {@code subscription} header,
+ * and clients mostly use the same few IDs ("sub-0"). Encoded frames are kept in a small fixed table of recent
+ * (payload, headers) pairs, read and written without locks; a pair that collides with another simply replaces it.
+ * <p>
+ * Only the STOMP encoding is shared. StompSubProtocolHandler still wraps the bytes in a TextMessage per session,
+ * which decodes them to a String, and the container encodes that String again when it writes the frame.
+ */
+public class SharedFrameEncoder extends StompEncoder {
+
+    static final String MESSAGE_ID_HEADER = "message-id";
+
+    // Recent frames; a broadcast is encoded for all its subscribers within a few milliseconds, so this only
+    // needs to cover the broadcasts in flight. Holds the payloads it caches until their slots are reused.
+    private static final int SLOTS = 1024;
+
+    private final AtomicReferenceArray<Frame> frames = new AtomicReferenceArray<>(SLOTS);
+
+    // Bumped by every outbound thread: adders, so the counters don't become the shared hot spot
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Override
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (payload.length == 0 || StompHeaderAccessor.getCommand(headers) != StompCommand.MESSAGE)
+            return super.encode(headers, payload);
+
+        Object nativeHeaders = headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (nativeHeaders == null) return super.encode(headers, payload);
+
+        // Payload by identity (arrays don't override equals/hashCode), headers by value
+        int slot = (System.identityHashCode(payload) * 31 + nativeHeaders.hashCode()) & (SLOTS - 1);
+        Frame cached = frames.get(slot);
+        if (cached != null && cached.payload == payload && cached.nativeHeaders.equals(nativeHeaders)) {
+            hits.increment();
+            return cached.bytes;
+        }
+
+        misses.increment();
+        byte[] frame = super.encode(headers, payload);
+        frames.set(slot, new Frame(payload, nativeHeaders, frame));
+        return frame;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private record Frame(byte[] payload, Object nativeHeaders, byte[] bytes) {
+    }
+
+    /**
+     * Broker channel interceptor: one {@code message-id} per broadcast instead of one per subscriber,
+     * so the frames for a broadcast can be identical. IDs are unique per node and per message.
+     */
+    public static class MessageIds implements ChannelInterceptor {
+
+        private final String prefix = UUID.randomUUID().toString().substring(0, 8) + "-";
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE)
+                return message;
+
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+            if (accessor.getFirstNativeHeader(MESSAGE_ID_HEADER) != null) return message;
+
+            accessor.setNativeHeader(MESSAGE_ID_HEADER, prefix + counter.incrementAndGet());
+            return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.anonchat.backend.config;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import com.anonchat.backend.service.ChatService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gap-free resume for "/topic/{roomId}" subscriptions.
+ * <p>
+ * Every saved message carries its room sequence. A client that reconnects subscribes with a
+ * {@code resume-from} header holding the last sequence it saw; live broadcasts for that subscription are held
+ * back while the missed messages are read as history pages (from the hot history tier for active rooms), then the
+ * client gets the missed messages (header {@code resumed: true}) followed by the held and live ones, without
+ * duplicates.
+ * If the gap is older than the retained history, or the room was reset, a single {@code resync: true} frame
+ * tells the client to reload history over REST instead.
+ * <p>
+ * Frames for a resumed subscription go through their own ordered channel, so replayed and live messages
+ * reach the client in the order they were released.
+ */
+@Component
+@Slf4j
+public class StompResumeHandler {
+
+    static final String RESUME_FROM_HEADER = "resume-from";
+    static final String RESUMED_HEADER = "resumed";
+    static final String RESYNC_HEADER = "resync";
+
+    // Marks frames already released by a gate, so the outbound interceptor lets them through
+    private static final String RELEASED_HEADER = "x-resume-released";
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    // Live messages held per subscription while the delta is read; beyond that the client resyncs
+    static final int MAX_HELD = 1000;
+
+    // Another node may have numbered a message without having stored it yet (write-behind): with consecutive
+    // numbers the replay waits this long for the missing ones, re-reading every PAGE_RETRY_MS
+    static final long MISSING_WAIT_MS = 1000;
+    private static final long PAGE_RETRY_MS = 50;
+
+    // Broadcasts racing the subscription can repeat replayed messages for a moment; drop those this long
+    private static final long DEDUPE_MS = 5000;
+
+    private final ChatService chatService;
+    private final MessageChannel clientOutboundChannel;
+    private final MessageConverter messageConverter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor;
+
+    // sessionId -> (subscriptionId -> gate)
+    private final Map<String, Map<String, Gate>> gates = new ConcurrentHashMap<>();
+
+    private final ExecutorChannelInterceptor inboundInterceptor = new InboundInterceptor();
+    private final ChannelInterceptor outboundInterceptor = new OutboundInterceptor();
+
+    public StompResumeHandler(ChatService chatService,
+                              @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                              @Lazy @Qualifier("brokerMessageConverter") MessageConverter messageConverter) {
+        this.chatService = chatService;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.messageConverter = messageConverter;
+        this.executor = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "stomp-resume");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ChannelInterceptor inboundInterceptor() {
+        return inboundInterceptor;
+    }
+
+    public ChannelInterceptor outboundInterceptor() {
+        return outboundInterceptor;
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, Gate> subscriptions = gates.get(accessor.getSessionId());
+        if (subscriptions != null && accessor.getSubscriptionId() != null) {
+            subscriptions.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        gates.remove(event.getSessionId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Inbound: open a gate before the broker registers the subscription, start the replay once it has
+    private final class InboundInterceptor implements ExecutorChannelInterceptor {
+
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.SUBSCRIBE)
+                return message;
+
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            String resumeFrom = accessor.getFirstNativeHeader(RESUME_FROM_HEADER);
+            String destination = accessor.getDestination();
+            String sessionId = accessor.getSessionId();
+            String subscriptionId = accessor.getSubscriptionId();
+
+            if (resumeFrom == null || destination == null || !destination.startsWith(TOPIC_PREFIX)
+                    || sessionId == null || subscriptionId == null)
+                return message;
+
+            long after;
+            try {
+                after = Long.parseLong(resumeFrom.trim());
+            } catch (NumberFormatException e) {
+                return message; // Plain subscription
+            }
+            if (after < 0) return message;
+
+            Gate gate = new Gate(sessionId, subscriptionId, destination.substring(TOPIC_PREFIX.length()), after);
+            gates.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, gate);
+            return message;
+        }
+
+        @Override
+        public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                        Exception ex) {
+            if (!(handler instanceof AbstractBrokerMessageHandler)) return;
+
+            MessageHeaders headers = message.getHeaders();
+            if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.SUBSCRIBE) return;
+
+            Gate gate = gateFor(SimpMessageHeaderAccessor.getSessionId(headers),
+                    SimpMessageHeaderAccessor.getSubscriptionId(headers));
+            if (gate == null || gate.replayStarted) return;
+            gate.replayStarted = true;
+
+            // Redis round trips: keep them off the inbound channel
+            executor.execute(() -> replay(gate));
+        }
+    }
+
+    // Outbound: hold live messages until the replay is done, then route them behind it
+    private final class OutboundInterceptor implements ChannelInterceptor {
+
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            if (gates.isEmpty()) return message;
+
+            MessageHeaders headers = message.getHeaders();
+            if (headers.containsKey(RELEASED_HEADER)) return message;
+            if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) return message;
+
+            Gate gate = gateFor(SimpMessageHeaderAccessor.getSessionId(headers),
+                    SimpMessageHeaderAccessor.getSubscriptionId(headers));
+            if (gate == null) return message;
+
+            gate.offer(message);
+            return null;
+        }
+    }
+
+    private void replay(Gate gate) {
+        Set<Long> replayed = new HashSet<>();
+        long latest = 0;
+        boolean resync;
+
+        try {
+            latest = chatService.getLatestSequence(gate.roomId);
+
+            // Pages of active rooms come from the hot history tier, others from Redis
+            List<?> delta = gate.after <= latest ? readDelta(gate.roomId, gate.after, latest) : null;
+
+            resync = delta == null;
+            if (!resync) {
+                for (Object message : delta) {
+                    gate.channel.send(frame(gate, message, RESUMED_HEADER));
+                    Long seq = message instanceof ChatMessage chatMessage ? chatMessage.getSeq() : null;
+                    if (seq != null) replayed.add(seq);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            resync = true;
+        } catch (Exception e) {
+            log.warn("Could not replay room {} after {} for session {}", gate.roomId, gate.after, gate.sessionId, e);
+            resync = true;
+        }
+
+        if (resync) gate.channel.send(frame(gate, Map.of("latestSeq", latest), RESYNC_HEADER));
+        gate.release(resync ? Set.of() : replayed, resync, latest);
+    }
+
+    /**
+     * Messages after {@code after} from the history store, in sequence order, or null if some of them are no
+     * longer retained. Nodes number out of time order, so messages up to {@code latest} may not be stored yet:
+     * with consecutive numbers the read is repeated until every one of them is there, for up to
+     * {@link #MISSING_WAIT_MS}. Whatever is still missing then (or, with skipping numbers, whatever wasn't stored)
+     * is let through when it arrives live.
+     */
+    private List<Object> readDelta(String roomId, long after, long latest) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + (chatService.hasConsecutiveSequences() ? MISSING_WAIT_MS : 0);
+
+        while (true) {
+            List<Object> delta = new ArrayList<>();
+            long cursor = after;
+            long found = 0;
+            while (true) {
+                HistoryPage page = chatService.getHistoryPage(roomId, ChatService.MAX_PAGE_SIZE, null, cursor);
+                if (page.getMessages().isEmpty()) break;
+
+                // Sequences skip, so a jump proves nothing by itself; but if nothing at or before the resume point
+                // is retained any more, what was between may have been trimmed
+                if (cursor == after && !page.isHasMore() && page.getFirstSeq() > after + 1) return null;
+
+                for (Object message : page.getMessages()) {
+                    Long seq = message instanceof ChatMessage chatMessage ? chatMessage.getSeq() : null;
+                    if (seq != null && seq <= latest) found++;
+                }
+                delta.addAll(page.getMessages());
+                cursor = page.getLastSeq();
+            }
+
+            if (found >= latest - after || System.currentTimeMillis() >= deadline) return delta;
+            TimeUnit.MILLISECONDS.sleep(PAGE_RETRY_MS);
+        }
+    }
+
+    private Message<?> frame(Gate gate, Object payload, String flagHeader) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(gate.sessionId);
+        accessor.setSubscriptionId(gate.subscriptionId);
+        accessor.setDestination(TOPIC_PREFIX + gate.roomId);
+        accessor.setNativeHeader(flagHeader, "true");
+        accessor.setHeader(RELEASED_HEADER, Boolean.TRUE);
+        accessor.setLeaveMutable(true);
+
+        Message<?> message = messageConverter.toMessage(payload, accessor.getMessageHeaders());
+        if (message == null) throw new IllegalStateException("No converter for " + payload.getClass());
+        return message;
+    }
+
+    private Gate gateFor(String sessionId, String subscriptionId) {
+        if (sessionId == null || subscriptionId == null) return null;
+        Map<String, Gate> subscriptions = gates.get(sessionId);
+        return subscriptions != null ? subscriptions.get(subscriptionId) : null;
+    }
+
+    private Long sequenceOf(Object payload) {
+        if (!(payload instanceof byte[] bytes)) return null;
+        try {
+            JsonNode seq = objectMapper.readTree(bytes).get("seq");
+            return seq != null && seq.canConvertToLong() ? seq.asLong() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private final class Gate {
+        private final String sessionId;
+        private final String subscriptionId;
+        private final String roomId;
+        private final long after;
+
+        // Keeps released frames in order; the broker's own ordering stops at this interceptor
+        private final OrderedMessageChannelDecorator channel =
+                new OrderedMessageChannelDecorator(clientOutboundChannel, LogFactory.getLog(StompResumeHandler.class));
+
+        private volatile boolean replayStarted;
+
+        // Guarded by this
+        private List<Message<?>> held = new ArrayList<>();
+        private boolean overflowed;
+        // Sequences sent by the replay: live copies of exactly these are dropped, anything else goes through,
+        // including numbers below the newest replayed one that another node stored late
+        private Set<Long> replayed = Set.of();
+        private long dedupeUntil;
+
+        Gate(String sessionId, String subscriptionId, String roomId, long after) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.roomId = roomId;
+            this.after = after;
+        }
+
+        synchronized void offer(Message<?> message) {
+            if (held != null) {
+                if (held.size() < MAX_HELD) held.add(message);
+                else overflowed = true;
+                return;
+            }
+            forward(message);
+        }
+
+        synchronized void release(Set<Long> replayed, boolean resynced, long latest) {
+            this.replayed = replayed;
+            this.dedupeUntil = System.currentTimeMillis() + DEDUPE_MS;
+
+            if (overflowed && !resynced) {
+                // Too much arrived meanwhile to keep it all: the client reloads and continues from live traffic
+                channel.send(frame(this, Map.of("latestSeq", latest), RESYNC_HEADER));
+                this.replayed = Set.of();
+            }
+
+            List<Message<?>> pending = held;
+            held = null;
+            for (Message<?> message : pending) forward(message);
+        }
+
+        private void forward(Message<?> message) {
+            if (!replayed.isEmpty()) {
+                if (System.currentTimeMillis() >= dedupeUntil) {
+                    replayed = Set.of();
+                } else {
+                    Long seq = sequenceOf(message.getPayload());
+                    if (seq != null && replayed.contains(seq)) return; // Already replayed
+                }
+            }
+
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+            accessor.setHeader(RELEASED_HEADER, Boolean.TRUE);
+            accessor.setLeaveMutable(true);
+            channel.send(MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders()));
+        }
+    }
+}
@@ -1,28 +1,124 @@
 package com.anonchat.backend.config;
 
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    // Present only when anonchat.broker.mode=redis
+    private final ObjectProvider<RedisBrokerRelay> brokerRelay;
+
+    // Replays missed messages to subscriptions that carry a resume-from header
+    private final StompResumeHandler resumeHandler;
+
+    // Bounded per-session send queues; a slow client never blocks a dispatch thread
+    private final OutboundBackpressure outboundBackpressure;
+
+    // Channel queue depth gauges; their interceptors go last so held-back messages are not counted
+    private final BrokerChannelMetrics channelMetrics;
+
+    // Same switch that moves Tomcat onto virtual threads; here it also covers the STOMP channels
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // Negotiated per connection on /ws-native when the client offers it
+    @Value("${anonchat.websocket.permessage-deflate:true}")
+    private boolean permessageDeflate;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Enables a simple memory-based message broker to carry messages back to the client on destinations prefixed with "/topic"
         config.enableSimpleBroker("/topic");
 
+        // One message-id per broadcast, so every subscriber's frame can be the same bytes (SharedFrameEncoder)
+        config.configureBrokerChannel().interceptors(new SharedFrameEncoder.MessageIds());
+
+        // Multi-node mode: every local "/topic" broadcast is also published to the other nodes via Redis
+        brokerRelay.ifAvailable(relay -> config.configureBrokerChannel().interceptors(relay));
+
         // Defines the prefix for messages that are bound for methods annotated with @MessageMapping
         config.setApplicationDestinationPrefixes("/app");
+
+        // Per-session delivery order; resumed subscriptions rely on it to put replayed messages before live ones
+        config.setPreservePublishOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(resumeHandler.inboundInterceptor(), channelMetrics.inboundInterceptor());
+
+        // Handlers block on Redis; a virtual thread per message instead of a small fixed pool
+        if (virtualThreads) registration.executor(virtualThreadExecutor("stomp-inbound-"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(resumeHandler.outboundInterceptor(), channelMetrics.outboundInterceptor());
+
+        // A slow client's send buffer blocks its dispatch thread, not one of a shared few
+        if (virtualThreads) registration.executor(virtualThreadExecutor("stomp-outbound-"));
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.addDecoratorFactory(outboundBackpressure::decorate);
     }
 
     public void registerStompEndpoints(StompEndpointRegistry registry){
+        // Per-session order of inbound frames (a SEND after its SUBSCRIBE, messages in the order typed),
+        // whatever executor the inbound channel runs on
+        registry.setPreserveReceiveOrder(true);
+
         // Registers the "/ws" endpoint, enabling SockJS fallback options so that alternate transports can be used if WebSocket is not available.
         registry.addEndpoint("/ws")
                 .addInterceptors(new IpHandshakeInterceptor())
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // Plain WebSocket for clients that don't need the SockJS fallback: no SockJS framing per session,
+        // and permessage-deflate when the client asks for it
+        registry.addEndpoint("/ws-native")
+                .setHandshakeHandler(new CompressionHandshakeHandler(permessageDeflate))
+                .addInterceptors(new IpHandshakeInterceptor())
+                .setAllowedOriginPatterns("*");
+    }
+
+    // The STOMP handler is created with the endpoint mapping; swap its encoder once everything is wired
+    @Bean
+    public SmartInitializingSingleton sharedFrameEncoderInstaller(
+            @Qualifier("subProtocolWebSocketHandler") ObjectProvider<WebSocketHandler> webSocketHandler) {
+        return () -> {
+            if (!(webSocketHandler.getIfAvailable() instanceof SubProtocolWebSocketHandler handler)) return;
+
+            StompEncoder encoder = new SharedFrameEncoder();
+            handler.getProtocolHandlers().forEach(protocolHandler -> {
+                if (protocolHandler instanceof StompSubProtocolHandler stompHandler) stompHandler.setEncoder(encoder);
+            });
+        };
+    }
+
+    private static Executor virtualThreadExecutor(String prefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory());
     }
 }
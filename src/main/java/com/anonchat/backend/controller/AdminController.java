@@ -0,0 +1,97 @@
+package com.anonchat.backend.controller;
+
+import com.anonchat.backend.exceptions.UnauthorizedException;
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.service.ChatService;
+import com.anonchat.backend.service.RoomReaper;
+import com.anonchat.backend.util.ValidationUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operator endpoints, enabled by setting {@code anonchat.admin.token} and sent with {@code X-Admin-Token}.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private static final int MAX_PURGE = 1000;
+
+    private final ChatService chatService;
+    private final RoomReaper roomReaper;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final byte[] adminToken;
+
+    public AdminController(ChatService chatService,
+                           RoomReaper roomReaper,
+                           SimpMessageSendingOperations messagingTemplate,
+                           @Value("${anonchat.admin.token:}") String adminToken) {
+        this.chatService = chatService;
+        this.roomReaper = roomReaper;
+        this.messagingTemplate = messagingTemplate;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // DTO class for the request: explicit IDs, or every room whose ID starts with a prefix
+    public static class PurgeRequest {
+        public List<String> roomIds;
+        public String prefix;
+        public Integer limit;
+    }
+
+    // Bulk delete rooms, e.g. everything a load test left behind
+    @PostMapping("/rooms/purge")
+    public ResponseEntity<Map<String, Object>> purgeRooms(@RequestHeader(value = "X-Admin-Token", required = false) String token,
+                                                          @RequestBody PurgeRequest request) {
+        checkToken(token);
+
+        int limit = request.limit != null ? request.limit : MAX_PURGE;
+        if (limit < 1 || limit > MAX_PURGE)
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PURGE + ".");
+        if ((request.roomIds == null) == (request.prefix == null))
+            throw new IllegalArgumentException("Give either 'roomIds' or 'prefix'.");
+
+        List<String> roomIds;
+        if (request.prefix != null) {
+            ValidationUtils.validateRoomId(request.prefix);
+            roomIds = roomReaper.findRooms(request.prefix, limit);
+        } else {
+            if (request.roomIds.size() > limit)
+                throw new IllegalArgumentException("At most " + limit + " room IDs per request.");
+            roomIds = new ArrayList<>(request.roomIds);
+            roomIds.forEach(ValidationUtils::validateRoomId);
+        }
+
+        long keysRemoved = chatService.purgeRooms(roomIds);
+
+        ChatMessage systemMsg = ChatMessage.builder()
+                .type(ChatMessage.MessageType.LEAVE)
+                .sender("System")
+                .content("🚫 Room has been deleted.")
+                .build();
+        for (String roomId : roomIds) messagingTemplate.convertAndSend("/topic/" + roomId, systemMsg);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("purgedRooms", roomIds.size());
+        result.put("keysRemoved", keysRemoved);
+        // A prefix purge stops at the limit; call again until this is false
+        result.put("more", request.prefix != null && roomIds.size() == limit);
+        return ResponseEntity.ok(result);
+    }
+
+    private void checkToken(String token) {
+        if (adminToken.length == 0)
+            throw new UnauthorizedException("🚫 Access Denied: The admin API is disabled.");
+        if (token == null || !MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8)))
+            throw new UnauthorizedException("🚫 Access Denied: Invalid admin token.");
+    }
+}
@@ -2,6 +2,8 @@ package com.anonchat.backend.controller;
 
 import com.anonchat.backend.model.ChatMessage;
 import com.anonchat.backend.service.ChatService;
+import com.anonchat.backend.service.EphemeralRelay;
+import com.anonchat.backend.service.PresenceEvents;
 import com.anonchat.backend.service.RateLimitService;
 import com.anonchat.backend.service.FilterService;
 import com.anonchat.backend.util.ValidationUtils;
@@ -14,6 +16,8 @@ import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
+import java.util.Map;
+
 @Controller
 @RequiredArgsConstructor
 @Slf4j
@@ -22,6 +26,8 @@ public class ChatController {
     private final ChatService chatService;
     private final RateLimitService rateLimitService;
     private final FilterService filterService;
+    private final PresenceEvents presenceEvents;
+    private final EphemeralRelay ephemeralRelay;
 
     // Handling Chat Messages
     @MessageMapping("/chat/{roomId}/sendMessage")
@@ -52,8 +58,7 @@ public class ChatController {
 
     // Handling Join Events
     @MessageMapping("/chat/{roomId}/addUser")
-    @SendTo("/topic/{roomId}")
-    public ChatMessage addUser(@DestinationVariable String roomId,
+    public void addUser(@DestinationVariable String roomId,
                                @Payload ChatMessage chatMessage,
                                SimpMessageHeaderAccessor headerAccessor) {
         validateRoomId(roomId);
@@ -68,9 +73,6 @@ public class ChatController {
             chatMessage.setSender(cleanSender);
         }
 
-        chatMessage.setType(ChatMessage.MessageType.JOIN);
-        chatMessage.setContent("joined the room.");
-
 //        String ipAddress = (String) headerAccessor.getSessionAttributes().get("IP_ADDRESS");
 //        if (rateLimitService.isBanned(ipAddress)) {
             // ... (Ban logic) ...
@@ -80,10 +82,26 @@ public class ChatController {
         headerAccessor.getSessionAttributes().put("username", chatMessage.getSender());
         headerAccessor.getSessionAttributes().put("roomId", roomId);
 
-        // The "Join" event is also the part of history
-        chatService.saveMessage(roomId, chatMessage);
+        // Counts towards the room's presence until the session disconnects
+        chatService.userJoined(roomId, headerAccessor.getSessionId(), chatMessage.getSender());
 
-        return chatMessage;
+        // The "Join" event is also the part of history; saved and broadcast alone or as part of a summary
+        presenceEvents.joined(roomId, chatMessage.getSender());
+    }
+
+    // Handling Ephemeral Signals (typing, read markers): no history, no profanity filter, no per-IP limiter
+    @MessageMapping("/chat/{roomId}/signal")
+    public void sendSignal(@DestinationVariable String roomId,
+                           @Payload ChatMessage chatMessage,
+                           SimpMessageHeaderAccessor headerAccessor) {
+        validateRoomId(roomId);
+
+        // Only from sessions that joined this room, under the name they joined with
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        if (sessionAttributes == null || !roomId.equals(sessionAttributes.get("roomId"))) return;
+
+        ephemeralRelay.relay(roomId, headerAccessor.getSessionId(), (String) sessionAttributes.get("username"),
+                chatMessage.getContent(), sessionAttributes);
     }
 
     private void validateRoomId(String roomId) {
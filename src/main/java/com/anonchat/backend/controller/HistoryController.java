@@ -1,20 +1,25 @@
 package com.anonchat.backend.controller;
 
+import com.anonchat.backend.exceptions.TooManyRequestsException;
+import com.anonchat.backend.model.HistoryPage;
 import com.anonchat.backend.service.ChatService;
+import com.anonchat.backend.service.HistoryVersion;
+import com.anonchat.backend.service.PdfExportCache;
 import com.anonchat.backend.service.PdfService;
 import com.anonchat.backend.util.ValidationUtils;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.DeleteMapping;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayInputStream;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @RestController
 @RequiredArgsConstructor
@@ -22,13 +27,35 @@ public class HistoryController {
 
     private final ChatService chatService;
     private final PdfService pdfService;
+    private final PdfExportCache exportCache;
 
     // History API
     @GetMapping("/api/history/{roomId}")
-    public ResponseEntity<List<Object>> getChatHistory(@PathVariable String roomId) {
+    public ResponseEntity<List<Object>> getChatHistory(@PathVariable String roomId, WebRequest request) {
         ValidationUtils.validateRoomId(roomId);
 
-        return ResponseEntity.ok(chatService.getHistory(roomId));
+        // Weak and listed If-None-Match values are matched too; on a match the 304 and ETag are already set
+        String etag = chatService.getHistoryVersion(roomId).eTag("");
+        if (request.checkNotModified(etag)) return null;
+
+        return ResponseEntity.ok().eTag(etag).body(chatService.getHistory(roomId));
+    }
+
+    // Paginated History API (e.g. ?limit=50, ?before=120&limit=50, ?after=170)
+    @GetMapping("/api/history/{roomId}/page")
+    public ResponseEntity<HistoryPage> getChatHistoryPage(@PathVariable String roomId,
+                                                          @RequestParam(defaultValue = "" + ChatService.DEFAULT_PAGE_SIZE) int limit,
+                                                          @RequestParam(required = false) Long before,
+                                                          @RequestParam(required = false) Long after,
+                                                          WebRequest request) {
+        ValidationUtils.validateRoomId(roomId);
+
+        // Same URL + same room version = same page, so the version alone is a valid ETag
+        // The one tag is both matched and sent, so a client's If-None-Match can hit on its next request
+        String etag = chatService.getHistoryVersion(roomId).eTag("");
+        if (request.checkNotModified(etag)) return null;
+
+        return ResponseEntity.ok().eTag(etag).body(chatService.getHistoryPage(roomId, limit, before, after));
     }
 
     @DeleteMapping("/api/history/{roomId}")
@@ -41,23 +68,63 @@ public class HistoryController {
 
     // PDF Export API
     @GetMapping("/api/export/{roomId}")
-    public ResponseEntity<InputStreamResource> exportPdf(@PathVariable String roomId) {
+    public ResponseEntity<StreamingResponseBody> exportPdf(@PathVariable String roomId, WebRequest request) {
         ValidationUtils.validateRoomId(roomId);
 
-        // Get the data
-        List<Object> history = chatService.getHistory(roomId);
-
-        // Generate the PDF
-        ByteArrayInputStream pdfStream = pdfService.exportChatToPdf(roomId, history);
+        // The export is a pure function of the room version, so unchanged rooms never re-render
+        HistoryVersion version = chatService.getHistoryVersion(roomId);
+        String etag = version.eTag("pdf-");
+        if (request.checkNotModified(etag)) return null;
 
         // Set Headers so the browser knows it's a file download
         HttpHeaders headers = new HttpHeaders();
         headers.add("Content-Disposition", "attachment; filename=chat-" + roomId + ".pdf");
 
+        PdfExportCache.Entry cached = exportCache.get(roomId, version);
+        if (cached != null) {
+            return ResponseEntity
+                    .ok()
+                    .headers(headers)
+                    .eTag(etag)
+                    .lastModified(cached.createdAt())
+                    .contentLength(cached.pdf().length)
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .body(out -> out.write(cached.pdf()));
+        }
+
+        PdfService.ExportSlot slot = pdfService.tryAcquireExportSlot();
+        if (slot == null)
+            throw new TooManyRequestsException("Too many exports in progress. Please try again shortly.");
+
+        // The body may never run (client gone, async timeout); the request's completion frees the slot then
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(slot, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest completed, Callable<T> task) {
+                slot.close();
+            }
+        });
+
+        // Rendered straight into the response, reading history from Redis one page at a time, up to the newest
+        // number handed out now (sequences skip, and the version is the sequence stored last, not the highest).
+        // A copy is cached if the render completes, the PDF fits the per-entry limit and the room is still at the
+        // version the render is cached under, so the copy holds exactly what that version does.
+        StreamingResponseBody body = out -> {
+            try {
+                long until = chatService.getLatestSequence(roomId);
+                exportCache.renderAndCache(roomId, version, () -> chatService.getHistoryVersion(roomId), out,
+                        pdf -> pdfService.writeChatPdf(roomId,
+                                chatService.iterateHistory(roomId, ChatService.MAX_PAGE_SIZE, until), pdf));
+            } finally {
+                slot.close();
+            }
+        };
+
         return ResponseEntity
                 .ok()
                 .headers(headers)
+                .eTag(etag)
+                .lastModified(System.currentTimeMillis())
                 .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(pdfStream));
+                .body(body);
     }
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -62,6 +63,19 @@ public class RoomController {
         ));
     }
 
+    // Who's online: everyone connected to the room on any server
+    @GetMapping("/{roomId}/online")
+    public ResponseEntity<Map<String, Object>> getOnlineUsers(@PathVariable String roomId) {
+        ValidationUtils.validateRoomId(roomId);
+
+        List<String> users = chatService.getOnlineUsers(roomId);
+        return ResponseEntity.ok(Map.of(
+                "roomId", roomId,
+                "count", users.size(),
+                "users", users
+        ));
+    }
+
     // Claim Ownership (Called automatically when joining)
     @PostMapping("/{roomId}/claim")
     public ResponseEntity<Map<String, String>> claimRoom(@PathVariable String roomId) {
@@ -96,8 +110,6 @@ public class RoomController {
 
         messagingTemplate.convertAndSend("/topic/" + roomId, systemMsg);
 
-
-        chatService.deleteRoom(roomId);
         return ResponseEntity.ok("✅ Room deleted successfully.");
     }
 }
\ No newline at end of file
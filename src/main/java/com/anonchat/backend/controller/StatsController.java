@@ -0,0 +1,112 @@
+package com.anonchat.backend.controller;
+
+import com.anonchat.backend.config.OutboundBackpressure;
+import com.anonchat.backend.service.EphemeralRelay;
+import com.anonchat.backend.service.HistoryMigrator;
+import com.anonchat.backend.service.HotHistoryTier;
+import com.anonchat.backend.service.PdfExportCache;
+import com.anonchat.backend.service.PresenceEvents;
+import com.anonchat.backend.service.PresenceService;
+import com.anonchat.backend.service.RateLimitService;
+import com.anonchat.backend.service.RoomIdAllocator;
+import com.anonchat.backend.service.RoomReaper;
+import com.anonchat.backend.service.RoomMetadataCache;
+import com.anonchat.backend.service.SequenceLeases;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stats")
+@RequiredArgsConstructor
+public class StatsController {
+
+    private final PdfExportCache exportCache;
+    private final RateLimitService rateLimitService;
+    private final HistoryMigrator historyMigrator;
+    private final HotHistoryTier historyTier;
+    private final SequenceLeases sequenceLeases;
+    private final PresenceService presenceService;
+    private final PresenceEvents presenceEvents;
+    private final EphemeralRelay ephemeralRelay;
+    private final OutboundBackpressure outboundBackpressure;
+    private final RoomMetadataCache roomMetadataCache;
+    private final RoomReaper roomReaper;
+    private final RoomIdAllocator roomIdAllocator;
+
+    // PDF export cache hits/misses and generation times
+    @GetMapping("/export")
+    public ResponseEntity<Map<String, Object>> exportStats() {
+        return ResponseEntity.ok(exportCache.stats());
+    }
+
+    // Rate limiter entry count and evictions
+    @GetMapping("/rate-limit")
+    public ResponseEntity<Map<String, Object>> rateLimitStats() {
+        return ResponseEntity.ok(rateLimitService.stats());
+    }
+
+    // Progress of the lazy history migration to the compact codec
+    @GetMapping("/history")
+    public ResponseEntity<Map<String, Object>> historyStats() {
+        return ResponseEntity.ok(historyMigrator.stats());
+    }
+
+    // Sequence blocks leased from Redis, and how many numbers each was good for
+    @GetMapping("/sequences")
+    public ResponseEntity<Map<String, Object>> sequenceStats() {
+        return ResponseEntity.ok(sequenceLeases.stats());
+    }
+
+    // Hit rate, rooms and memory of the in-memory history tier
+    @GetMapping("/history-tier")
+    public ResponseEntity<Map<String, Object>> historyTierStats() {
+        return ResponseEntity.ok(historyTier.stats());
+    }
+
+    // Presence heartbeats, local sessions and live nodes as seen by this server
+    @GetMapping("/presence")
+    public ResponseEntity<Map<String, Object>> presenceStats() {
+        return ResponseEntity.ok(presenceService.stats());
+    }
+
+    // Join/leave changes announced on their own vs folded into summaries
+    @GetMapping("/presence-events")
+    public ResponseEntity<Map<String, Object>> presenceEventsStats() {
+        return ResponseEntity.ok(presenceEvents.stats());
+    }
+
+    // Ephemeral signals relayed, replaced by newer ones, and over a session's budget
+    @GetMapping("/ephemeral")
+    public ResponseEntity<Map<String, Object>> ephemeralStats() {
+        return ResponseEntity.ok(ephemeralRelay.stats());
+    }
+
+    // Outbound queue depth and drops, per slow session and per room
+    @GetMapping("/outbound")
+    public ResponseEntity<Map<String, Object>> outboundStats() {
+        return ResponseEntity.ok(outboundBackpressure.stats());
+    }
+
+    // Room metadata near-cache hit rate, invalidations, and whether it is answering reads
+    @GetMapping("/room-cache")
+    public ResponseEntity<Map<String, Object>> roomCacheStats() {
+        return ResponseEntity.ok(roomMetadataCache.stats());
+    }
+
+    // Background reaper passes, keys scanned and expiries restored
+    @GetMapping("/reaper")
+    public ResponseEntity<Map<String, Object>> reaperStats() {
+        return ResponseEntity.ok(roomReaper.stats());
+    }
+
+    // Room ID reservations, collisions and the pre-reserved pool
+    @GetMapping("/room-id")
+    public ResponseEntity<Map<String, Object>> roomIdStats() {
+        return ResponseEntity.ok(roomIdAllocator.stats());
+    }
+}
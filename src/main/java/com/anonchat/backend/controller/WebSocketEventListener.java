@@ -1,11 +1,10 @@
 package com.anonchat.backend.controller;
 
-import com.anonchat.backend.model.ChatMessage;
 import com.anonchat.backend.service.ChatService;
+import com.anonchat.backend.service.PresenceEvents;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
@@ -17,11 +16,14 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class WebSocketEventListener {
 
-    private final SimpMessageSendingOperations messagingTemplate;
     private final ChatService chatService;
+    private final PresenceEvents presenceEvents;
 
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
+        // Presence first: the session is gone whether or not it ever joined a room or the room still exists
+        chatService.userLeft(event.getSessionId());
+
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
 
         Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
@@ -38,19 +40,8 @@ public class WebSocketEventListener {
         if (username != null && roomId != null) {
             log.info("User Disconnected: {} from Room: {}", username, roomId);
 
-            var chatMessage = ChatMessage.builder()
-                    .type(ChatMessage.MessageType.LEAVE)
-                    .sender(username)
-                    .content("left the room.")
-                    .build();
-
-            // Saves Leave event to history
-            chatService.saveMessage(roomId, chatMessage);
-
-            // Update user count
-            chatService.userLeft(roomId);
-
-            messagingTemplate.convertAndSend("/topic/" + roomId, chatMessage);
+            // Saves Leave event to history; during a reconnect storm it is part of one summary message
+            presenceEvents.left(roomId, username);
         }
     }
 }
\ No newline at end of file
@@ -13,9 +13,20 @@ public class ChatMessage {
     private String sender;
     private MessageType type;
 
+    // Assigned by the history store that persisted the message (e.g. the Redis stream entry ID); null otherwise
+    private String id;
+    // Epoch millis when the server accepted the message
+    private Long timestamp;
+    // Per-room sequence number (1, 2, 3...); lets reconnecting clients ask for exactly what they missed
+    private Long seq;
+
     public enum MessageType {
         CHAT,
         JOIN,
-        LEAVE
+        LEAVE,
+        // Several joins and leaves in one room, announced as one message (see PresenceEvents)
+        PRESENCE,
+        // Typing indicators, read markers and the like: relayed to the room, never stored (see EphemeralRelay)
+        EPHEMERAL
     }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.anonchat.backend.model;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * A window of room history, oldest first. Messages are numbered by their room sequence (1 = first message ever
+ * sent); numbers grow from one message to the next but may skip.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HistoryPage {
+
+    private List<Object> messages;
+
+    // Sequence of the first/last message in this page (0 when empty)
+    private long firstSeq;
+    private long lastSeq;
+
+    // Sequence of the newest message in the room; doubles as the room version
+    private long latestSeq;
+
+    // True if older messages are still retained before firstSeq
+    private boolean hasMore;
+}
@@ -1,48 +1,278 @@
 package com.anonchat.backend.service;
 
 import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 @RequiredArgsConstructor
 public class ChatService {
     private final RedisTemplate<String, Object> redisTemplate;
+    private final MessageWriteBehindBuffer writeBehindBuffer;
+    private final PdfExportCache exportCache;
+    private final HistoryStore historyStore;
+    private final SequenceLeases sequenceLeases;
+    private final PresenceService presenceService;
+    private final RoomMessageRates roomMessageRates;
+    private final RoomMetadataCache metadataCache;
+    private final HotHistoryTier historyTier;
+    private final RoomPurger roomPurger;
+
+    // Null until a MeterRegistry is injected
+    private Timer saveTimer;
+    private Timer tierReadTimer;
+    private Timer storeReadTimer;
+
+    // Striped per-room locks: taking a number, the write-through and queueing happen together, so this node queues
+    // in sequence order. Nothing inside waits: numbers are leased and buffer room reserved before the lock.
+    private final ReentrantLock[] sequenceLocks = newLocks(64);
 
     // CONSTANT: Maximum messages to keep in memory per room
-    private static final int HISTORY_LIMIT = 1000;
+    static final int HISTORY_LIMIT = 1000;
+
+    // TTL: 1 hour
+    static final Duration ROOM_TTL = Duration.ofHours(1);
+
+    // Page size bounds for the paginated history API
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.saveTimer = Timer.builder("anonchat.chat.save")
+                .description("Time to number and queue a message for history")
+                .register(meterRegistry);
+        this.tierReadTimer = Timer.builder("anonchat.history.read")
+                .description("Time to answer a history or history page read")
+                .tag("source", "memory")
+                .register(meterRegistry);
+        this.storeReadTimer = Timer.builder("anonchat.history.read")
+                .description("Time to answer a history or history page read")
+                .tag("source", "redis")
+                .register(meterRegistry);
+    }
 
     public void saveMessage(String roomId, ChatMessage message) {
-        String key = "room:" + roomId;
-        redisTemplate.opsForList().rightPush(key, message);
+        long start = System.nanoTime();
+        try {
+            save(roomId, message);
+            roomMessageRates.record(roomId);
+        } finally {
+            Timer timer = saveTimer;
+            if (timer != null) timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
 
-        // If size > 1000, remove the 'left' (oldest) item.
-        redisTemplate.opsForList().trim(key, -HISTORY_LIMIT, -1);
+    private void save(String roomId, ChatMessage message) {
+        if (message.getTimestamp() == null) message.setTimestamp(System.currentTimeMillis());
 
-        // TTL: 1 hour
-        redisTemplate.expire(key, 1, TimeUnit.HOURS);
+        // May wait briefly when the buffer is full; false means the message is written inline below
+        boolean reserved = writeBehindBuffer.reserve();
+        boolean queued = false;
+        try {
+            ReentrantLock lock = sequenceLocks[Math.floorMod(roomId.hashCode(), sequenceLocks.length)];
+            while (message.getSeq() == null) {
+                // One INCRBY when the room's block is used up or expired
+                sequenceLeases.ensure(roomId, block -> historyTier.leased(roomId, block.first(), block.last()));
+
+                lock.lock();
+                try {
+                    // Numbered before it is broadcast, so clients can resume from the last sequence they saw.
+                    // 0: other senders used up the block since; lease another
+                    long seq = sequenceLeases.next(roomId);
+                    if (seq == 0) continue;
+
+                    message.setSeq(seq);
+                    historyTier.append(roomId, message);
+
+                    // Queued and written in batches (one HistoryStore.append each) off the STOMP thread
+                    if (reserved) {
+                        writeBehindBuffer.enqueueReserved(roomId, message);
+                        queued = true;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            if (reserved && !queued) writeBehindBuffer.unreserve();
+        }
+
+        if (!reserved) writeBehindBuffer.writeInline(roomId, message);
     }
 
     public List<Object> getHistory(String roomId) {
-        String key = "room:" + roomId;
+        long start = System.nanoTime();
+
+        // Active rooms are answered from memory if nothing was numbered that this node hasn't seen
+        long latest = historyStore.latestSequence(roomId);
+        List<Object> hot = historyTier.readAll(roomId, latest);
+        if (hot != null) {
+            timeRead(tierReadTimer, start);
+            return hot;
+        }
+
+        // Read-your-writes: push anything still queued for this room first
+        writeBehindBuffer.flushRoom(roomId);
+
+        List<Object> messages = historyStore.readAll(roomId);
+        historyTier.promote(roomId, latest, messages);
+        timeRead(storeReadTimer, start);
+        return messages;
+    }
+
+    /**
+     * Room version: its generation and the sequence of the newest stored message (0 for an empty room), after
+     * writing out what this node still buffers for it.
+     * Costs a single round trip, so clients polling history can be answered with a 304.
+     */
+    public HistoryVersion getHistoryVersion(String roomId) {
+        writeBehindBuffer.flushRoom(roomId);
+        return historyStore.version(roomId);
+    }
+
+    /**
+     * Highest sequence that can belong to a message of the room, including messages other nodes have numbered but
+     * not written yet. Numbers this node leased and didn't use are left out when nobody numbered after them.
+     */
+    public long getLatestSequence(String roomId) {
+        writeBehindBuffer.flushRoom(roomId);
+        return sequenceLeases.lastUsed(roomId, historyStore.latestSequence(roomId));
+    }
+
+    /**
+     * True when every number up to {@link #getLatestSequence} belongs to a message, so one that isn't stored yet
+     * is still in some node's write-behind buffer (see {@link SequenceLeases#consecutive}).
+     */
+    public boolean hasConsecutiveSequences() {
+        return sequenceLeases.consecutive();
+    }
+
+    /**
+     * Bounded history window. With no cursor the newest {@code limit} messages are returned;
+     * {@code before} pages backwards and {@code after} fetches what arrived since a known sequence.
+     */
+    public HistoryPage getHistoryPage(String roomId, int limit, Long before, Long after) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+        if (before != null && after != null)
+            throw new IllegalArgumentException("Use either 'before' or 'after', not both.");
+
+        long start = System.nanoTime();
+        long latest = historyStore.latestSequence(roomId);
+        HistoryPage page = historyTier.readPage(roomId, latest, limit, before, after);
+
+        // Written on this node but not held in full yet: fill it once, so the following pages come from memory
+        if (page == null && historyTier.shouldWarmUp(roomId)) {
+            writeBehindBuffer.flushRoom(roomId);
+            historyTier.promote(roomId, latest, historyStore.readAll(roomId));
+            page = historyTier.readPage(roomId, latest, limit, before, after);
+        }
+        if (page != null) {
+            timeRead(tierReadTimer, start);
+            return page;
+        }
 
-        return redisTemplate.opsForList().range(key, 0, -1);
+        writeBehindBuffer.flushRoom(roomId);
+
+        page = historyStore.readPage(roomId, limit, before, after);
+        timeRead(storeReadTimer, start);
+        return page;
+    }
+
+    /**
+     * Walks the retained history oldest-first, one bounded page at a time,
+     * up to and including sequence {@code untilSeq} (typically a version read earlier).
+     */
+    public Iterable<List<Object>> iterateHistory(String roomId, int pageSize, long untilSeq) {
+        int size = Math.min(Math.max(1, pageSize), MAX_PAGE_SIZE);
+
+        return () -> new Iterator<>() {
+            private final long end = untilSeq;
+            private long cursor = 0;
+            private List<Object> next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) return true;
+                if (cursor >= end) return false;
+
+                HistoryPage page = getHistoryPage(roomId, size, null, cursor);
+                if (page.getMessages().isEmpty()) {
+                    cursor = end;
+                    return false;
+                }
+
+                // Drop anything numbered after the snapshot; sequences skip, so cut by each message's own
+                List<Object> messages = page.getMessages();
+                if (page.getLastSeq() > end) {
+                    int keep = 0;
+                    while (keep < messages.size() && sequenceOf(messages.get(keep)) <= end) keep++;
+                    messages = messages.subList(0, keep);
+                }
+
+                cursor = page.getLastSeq();
+                if (messages.isEmpty()) return false;
+
+                next = messages;
+                return true;
+            }
+
+            @Override
+            public List<Object> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                List<Object> messages = next;
+                next = null;
+                return messages;
+            }
+        };
     }
 
     public void deleteRoom(String roomId) {
-        redisTemplate.opsForValue().set("room:" + roomId + ":deleting", "true", java.time.Duration.ofSeconds(3));
+        purgeRooms(List.of(roomId));
+    }
 
-        redisTemplate.delete("room:" + roomId);
-        redisTemplate.delete("room:" + roomId + ":owner");
-        redisTemplate.delete("room:" + roomId + ":count");
+    /**
+     * Deletes rooms: drops what this node holds for them, then removes their keys from Redis atomically,
+     * a batch of rooms per round trip. Returns how many Redis keys were removed.
+     */
+    public long purgeRooms(List<String> roomIds) {
+        for (String roomId : roomIds) {
+            writeBehindBuffer.discardRoom(roomId);
+            sequenceLeases.evictRoom(roomId);
+            historyTier.evictRoom(roomId);
+            exportCache.evictRoom(roomId);
+        }
+
+        // Tombstone, history, counter, generation, name and owner in one script
+        long unlinked = roomPurger.purge(roomIds);
+
+        for (String roomId : roomIds) {
+            metadataCache.invalidate(roomId, RoomMetadataCache.Field.DELETING);
+            metadataCache.invalidate(roomId, RoomMetadataCache.Field.NAME);
+            metadataCache.invalidate(roomId, RoomMetadataCache.Field.OWNER);
+        }
+        return unlinked;
     }
 
+    // Checked on every disconnect; answered from the near-cache while it is live
     public boolean isRoomBeingDeleted(String roomId) {
-        return redisTemplate.hasKey("room:" + roomId + ":deleting");
+        return metadataCache.get(roomId, RoomMetadataCache.Field.DELETING,
+                () -> Boolean.TRUE.equals(redisTemplate.hasKey("room:" + roomId + ":deleting")) ? "true" : null) != null;
     }
 
     public String attemptToClaimRoom(String roomId) {
@@ -54,28 +284,63 @@ public class ChatService {
         Boolean isNewOwner = redisTemplate.opsForValue()
                 .setIfAbsent(key, token, java.time.Duration.ofHours(1));
 
-        if (Boolean.TRUE.equals(isNewOwner))
+        if (Boolean.TRUE.equals(isNewOwner)) {
+            metadataCache.invalidate(roomId, RoomMetadataCache.Field.OWNER);
             return token;
-        else
+        } else
             return null;
     }
 
     public boolean verifyOwner(String roomId, String token) {
-        String key = "room:" + roomId + ":owner";
-        String storedToken = (String) redisTemplate.opsForValue().get(key);
-        return storedToken != null && storedToken.equals(token);
+        if (token == null) return false;
+
+        // Wrong tokens are turned away from memory; the cache only holds a hash of the real one
+        String ownerHash = metadataCache.get(roomId, RoomMetadataCache.Field.OWNER,
+                () -> RoomMetadataCache.tokenHash(readOwner(roomId)));
+        if (!RoomMetadataCache.tokenMatches(ownerHash, token)) return false;
+
+        // A match grants deletion, so it is confirmed against Redis rather than trusted to the cache
+        String storedToken = readOwner(roomId);
+        return storedToken != null && MessageDigest.isEqual(
+                storedToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
     }
 
-    public void userJoined(String roomId) {
-        redisTemplate.opsForValue().increment("room:" + roomId + ":count", 1);
+    private String readOwner(String roomId) {
+        return (String) redisTemplate.opsForValue().get("room:" + roomId + ":owner");
     }
 
-    public void userLeft(String roomId) {
-        Long count = redisTemplate.opsForValue().decrement("room:" + roomId + ":count", 1);
-        if (count != null && count <= 0) {
-            // Room is empty! Reset ownership.
-            redisTemplate.delete("room:" + roomId + ":count");
+    public void userJoined(String roomId, String sessionId, String username) {
+        presenceService.join(roomId, sessionId, username);
+    }
+
+    public void userLeft(String sessionId) {
+        String roomId = presenceService.leave(sessionId);
+        if (roomId == null) return;
+
+        // Counted across all nodes, with fresh node membership: only reset ownership if the room is really empty
+        if (presenceService.occupancy(roomId, true) == 0) {
             redisTemplate.delete("room:" + roomId + ":owner");
+            metadataCache.invalidate(roomId, RoomMetadataCache.Field.OWNER);
         }
     }
+
+    public List<String> getOnlineUsers(String roomId) {
+        return presenceService.onlineUsers(roomId);
+    }
+
+    // Pages only hold messages from the stores, all numbered; anything else sorts first
+    private static long sequenceOf(Object message) {
+        Long seq = message instanceof ChatMessage chatMessage ? chatMessage.getSeq() : null;
+        return seq != null ? seq : 0;
+    }
+
+    private static void timeRead(Timer timer, long start) {
+        if (timer != null) timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static ReentrantLock[] newLocks(int count) {
+        ReentrantLock[] locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) locks[i] = new ReentrantLock();
+        return locks;
+    }
 }
@@ -0,0 +1,300 @@
+package com.anonchat.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster-wide version of the per-IP rule in {@link RateLimitService}: one GCRA bucket per IP in Redis,
+ * shared by every node.
+ * <p>
+ * Nodes don't ask Redis for every message. They lease a small block of tokens per IP and spend it locally;
+ * when a lease runs dry, the next block is fetched in the background, and a "bucket empty until" answer is
+ * cached so rejections stay local too. Tokens are debited in Redis when leased, so the cluster never
+ * allows more than the rule does. The cost is the other way round: tokens parked in another node's lease
+ * are not available here until that lease goes idle and the reconciler hands them back.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "anonchat.rate-limit.mode", havingValue = "cluster")
+public class ClusterRateLimiter {
+
+    public enum Decision { ALLOW, DENY, UNAVAILABLE }
+
+    static final String KEY_PREFIX = "ratelimit:";
+
+    private static final long INTERVAL_MS = TimeUnit.NANOSECONDS.toMillis(RateLimitService.EMISSION_INTERVAL_NANOS);
+
+    /*
+     * KEYS[1] = bucket, ARGV = interval ms, capacity, n.
+     * n > 0: lease up to n tokens. Returns how many were granted, or -(ms until the next token) if none.
+     * n < 0: give -n unused tokens back. Returns 0.
+     * The bucket holds the GCRA arrival time in ms, on the Redis clock so all nodes agree.
+     * Run against a real Redis by ClusterRateLimiterScriptTests.
+     */
+    static final RedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>("""
+            local t = redis.call('TIME')
+            local now = t[1] * 1000 + math.floor(t[2] / 1000)
+            local interval = tonumber(ARGV[1])
+            local capacity = tonumber(ARGV[2])
+            local n = tonumber(ARGV[3])
+
+            local tat = tonumber(redis.call('GET', KEYS[1]) or now)
+            if tat < now then tat = now end
+
+            if n < 0 then
+                tat = math.max(now, tat + n * interval)
+                if tat == now then
+                    redis.call('DEL', KEYS[1])
+                else
+                    redis.call('SET', KEYS[1], tat, 'PX', tat - now)
+                end
+                return 0
+            end
+
+            local available = capacity - math.ceil((tat - now) / interval)
+            if available <= 0 then
+                return -(tat - now - (capacity - 1) * interval)
+            end
+
+            local granted = math.min(n, available)
+            tat = tat + granted * interval
+            redis.call('SET', KEYS[1], tat, 'PX', tat - now)
+            return granted
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final int leaseSize;
+    private final long leaseIdleNanos;
+    private final int maxLeases;
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final ExecutorService refiller;
+    private final ScheduledExecutorService reconciler;
+
+    private final AtomicLong localDecisions = new AtomicLong();
+    private final AtomicLong redisCalls = new AtomicLong();
+    private final AtomicLong redisFailures = new AtomicLong();
+    private final AtomicLong returnedTokens = new AtomicLong();
+
+    public ClusterRateLimiter(RedisTemplate<String, String> redisTemplate,
+                              @Value("${anonchat.rate-limit.lease-size:2}") int leaseSize,
+                              @Value("${anonchat.rate-limit.lease-idle-ms:2000}") long leaseIdleMs,
+                              @Value("${anonchat.rate-limit.reconcile-interval-ms:1000}") long reconcileIntervalMs,
+                              @Value("${anonchat.rate-limit.max-entries:100000}") int maxLeases) {
+        this.redisTemplate = redisTemplate;
+        this.leaseSize = Math.max(1, Math.min(leaseSize, RateLimitService.CAPACITY));
+        this.leaseIdleNanos = TimeUnit.MILLISECONDS.toNanos(leaseIdleMs);
+        this.maxLeases = maxLeases;
+
+        this.refiller = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "rate-limit-lease");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (reconcileIntervalMs > 0) {
+            reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rate-limit-reconciler");
+                t.setDaemon(true);
+                return t;
+            });
+            reconciler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMs, reconcileIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            reconciler = null;
+        }
+    }
+
+    /**
+     * Spend one token of {@code ipAddress}'s cluster-wide budget.
+     * Returns UNAVAILABLE if Redis could not be reached; the caller decides what to fall back to.
+     */
+    public Decision tryAcquire(String ipAddress) {
+        long now = System.nanoTime();
+        Lease lease = leaseFor(ipAddress, now);
+
+        if (lease != null) {
+            boolean spent = false;
+            boolean prefetch = false;
+            synchronized (lease) {
+                lease.lastUsed = now;
+                if (lease.tokens > 0) {
+                    lease.tokens--;
+                    spent = true;
+                    prefetch = lease.tokens == 0 && !lease.refilling;
+                    if (prefetch) lease.refilling = true;
+                } else if (now - lease.deniedUntil < 0) {
+                    localDecisions.incrementAndGet();
+                    return Decision.DENY;
+                } else if (lease.retired) {
+                    lease = null;
+                } else {
+                    lease.syncCalls++;
+                }
+            }
+            if (spent) {
+                localDecisions.incrementAndGet();
+                if (prefetch) prefetch(ipAddress, lease);
+                return Decision.ALLOW;
+            }
+        }
+
+        // Nothing leased and no cached denial: this request has to wait for Redis
+        long reply;
+        try {
+            reply = lease(ipAddress, leaseSize);
+        } catch (RuntimeException e) {
+            redisFailures.incrementAndGet();
+            log.debug("Rate limit lease for {} failed: {}", ipAddress, e.getMessage());
+            if (lease != null) {
+                synchronized (lease) {
+                    lease.syncCalls--;
+                }
+            }
+            return Decision.UNAVAILABLE;
+        }
+
+        if (lease == null) {
+            // Lease table is full: decide this request alone and hand any extra tokens straight back
+            if (reply > 1) giveBack(ipAddress, (int) reply - 1);
+            return reply > 0 ? Decision.ALLOW : Decision.DENY;
+        }
+
+        synchronized (lease) {
+            lease.syncCalls--;
+            return apply(lease, reply, now, true) ? Decision.ALLOW : Decision.DENY;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "leases", leases.size(),
+                "localDecisions", localDecisions.get(),
+                "redisCalls", redisCalls.get(),
+                "redisFailures", redisFailures.get(),
+                "returnedTokens", returnedTokens.get()
+        );
+    }
+
+    /**
+     * Retire leases idle for longer than lease-idle-ms and give their unused tokens back to Redis.
+     */
+    public void reconcile() {
+        long now = System.nanoTime();
+        leases.forEach((ip, lease) -> {
+            int unused;
+            synchronized (lease) {
+                if (lease.refilling || lease.syncCalls > 0 || now - lease.lastUsed < leaseIdleNanos) return;
+                lease.retired = true;
+                leases.remove(ip, lease);
+                unused = lease.tokens;
+                lease.tokens = 0;
+            }
+            if (unused > 0) giveBack(ip, unused);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reconciler != null) reconciler.shutdownNow();
+        refiller.shutdownNow();
+        // Don't strand tokens when a node leaves the cluster
+        leases.forEach((ip, lease) -> {
+            if (lease.tokens > 0) giveBack(ip, lease.tokens);
+        });
+        leases.clear();
+    }
+
+    // A new lease starts at the caller's "now": a later timestamp would read as a cached denial
+    private Lease leaseFor(String ipAddress, long now) {
+        Lease lease = leases.get(ipAddress);
+        if (lease != null && !lease.retired) return lease;
+        if (leases.size() >= maxLeases) return null;
+        return leases.compute(ipAddress, (ip, current) -> current == null || current.retired ? new Lease(now) : current);
+    }
+
+    private void prefetch(String ipAddress, Lease lease) {
+        try {
+            refiller.execute(() -> {
+                long reply;
+                try {
+                    reply = lease(ipAddress, leaseSize);
+                } catch (RuntimeException e) {
+                    redisFailures.incrementAndGet();
+                    synchronized (lease) {
+                        lease.refilling = false;
+                    }
+                    return;
+                }
+                synchronized (lease) {
+                    lease.refilling = false;
+                    apply(lease, reply, System.nanoTime(), false);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor shut down
+            synchronized (lease) {
+                lease.refilling = false;
+            }
+        }
+    }
+
+    // Fold a script reply into the lease; optionally spend one token for the waiting request
+    private static boolean apply(Lease lease, long reply, long now, boolean spend) {
+        if (reply > 0) {
+            lease.tokens += (int) reply - (spend ? 1 : 0);
+            lease.deniedUntil = now;
+            return true;
+        }
+        lease.deniedUntil = now + TimeUnit.MILLISECONDS.toNanos(-reply);
+        return false;
+    }
+
+    private void giveBack(String ipAddress, int tokens) {
+        try {
+            lease(ipAddress, -tokens);
+            returnedTokens.addAndGet(tokens);
+        } catch (RuntimeException e) {
+            // Not returned: the bucket just refills on its own a little later
+            redisFailures.incrementAndGet();
+        }
+    }
+
+    private long lease(String ipAddress, int tokens) {
+        redisCalls.incrementAndGet();
+        Long reply = redisTemplate.execute(LEASE_SCRIPT, List.of(KEY_PREFIX + ipAddress),
+                String.valueOf(INTERVAL_MS), String.valueOf(RateLimitService.CAPACITY), String.valueOf(tokens));
+        if (reply == null) throw new IllegalStateException("Empty reply from rate limit script");
+        return reply;
+    }
+
+    private static final class Lease {
+        int tokens;          // Leased from Redis, not yet spent
+        long deniedUntil;    // nanoTime until which Redis said the bucket is empty
+        long lastUsed;
+        int syncCalls;       // Requests currently waiting on Redis for this IP
+        boolean refilling;   // Background prefetch in flight
+        boolean retired;     // Removed by the reconciler; callers must look up a fresh lease
+
+        // nanoTime can be negative, so timestamps start at "now" rather than 0
+        Lease(long now) {
+            this.deniedUntil = now;
+            this.lastUsed = now;
+        }
+    }
+}
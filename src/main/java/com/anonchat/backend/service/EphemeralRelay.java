@@ -0,0 +1,178 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Typing indicators, read markers and other UI signals: broadcast to the room as {@code EPHEMERAL} messages
+ * without being saved, filtered or numbered.
+ * <p>
+ * Signals are coalesced per room over {@code interval-ms}. The first one in a quiet room goes out at once; after
+ * that each sender's newer signal replaces its older one, and only the latest per sender is broadcast when the
+ * interval ends. Each session may send {@code max-per-second} signals; the count is kept in its session
+ * attributes, so the check touches no shared table and no Redis.
+ */
+@Slf4j
+@Component
+public class EphemeralRelay {
+
+    static final String BUDGET_ATTRIBUTE = "EPHEMERAL_BUDGET";
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final long intervalMs;
+    private final int maxPerSecond;
+    private final int maxLength;
+    private final ScheduledExecutorService scheduler;
+
+    // roomId -> (sessionId -> latest signal) held until the room's interval ends; present while it is open
+    private final Map<String, Map<String, ChatMessage>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong relayed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public EphemeralRelay(SimpMessageSendingOperations messagingTemplate,
+                          @Value("${anonchat.ephemeral.interval-ms:250}") long intervalMs,
+                          @Value("${anonchat.ephemeral.max-per-second:20}") int maxPerSecond,
+                          @Value("${anonchat.ephemeral.max-length:256}") int maxLength) {
+        this.messagingTemplate = messagingTemplate;
+        this.intervalMs = Math.max(0, intervalMs);
+        this.maxPerSecond = Math.max(1, maxPerSecond);
+        this.maxLength = Math.max(1, maxLength);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ephemeral-relay");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("anonchat.ephemeral.signals", relayed, AtomicLong::get)
+                .description("Ephemeral signals, by whether they were broadcast, replaced by a newer one, or rejected")
+                .tag("result", "relayed").register(meterRegistry);
+        FunctionCounter.builder("anonchat.ephemeral.signals", coalesced, AtomicLong::get)
+                .description("Ephemeral signals, by whether they were broadcast, replaced by a newer one, or rejected")
+                .tag("result", "coalesced").register(meterRegistry);
+        FunctionCounter.builder("anonchat.ephemeral.signals", rejected, AtomicLong::get)
+                .description("Ephemeral signals, by whether they were broadcast, replaced by a newer one, or rejected")
+                .tag("result", "rejected").register(meterRegistry);
+    }
+
+    /**
+     * Relays a signal from a session that joined the room as {@code sender}. Returns false when it was dropped:
+     * over the session's budget, empty, or longer than {@code max-length}.
+     */
+    public boolean relay(String roomId, String sessionId, String sender, String content,
+                         Map<String, Object> sessionAttributes) {
+        if (content == null || content.isEmpty() || content.length() > maxLength
+                || !withinBudget(sessionAttributes, System.nanoTime())) {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        ChatMessage signal = ChatMessage.builder()
+                .type(ChatMessage.MessageType.EPHEMERAL)
+                .sender(sender)
+                .content(content)
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        if (intervalMs == 0) {
+            send(roomId, signal);
+            return true;
+        }
+
+        boolean[] opened = {false};
+        pending.compute(roomId, (id, held) -> {
+            if (held == null) {
+                opened[0] = true;
+                return new LinkedHashMap<>();
+            }
+            if (held.put(sessionId, signal) != null) coalesced.incrementAndGet();
+            return held;
+        });
+
+        if (opened[0]) {
+            send(roomId, signal);
+            scheduler.schedule(() -> flushQuietly(roomId), intervalMs, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("intervalMs", intervalMs);
+        stats.put("maxPerSecond", maxPerSecond);
+        stats.put("openRooms", pending.size());
+        stats.put("relayed", relayed.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    // Fixed one-second window per session; frames of one session are handled in order, the lock is uncontended
+    boolean withinBudget(Map<String, Object> sessionAttributes, long nowNanos) {
+        if (sessionAttributes == null) return false;
+        Budget budget = (Budget) sessionAttributes.computeIfAbsent(BUDGET_ATTRIBUTE, key -> new Budget());
+        synchronized (budget) {
+            if (nowNanos - budget.windowStart >= TimeUnit.SECONDS.toNanos(1) || budget.count == 0) {
+                budget.windowStart = nowNanos;
+                budget.count = 0;
+            }
+            return ++budget.count <= maxPerSecond;
+        }
+    }
+
+    private void flushQuietly(String roomId) {
+        try {
+            flush(roomId);
+        } catch (Exception e) {
+            log.warn("Ephemeral signals for room {} were not relayed", roomId, e);
+        }
+    }
+
+    /** Ends the room's interval: sends the latest signal per sender, and keeps the interval open if there were any */
+    void flush(String roomId) {
+        List<ChatMessage> latest = new ArrayList<>();
+        pending.computeIfPresent(roomId, (id, held) -> {
+            if (held.isEmpty()) return null; // A quiet interval: the next signal is sent at once
+            latest.addAll(held.values());
+            return new LinkedHashMap<>();
+        });
+        if (latest.isEmpty()) return;
+
+        scheduler.schedule(() -> flushQuietly(roomId), intervalMs, TimeUnit.MILLISECONDS);
+        for (ChatMessage signal : latest) send(roomId, signal);
+    }
+
+    private void send(String roomId, ChatMessage signal) {
+        relayed.incrementAndGet();
+        messagingTemplate.convertAndSend("/topic/" + roomId, signal);
+    }
+
+    private static final class Budget {
+        long windowStart;
+        int count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
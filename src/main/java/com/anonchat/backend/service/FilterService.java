@@ -1,16 +1,30 @@
 package com.anonchat.backend.service;
 
+import com.anonchat.backend.util.AhoCorasickMatcher;
+import com.anonchat.backend.util.TextNormalizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.text.Normalizer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
+@Slf4j
 public class FilterService {
 
-    /** Profanity with severity level */
-    private static final Map<String, Integer> BAD_WORDS = Map.of(
+    /** Built-in profanity with severity level (used when no dictionary file is configured) */
+    static final Map<String, Integer> BAD_WORDS = Map.of(
             "stupid", 1,
             "idiot", 1,
             "dumb", 1,
@@ -24,31 +38,143 @@ public class FilterService {
             "server", "anonchat"
     );
 
-    /** Precompiled profanity patterns */
-    private static final List<Pattern> BAD_WORD_PATTERNS = BAD_WORDS.keySet()
-            .stream()
-            .map(word ->
-                    Pattern.compile("\\b" + Pattern.quote(word) + "\\b", Pattern.CASE_INSENSITIVE)
-            )
-            .toList();
+    /** Substring matcher over the reserved names (blocks "admin_123", "super_admin", "moderator_dave") */
+    private static final AhoCorasickMatcher RESERVED_MATCHER = AhoCorasickMatcher.build(
+            RESERVED_NAMES.stream().collect(java.util.stream.Collectors.toMap(name -> name, name -> 1)), false);
+
+    /** Single-pass matcher over the whole dictionary; replaced atomically on reload */
+    private volatile AhoCorasickMatcher matcher = buildMatcher(BAD_WORDS);
+
+    /** Words below this severity are left alone */
+    private final int minSeverity;
+
+    private final Path dictionaryPath;
+    private volatile long dictionaryModified = -1;
+    private final ScheduledExecutorService reloader;
+
+    // Null until a MeterRegistry is injected (plain construction in tests and benchmarks)
+    private Timer sanitizeTimer;
+
+    public FilterService(@Value("${anonchat.filter.dictionary-path:}") String dictionaryPath,
+                         @Value("${anonchat.filter.min-severity:1}") int minSeverity,
+                         @Value("${anonchat.filter.reload-interval-ms:30000}") long reloadIntervalMs) {
+        this.minSeverity = minSeverity;
+        this.dictionaryPath = dictionaryPath == null || dictionaryPath.isBlank() ? null : Path.of(dictionaryPath);
+
+        if (this.dictionaryPath != null) {
+            reloadIfChanged();
+
+            this.reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "filter-dictionary-reload");
+                t.setDaemon(true);
+                return t;
+            });
+            if (reloadIntervalMs > 0) {
+                reloader.scheduleWithFixedDelay(this::reloadIfChanged, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            this.reloader = null;
+        }
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.sanitizeTimer = Timer.builder("anonchat.filter.sanitize")
+                .description("Time to mask dictionary words in a message")
+                .register(meterRegistry);
+    }
 
     /**
      * Sanitize user-generated content
      */
     public String sanitize(String input) {
+        Timer timer = sanitizeTimer;
+        if (timer == null) return mask(input);
+
+        long start = System.nanoTime();
+        try {
+            return mask(input);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String mask(String input) {
         if (input == null || input.isBlank()) {
             return "";
         }
 
-        String normalized = normalize(input);
-        String sanitized = input;
+        // Match on the folded text ("$tup1d", "ｓｔｕｐｉｄ"), mask the original chars behind each hit
+        try (TextNormalizer.Result normalized = TextNormalizer.normalize(input, TextNormalizer.Punctuation.SEPARATE)) {
+            Masker masker = new Masker(input, normalized, minSeverity);
+            matcher.scan(normalized, masker);
+            return masker.result();
+        }
+    }
 
-        for (Pattern pattern : BAD_WORD_PATTERNS) {
-            sanitized = pattern.matcher(sanitized)
-                    .replaceAll(match -> "*".repeat(match.group().length()));
+    /**
+     * Highest severity of any dictionary word in the text (0 if clean)
+     */
+    public int severity(String input) {
+        if (input == null || input.isBlank()) return 0;
+
+        int[] max = {0};
+        try (TextNormalizer.Result normalized = TextNormalizer.normalize(input, TextNormalizer.Punctuation.SEPARATE)) {
+            matcher.scan(normalized, (start, end, severity) -> max[0] = Math.max(max[0], severity));
         }
+        return max[0];
+    }
 
-        return sanitized;
+    /**
+     * Atomically replace the dictionary. The new matcher is built before the swap,
+     * so in-flight messages finish on the old one and nothing waits.
+     */
+    public void swapDictionary(Map<String, Integer> words) {
+        AhoCorasickMatcher next = buildMatcher(words);
+        matcher = next;
+        log.info("Profanity dictionary loaded: {} words.", next.size());
+    }
+
+    /**
+     * Reload the dictionary file if it changed since the last load.
+     * File format: one word per line, optionally "word,severity"; '#' starts a comment.
+     */
+    public void reloadIfChanged() {
+        if (dictionaryPath == null) return;
+
+        try {
+            long modified = Files.getLastModifiedTime(dictionaryPath).toMillis();
+            if (modified == dictionaryModified) return;
+
+            swapDictionary(parseDictionary(Files.readAllLines(dictionaryPath, StandardCharsets.UTF_8)));
+            dictionaryModified = modified;
+        } catch (IOException | RuntimeException e) {
+            // Keep serving with the current dictionary
+            log.error("Failed to load profanity dictionary from {}", dictionaryPath, e);
+        }
+    }
+
+    static Map<String, Integer> parseDictionary(List<String> lines) {
+        Map<String, Integer> words = new HashMap<>();
+        for (String line : lines) {
+            int comment = line.indexOf('#');
+            String entry = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (entry.isEmpty()) continue;
+
+            int severity = 1;
+            int comma = entry.lastIndexOf(',');
+            if (comma > 0) {
+                severity = Integer.parseInt(entry.substring(comma + 1).trim());
+                entry = entry.substring(0, comma).trim();
+            }
+            words.merge(entry.toLowerCase(Locale.ROOT), severity, Math::max);
+        }
+        return words;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reloader != null) reloader.shutdownNow();
     }
 
     /**
@@ -57,36 +183,49 @@ public class FilterService {
     public boolean isValidUsername(String username) {
         if (username == null || username.isBlank()) return false;
 
-        String normalized = normalize(username);
-
-        // 1. Check Exact Match
-        if (RESERVED_NAMES.contains(normalized)) return false;
+        // Folded without punctuation, so "4dm1n", "a.d.m.i.n" and "ａｄｍｉｎ" all read "admin"
+        try (TextNormalizer.Result normalized = TextNormalizer.normalize(username, TextNormalizer.Punctuation.DROP)) {
+            // Exact and partial matches (starts with or contains) in one pass
+            return !RESERVED_MATCHER.containsAny(normalized);
+        }
+    }
 
-        // 2. Check Partial Match (Starts with or Contains)
-        // This blocks "admin_123", "super_admin", "moderator_dave"
-        for (String reserved : RESERVED_NAMES) {
-            if (normalized.contains(reserved)) {
-                return false;
+    // Dictionary words are folded the same way as messages, so "b00b" in the list matches "boob" and "b00b"
+    private static AhoCorasickMatcher buildMatcher(Map<String, Integer> words) {
+        Map<String, Integer> folded = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : words.entrySet()) {
+            String key;
+            try (TextNormalizer.Result normalized =
+                         TextNormalizer.normalize(entry.getKey(), TextNormalizer.Punctuation.SEPARATE)) {
+                key = normalized.toString();
             }
+            if (!key.isEmpty()) folded.merge(key, entry.getValue(), Math::max);
         }
-
-        return true;
+        return AhoCorasickMatcher.build(folded);
     }
 
-    /**
-     * Normalize text:
-     * - lowercase
-     * - remove accents
-     * - collapse spaces
-     * - remove punctuation
-     */
-    private String normalize(String input) {
-        String normalized = Normalizer.normalize(input, Normalizer.Form.NFD);
-        return normalized
-                .replaceAll("\\p{M}", "")      // remove accents
-                .toLowerCase()
-                .replaceAll("[^a-z0-9\\s]", "") // remove symbols
-                .replaceAll("\\s+", " ")        // normalize spaces
-                .trim();
+    /** Masks the original chars behind every match at or above the severity threshold; copies the text only on the first hit */
+    private static final class Masker implements AhoCorasickMatcher.MatchHandler {
+        private final String input;
+        private final TextNormalizer.Result normalized;
+        private final int minSeverity;
+        private char[] masked;
+
+        private Masker(String input, TextNormalizer.Result normalized, int minSeverity) {
+            this.input = input;
+            this.normalized = normalized;
+            this.minSeverity = minSeverity;
+        }
+
+        @Override
+        public void onMatch(int start, int end, int severity) {
+            if (severity < minSeverity) return;
+            if (masked == null) masked = input.toCharArray();
+            Arrays.fill(masked, normalized.originalStart(start), normalized.originalEnd(end - 1), '*');
+        }
+
+        private String result() {
+            return masked == null ? input : new String(masked);
+        }
     }
 }
@@ -0,0 +1,148 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.util.ChatMessageCodec;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lazy migration of stored history to {@link ChatMessageCodec}.
+ * The first time a room's history is read on this node, its list is checked in the background; if it still
+ * holds JSON entries, the whole list is rewritten in one WATCH/MULTI transaction. A write landing in between
+ * aborts the rewrite and the room is simply checked again on a later read. Rooms nobody reads just expire.
+ */
+@Component
+@Slf4j
+public class HistoryMigrator {
+
+    // Rooms checked since the last reset; re-checking a room only costs one LRANGE
+    private static final int MAX_CHECKED_ROOMS = 100_000;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final boolean enabled;
+
+    private final Set<String> checkedRooms = ConcurrentHashMap.newKeySet();
+    private final ExecutorService worker;
+
+    private final AtomicLong migratedRooms = new AtomicLong();
+    private final AtomicLong migratedMessages = new AtomicLong();
+    private final AtomicLong abortedRewrites = new AtomicLong();
+
+    public HistoryMigrator(RedisTemplate<String, Object> redisTemplate,
+                           @Value("${anonchat.history.codec:compact}") String codec,
+                           @Value("${anonchat.history.migrate-on-read:true}") boolean migrateOnRead) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = migrateOnRead && !"json".equalsIgnoreCase(codec);
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "history-migrator");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Schedule a background check of this room, once per room per node.
+     */
+    public void migrateLazily(String roomId) {
+        if (!enabled) return;
+        if (checkedRooms.size() >= MAX_CHECKED_ROOMS) checkedRooms.clear();
+        if (!checkedRooms.add(roomId)) return;
+
+        try {
+            worker.execute(() -> {
+                try {
+                    if (migrateRoom(roomId) < 0) checkedRooms.remove(roomId);
+                } catch (RuntimeException e) {
+                    checkedRooms.remove(roomId);
+                    log.warn("Could not migrate history of room {}: {}", roomId, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            checkedRooms.remove(roomId);
+        }
+    }
+
+    /**
+     * Rewrite every JSON entry of a room in the compact format.
+     * Returns how many entries were rewritten, or -1 if a concurrent write aborted the transaction.
+     */
+    @SuppressWarnings("unchecked")
+    public int migrateRoom(String roomId) {
+        byte[] key = ("room:" + roomId).getBytes(StandardCharsets.UTF_8);
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+
+        Integer rewritten = redisTemplate.execute((RedisCallback<Integer>) connection -> {
+            connection.watch(key);
+
+            List<byte[]> entries = connection.listCommands().lRange(key, 0, -1);
+            if (entries == null || entries.stream().allMatch(ChatMessageCodec::isCompact)) {
+                connection.unwatch();
+                return 0;
+            }
+
+            byte[][] values = new byte[entries.size()][];
+            int legacy = 0;
+            for (int i = 0; i < values.length; i++) {
+                byte[] entry = entries.get(i);
+                ChatMessage message = ChatMessageCodec.isCompact(entry)
+                        ? null : ChatMessageCodec.fromLegacy(serializer.deserialize(entry));
+                if (message != null) {
+                    // In the configured write version, which every node can read
+                    values[i] = serializer.serialize(message);
+                    legacy++;
+                } else {
+                    values[i] = entry;
+                }
+            }
+
+            Long ttl = connection.keyCommands().pTtl(key);
+
+            connection.multi();
+            connection.keyCommands().del(key);
+            connection.listCommands().rPush(key, values);
+            if (ttl != null && ttl > 0) connection.keyCommands().pExpire(key, ttl);
+            List<Object> results = connection.exec();
+
+            return results == null || results.isEmpty() ? -1 : legacy;
+        });
+
+        int result = rewritten != null ? rewritten : 0;
+        if (result < 0) {
+            abortedRewrites.incrementAndGet();
+        } else if (result > 0) {
+            migratedRooms.incrementAndGet();
+            migratedMessages.addAndGet(result);
+            log.debug("Migrated {} history entries of room {} to the compact format", result, roomId);
+        }
+        return result;
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "enabled", enabled,
+                "migratedRooms", migratedRooms.get(),
+                "migratedMessages", migratedMessages.get(),
+                "abortedRewrites", abortedRewrites.get()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+}
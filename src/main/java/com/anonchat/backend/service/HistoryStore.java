@@ -0,0 +1,56 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+
+import java.util.List;
+
+/**
+ * Where room history lives. Every room keeps its newest {@link ChatService#HISTORY_LIMIT} messages,
+ * numbered by a per-room sequence; pages and cursors are expressed in those numbers.
+ * Numbers are handed out in blocks (see {@link SequenceLeases}), so they grow but can skip, and messages numbered
+ * on different nodes may be stored out of order: a page read by position is checked against the sequences it
+ * returned (see {@link HistoryWindow#read}).
+ * Selected with {@code anonchat.history.backend} ({@code list} or {@code stream}).
+ */
+public interface HistoryStore {
+
+    /**
+     * Reserve the next {@code count} sequence numbers of the room and return the last of them, so the block is
+     * {@code result - count + 1 .. result}. Numbers travel with live messages and can be used to resume from them.
+     */
+    long allocateSequences(String roomId, int count);
+
+    /**
+     * Append a batch of numbered messages in sequence order, trimming and refreshing the room TTL
+     * in the same round trip. The first append to a room also stamps its generation (see {@link HistoryVersion}).
+     */
+    void append(String roomId, List<ChatMessage> batch);
+
+    /**
+     * Everything retained for the room, in sequence order.
+     */
+    List<Object> readAll(String roomId);
+
+    /**
+     * Highest sequence number handed out for the room (some may be unused or still buffered), 0 for a new room.
+     */
+    long latestSequence(String roomId);
+
+    /**
+     * The room's generation and the sequence of the message stored last, in one round trip. Unlike
+     * {@link #latestSequence}, it does not count messages still buffered for writing on any node. Every append
+     * changes it, even one of a message numbered earlier on another node.
+     */
+    HistoryVersion version(String roomId);
+
+    /**
+     * Bounded window, see {@link ChatService#getHistoryPage}. Arguments are already validated.
+     */
+    HistoryPage readPage(String roomId, int limit, Long before, Long after);
+
+    /**
+     * Drop the room's messages, its sequence counter and its generation.
+     */
+    void delete(String roomId);
+}
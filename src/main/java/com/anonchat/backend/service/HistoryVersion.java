@@ -0,0 +1,26 @@
+package com.anonchat.backend.service;
+
+/**
+ * Version of a room's history, for ETags and the export cache: taken from what Redis holds, so every node derives
+ * the same version from the same content. The sequence alone is not enough: rooms from before the counter are
+ * versioned by their list size, and a room deleted and created again starts over at 1. The generation is stamped
+ * by the first append after the room's keys were created (0 for rooms never appended to since), so a recreated
+ * room never repeats an earlier room's version.
+ */
+public record HistoryVersion(long generation, long sequence) {
+
+    /** Quoted strong ETag, e.g. {@code "g1k2m3n4-v42"}; {@code prefix} tells exports from history */
+    public String eTag(String prefix) {
+        String gen = generation != 0 ? "g" + Long.toString(generation, 36) + "-" : "";
+        return "\"" + prefix + gen + "v" + sequence + "\"";
+    }
+
+    public HistoryVersion withSequence(long sequence) {
+        return new HistoryVersion(generation, sequence);
+    }
+
+    // Candidate generation for an append; only the first one to land is kept
+    static long newGeneration() {
+        return System.currentTimeMillis();
+    }
+}
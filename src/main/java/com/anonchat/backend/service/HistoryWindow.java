@@ -0,0 +1,187 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Positions [from, to) of a room's retained messages, in sequence order, that a history page covers.
+ * Sequences grow but can skip numbers, so the window is found by binary search on the messages' own sequences.
+ * Shared by the HistoryStore implementations and HotHistoryTier so they all page exactly the same way.
+ * <p>
+ * Stores read a page by position first ({@link #read}), and cut it from everything retained only when the
+ * sequences they read show the position was wrong.
+ */
+record HistoryWindow(int from, int to) {
+
+    // How many entries before its place another node's batch lands, in practice: a positional read takes this
+    // many older entries too, to notice one
+    static final int MARGIN = 16;
+
+    /** Entries counted back from a store's newest one, oldest first, and the sequence of that newest entry */
+    record Slice(List<Object> entries, long newest) {
+    }
+
+    interface Tail {
+        /** The {@code count} entries before the newest {@code skip} ones, and the newest entry's sequence */
+        Slice read(long skip, int count);
+    }
+
+    /**
+     * A page read by position. Where numbers are consecutive, sequence s of a store whose newest entry is
+     * {@code newest} sits {@code newest - s} entries from the end, so the page is one read of its own size (plus
+     * {@link #MARGIN}). The read is checked against the sequences it returned: the page's must be consecutive and
+     * the older entries below them. A gap, an entry out of order or an append in between fall back to cutting the
+     * page from everything retained ({@code all}, at most HISTORY_LIMIT entries).
+     */
+    static HistoryPage read(Tail tail, long newest, int limit, Long before, Long after, Supplier<List<Object>> all) {
+        for (int attempt = 0; attempt < 3 && newest > 0; attempt++) {
+            long oldestRetained = Math.max(1, newest - ChatService.HISTORY_LIMIT + 1);
+            long from;
+            long to;
+            if (after != null) {
+                from = Math.max(after + 1, oldestRetained);
+                to = Math.min(after + limit, newest);
+            } else {
+                to = before != null ? Math.min(before - 1, newest) : newest;
+                from = Math.max(to - limit + 1, oldestRetained);
+            }
+            // Paging past the oldest number the store would hold without gaps: it may hold older ones
+            if (from > to && after == null) break;
+
+            int size = (int) Math.max(0, to - from + 1);
+            Slice slice = tail.read(size > 0 ? newest - to : 0, size + MARGIN);
+            if (slice.newest() != newest) {
+                // Appended in between: the positions moved
+                newest = slice.newest();
+                continue;
+            }
+
+            List<Object> entries = slice.entries();
+            int split = entries.size() - size;
+            if (split < 0 || !consecutive(entries, split, from)) break;
+            if (size == 0) return emptyPage(newest);
+            return new HistoryWindow(split, entries.size()).page(entries.subList(split, entries.size()), from, to, newest);
+        }
+        return page(all.get(), limit, before, after);
+    }
+
+    static HistoryWindow of(IntToLongFunction seqAt, int size, int limit, Long before, Long after) {
+        int from;
+        int to;
+        if (after != null) {
+            from = firstAbove(seqAt, size, after);
+            to = Math.min(size, from + limit);
+        } else {
+            to = before != null ? firstAbove(seqAt, size, before - 1) : size;
+            from = Math.max(0, to - limit);
+        }
+        return new HistoryWindow(from, to);
+    }
+
+    /**
+     * Cut a page out of what a store returned (in storage order), after putting it in sequence order.
+     * The page's latest sequence is the one stored last, as in {@link HistoryStore#version}.
+     */
+    static HistoryPage page(List<Object> stored, int limit, Long before, Long after) {
+        if (stored.isEmpty()) return emptyPage(0);
+
+        long[] seqs = sequences(stored);
+        long latest = seqs[seqs.length - 1];
+        List<Object> ordered = inSequenceOrder(stored, seqs);
+
+        HistoryWindow window = of(i -> seqs[i], seqs.length, limit, before, after);
+        if (window.isEmpty()) return emptyPage(latest);
+        return window.page(ordered.subList(window.from, window.to), seqs[window.from], seqs[window.to - 1], latest);
+    }
+
+    /**
+     * Stored messages in sequence order. Sorting is stable and skipped when already in order, which is the
+     * usual case: only batches of different nodes landing out of order need it.
+     */
+    static List<Object> inSequenceOrder(List<Object> stored) {
+        if (stored == null || stored.isEmpty()) return stored;
+        long[] seqs = sequences(stored);
+        return inSequenceOrder(stored, seqs);
+    }
+
+    static HistoryPage emptyPage(long latest) {
+        return HistoryPage.builder()
+                .messages(List.of())
+                .latestSeq(latest)
+                .build();
+    }
+
+    boolean isEmpty() {
+        return from >= to;
+    }
+
+    HistoryPage page(List<Object> messages, long firstSeq, long lastSeq, long latest) {
+        return HistoryPage.builder()
+                .messages(new ArrayList<>(messages))
+                .firstSeq(firstSeq)
+                .lastSeq(lastSeq)
+                .latestSeq(latest)
+                .hasMore(from > 0)
+                .build();
+    }
+
+    // Sequence of each entry; entries stored before messages carried one are numbered on from the previous entry
+    private static long[] sequences(List<Object> stored) {
+        long[] seqs = new long[stored.size()];
+        long previous = 0;
+        for (int i = 0; i < seqs.length; i++) {
+            Long seq = stored.get(i) instanceof ChatMessage message ? message.getSeq() : null;
+            seqs[i] = seq != null ? seq : previous + 1;
+            previous = seqs[i];
+        }
+        return seqs;
+    }
+
+    // Entries from split on are numbered first, first + 1, ...; the ones before it are all below first
+    private static boolean consecutive(List<Object> entries, int split, long first) {
+        for (int i = 0; i < entries.size(); i++) {
+            Long seq = entries.get(i) instanceof ChatMessage message ? message.getSeq() : null;
+            if (seq == null) return false;
+            if (i < split ? seq >= first : seq != first + (i - split)) return false;
+        }
+        return true;
+    }
+
+    // Sorts stored and seqs together; seqs ends up in sequence order too
+    private static List<Object> inSequenceOrder(List<Object> stored, long[] seqs) {
+        boolean sorted = true;
+        for (int i = 1; i < seqs.length && sorted; i++) sorted = seqs[i - 1] <= seqs[i];
+        if (sorted) return stored;
+
+        Integer[] order = new Integer[seqs.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        long[] unsorted = seqs.clone();
+        Arrays.sort(order, Comparator.comparingLong(i -> unsorted[i]));
+
+        List<Object> ordered = new ArrayList<>(order.length);
+        for (int i = 0; i < order.length; i++) {
+            ordered.add(stored.get(order[i]));
+            seqs[i] = unsorted[order[i]];
+        }
+        return ordered;
+    }
+
+    // First position whose sequence is above seq, size if none
+    private static int firstAbove(IntToLongFunction seqAt, int size, long seq) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seqAt.applyAsLong(mid) <= seq) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
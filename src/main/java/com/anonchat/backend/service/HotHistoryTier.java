@@ -0,0 +1,440 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full retained history of the rooms active on this node, as decoded messages in memory, so history reads,
+ * pages and exports of busy rooms skip the LRANGE and the decoding.
+ * <p>
+ * Each room is a ring of up to {@link ChatService#HISTORY_LIMIT} messages in sequence order, written through as
+ * messages are saved. It tracks the numbers it accounts for: those of its messages and those this node leased but
+ * never used ({@link #leased}). A room answers reads only when it is complete and the room counter in Redis (read
+ * by the caller in the same request) is exactly the last number it accounts for, so messages numbered on another
+ * node, a deletion elsewhere, or an expired room all show up as a miss and the caller reads Redis.
+ * <p>
+ * A room that started before this node saw it, or that another node numbered messages in, is filled from Redis
+ * ({@link #promote}) once {@code anonchat.history.hot-tier.settle-ms} have passed, long enough for the other
+ * nodes to have written what they numbered; a fill that sees nothing new numbered elsewhere completes the room.
+ * <p>
+ * Rooms leave after {@code anonchat.history.hot-tier.idle-ms} without reads or writes, and least recently
+ * used first whenever the tier is over {@code anonchat.history.hot-tier.max-bytes}.
+ */
+@Component
+public class HotHistoryTier {
+
+    // How often a room that keeps missing may be filled from Redis again
+    static final long WARM_UP_INTERVAL_MS = 5000;
+
+    // Rough heap cost of a message beyond its strings: object headers, fields, boxed numbers
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long idleMs;
+    private final long settleMs;
+
+    // Access order: the least recently used room is evicted first when over budget
+    private final LinkedHashMap<String, Room> rooms = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong warmUps = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong budgetEvictions = new AtomicLong();
+
+    private final ScheduledExecutorService sweeper;
+
+    public HotHistoryTier(@Value("${anonchat.history.hot-tier.enabled:true}") boolean enabled,
+                          @Value("${anonchat.history.hot-tier.max-bytes:67108864}") long maxBytes,
+                          @Value("${anonchat.history.hot-tier.idle-ms:600000}") long idleMs,
+                          @Value("${anonchat.history.hot-tier.settle-ms:2000}") long settleMs) {
+        this.enabled = enabled;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.idleMs = Math.max(1000, idleMs);
+        this.settleMs = Math.max(0, settleMs);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-history-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, this.idleMs / 4);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("anonchat.history.tier.requests", hits, AtomicLong::get)
+                .description("History reads, by whether the in-memory tier answered")
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("anonchat.history.tier.requests", misses, AtomicLong::get)
+                .description("History reads, by whether the in-memory tier answered")
+                .tag("result", "miss").register(meterRegistry);
+        Gauge.builder("anonchat.history.tier.bytes", bytes, AtomicLong::get)
+                .description("Estimated heap held by the in-memory history tier")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("anonchat.history.tier.rooms", this, HotHistoryTier::roomCount)
+                .description("Rooms whose history is held in memory on this node")
+                .register(meterRegistry);
+    }
+
+    /** Write-through from saveMessage; called in sequence order for the room */
+    public void append(String roomId, ChatMessage message) {
+        if (!enabled || message.getSeq() == null) return;
+
+        bytes.addAndGet(room(roomId).append(message));
+        enforceBudget();
+    }
+
+    /**
+     * Numbers {@code first..last} were leased by this node: those that never get a message are skipped, not missing.
+     */
+    public void leased(String roomId, long first, long last) {
+        if (!enabled) return;
+
+        bytes.addAndGet(room(roomId).leased(first, last));
+    }
+
+    /**
+     * All retained messages in sequence order, or null unless the room is held in full up to {@code latest}
+     * (the room counter just read from Redis).
+     */
+    public List<Object> readAll(String roomId, long latest) {
+        Room room = lookup(roomId);
+        List<Object> messages = room != null ? room.readAll(latest) : null;
+        count(messages != null);
+        return messages;
+    }
+
+    /** A page cut exactly like the history stores cut it, or null on a miss (see {@link #readAll}) */
+    public HistoryPage readPage(String roomId, long latest, int limit, Long before, Long after) {
+        Room room = lookup(roomId);
+        HistoryPage page = room != null ? room.readPage(latest, limit, before, after) : null;
+        count(page != null);
+        return page;
+    }
+
+    /**
+     * True if the room is being written on this node but can't answer reads yet, and hasn't been filled
+     * from Redis recently. Rooms with no activity here stay cold.
+     */
+    public boolean shouldWarmUp(String roomId) {
+        if (!enabled) return false;
+
+        Room room;
+        synchronized (rooms) {
+            room = rooms.get(roomId);
+        }
+        return room != null && room.claimWarmUp(System.currentTimeMillis());
+    }
+
+    /**
+     * Merge what a full read from Redis returned (in sequence order) under what was written through since.
+     * {@code latest} is the room counter read before that read.
+     */
+    public void promote(String roomId, long latest, List<Object> stored) {
+        if (!enabled || stored == null) return;
+
+        // Approximate stream trimming can keep a few more than the limit
+        if (stored.size() > ChatService.HISTORY_LIMIT) {
+            stored = stored.subList(stored.size() - ChatService.HISTORY_LIMIT, stored.size());
+        }
+
+        // Only numbered messages can be held; a room with anything else stays in Redis
+        List<ChatMessage> messages = new ArrayList<>(stored.size());
+        for (Object value : stored) {
+            if (!(value instanceof ChatMessage message) || message.getSeq() == null) return;
+            messages.add(message);
+        }
+
+        bytes.addAndGet(room(roomId).merge(messages, latest));
+        warmUps.incrementAndGet();
+        enforceBudget();
+    }
+
+    public void evictRoom(String roomId) {
+        Room room;
+        synchronized (rooms) {
+            room = rooms.remove(roomId);
+        }
+        if (room != null) bytes.addAndGet(-room.close());
+    }
+
+    public int roomCount() {
+        synchronized (rooms) {
+            return rooms.size();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("rooms", roomCount());
+        stats.put("bytes", bytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : Math.round(hitCount * 1000.0 / lookups) / 1000.0);
+        stats.put("warmUps", warmUps.get());
+        stats.put("idleEvictions", idleEvictions.get());
+        stats.put("budgetEvictions", budgetEvictions.get());
+        return stats;
+    }
+
+    void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMs;
+        List<Room> idle = new ArrayList<>();
+        synchronized (rooms) {
+            Iterator<Room> it = rooms.values().iterator();
+            while (it.hasNext()) {
+                Room room = it.next();
+                if (room.lastAccess < cutoff) {
+                    it.remove();
+                    idle.add(room);
+                }
+            }
+        }
+        for (Room room : idle) bytes.addAndGet(-room.close());
+        idleEvictions.addAndGet(idle.size());
+    }
+
+    private void enforceBudget() {
+        while (bytes.get() > maxBytes) {
+            Room eldest;
+            synchronized (rooms) {
+                Iterator<Room> it = rooms.values().iterator();
+                if (!it.hasNext()) return;
+                eldest = it.next();
+                it.remove();
+            }
+            bytes.addAndGet(-eldest.close());
+            budgetEvictions.incrementAndGet();
+        }
+    }
+
+    private Room room(String roomId) {
+        synchronized (rooms) {
+            return rooms.computeIfAbsent(roomId, id -> new Room(ChatService.HISTORY_LIMIT, settleMs));
+        }
+    }
+
+    private Room lookup(String roomId) {
+        if (!enabled) return null;
+        synchronized (rooms) {
+            return rooms.get(roomId);
+        }
+    }
+
+    private void count(boolean hit) {
+        if (!enabled) return;
+        (hit ? hits : misses).incrementAndGet();
+    }
+
+    static long estimateBytes(ChatMessage message) {
+        return MESSAGE_OVERHEAD_BYTES + 2L * (length(message.getContent()) + length(message.getSender())
+                + length(message.getId()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * Up to capacity messages in sequence order, in a ring starting at head. Methods return the change in
+     * estimated bytes.
+     */
+    private static final class Room {
+        private final ChatMessage[] slots;
+        private final long settleMs;
+        private int head;
+        private int size;
+        private long roomBytes;
+        private boolean closed;
+        private long lastWarmUp;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        // Every number up to covered belongs to a message held here, was never used, or is older than the ring
+        private long covered;
+        // False while numbers used elsewhere may be missing; only a fill from Redis after staleUntil sets it again
+        private boolean complete = true;
+        private long staleUntil;
+
+        Room(int capacity, long settleMs) {
+            this.slots = new ChatMessage[capacity];
+            this.settleMs = settleMs;
+        }
+
+        synchronized long append(ChatMessage message) {
+            lastAccess = System.currentTimeMillis();
+            if (closed) return 0;
+
+            long seq = message.getSeq();
+            if (seq > covered) leased(seq, seq);
+            if (size > 0 && seq <= newest()) return 0;    // Already merged from Redis
+
+            long before = roomBytes;
+            put(message);
+            return roomBytes - before;
+        }
+
+        synchronized long leased(long first, long last) {
+            if (closed) return 0;
+
+            long before = roomBytes;
+            if (last < covered) {
+                // The counter started over (room deleted or expired elsewhere): what is held belongs to an earlier room
+                clear();
+                covered = 0;
+                complete = true;
+                staleUntil = 0;
+            }
+
+            // Numbers in between went to another node
+            if (first > covered + 1) markStale();
+            covered = Math.max(covered, last);
+            return roomBytes - before;
+        }
+
+        synchronized long merge(List<ChatMessage> stored, long latest) {
+            long now = System.currentTimeMillis();
+            lastAccess = now;
+            if (closed) return 0;
+
+            long before = roomBytes;
+            // A counter below covered only means this node numbered more since it was read
+            if (latest > covered) {
+                // Numbered elsewhere since this node last looked: maybe not all written yet, fill again later
+                covered = latest;
+                markStale();
+            } else if (now >= staleUntil) {
+                complete = true;
+            }
+
+            // Union of both sides by sequence, newest capacity kept
+            List<ChatMessage> merged = new ArrayList<>(size + stored.size());
+            int i = 0;
+            int j = 0;
+            while (i < size || j < stored.size()) {
+                ChatMessage held = i < size ? get(i) : null;
+                ChatMessage read = j < stored.size() ? stored.get(j) : null;
+                if (read == null || (held != null && held.getSeq() < read.getSeq())) {
+                    merged.add(held);
+                    i++;
+                } else {
+                    if (held != null && held.getSeq().equals(read.getSeq())) i++;
+                    merged.add(read);
+                    j++;
+                }
+            }
+
+            clear();
+            for (ChatMessage message : merged) put(message);
+            return roomBytes - before;
+        }
+
+        synchronized List<Object> readAll(long latest) {
+            if (!answers(latest)) return null;
+
+            List<Object> messages = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) messages.add(get(i));
+            return messages;
+        }
+
+        synchronized HistoryPage readPage(long latest, int limit, Long before, Long after) {
+            if (!answers(latest)) return null;
+
+            long newest = newest();
+            HistoryWindow window = HistoryWindow.of(i -> get(i).getSeq(), size, limit, before, after);
+            if (window.isEmpty()) return HistoryWindow.emptyPage(newest);
+
+            List<Object> messages = new ArrayList<>(window.to() - window.from());
+            for (int i = window.from(); i < window.to(); i++) messages.add(get(i));
+            return window.page(messages, get(window.from()).getSeq(), get(window.to() - 1).getSeq(), newest);
+        }
+
+        synchronized boolean claimWarmUp(long now) {
+            if (closed || now < staleUntil || now - lastWarmUp < WARM_UP_INTERVAL_MS) return false;
+            lastWarmUp = now;
+            return true;
+        }
+
+        // Returns the bytes it held; anything appended afterwards is ignored
+        synchronized long close() {
+            closed = true;
+            long held = roomBytes;
+            clear();
+            return held;
+        }
+
+        // Complete, and nothing numbered since that this room doesn't account for
+        private boolean answers(long latest) {
+            lastAccess = System.currentTimeMillis();
+            if (closed || !complete || size == 0) return false;
+
+            // Numbered elsewhere: a fill from Redis has to pick it up. Below covered, this node numbered more since
+            // the counter was read, or the room was reset elsewhere; either way this read goes to Redis.
+            if (latest > covered) {
+                covered = latest;
+                markStale();
+            }
+            return latest == covered && complete;
+        }
+
+        private void markStale() {
+            complete = false;
+            staleUntil = Math.max(staleUntil, System.currentTimeMillis() + settleMs);
+        }
+
+        private ChatMessage get(int i) {
+            return slots[(head + i) % slots.length];
+        }
+
+        private long newest() {
+            return get(size - 1).getSeq();
+        }
+
+        // Appends at the newest end, dropping the oldest message when full
+        private void put(ChatMessage message) {
+            if (size == slots.length) {
+                roomBytes -= estimateBytes(slots[head]);
+                slots[head] = null;
+                head = (head + 1) % slots.length;
+                size--;
+            }
+            slots[(head + size) % slots.length] = message;
+            size++;
+            roomBytes += estimateBytes(message);
+        }
+
+        private void clear() {
+            Arrays.fill(slots, null);
+            head = 0;
+            size = 0;
+            roomBytes = 0;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
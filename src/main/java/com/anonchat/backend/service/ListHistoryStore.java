@@ -0,0 +1,172 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * History as a capped Redis list {@code room:{id}} plus a sequence counter {@code room:{id}:seq} and the room's
+ * generation {@code room:{id}:gen}.
+ * The list holds messages in the order they were stored, newest at index -1. That is sequence order except where
+ * batches numbered on different nodes landed out of order, and sequences can skip numbers, so the position a page
+ * is read from (one bounded LRANGE) is a guess that is checked; see {@link HistoryWindow#read}.
+ */
+@Component
+@ConditionalOnProperty(name = "anonchat.history.backend", havingValue = "list", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ListHistoryStore implements HistoryStore {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final HistoryMigrator historyMigrator;
+
+    @Override
+    public long allocateSequences(String roomId, int count) {
+        Long last = redisTemplate.opsForValue().increment("room:" + roomId + ":seq", count);
+        return last != null ? last : 0;
+    }
+
+    @Override
+    public void append(String roomId, List<ChatMessage> batch) {
+        String key = "room:" + roomId;
+        String seqKey = "room:" + roomId + ":seq";
+        String genKey = "room:" + roomId + ":gen";
+        Object[] values = batch.toArray();
+        long generation = HistoryVersion.newGeneration();
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+
+                // Messages were numbered by allocateSequences; the counter only needs its TTL refreshed
+                ops.multi();
+                ops.opsForList().rightPushAll(key, values);
+                ops.opsForList().trim(key, -ChatService.HISTORY_LIMIT, -1);
+                ops.expire(key, ChatService.ROOM_TTL);
+                ops.expire(seqKey, ChatService.ROOM_TTL);
+                ops.opsForValue().setIfAbsent(genKey, generation);
+                ops.expire(genKey, ChatService.ROOM_TTL);
+                ops.exec();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<Object> readAll(String roomId) {
+        historyMigrator.migrateLazily(roomId);
+        return HistoryWindow.inSequenceOrder(redisTemplate.opsForList().range("room:" + roomId, 0, -1));
+    }
+
+    @Override
+    public long latestSequence(String roomId) {
+        String key = "room:" + roomId;
+        String seqKey = "room:" + roomId + ":seq";
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.opsForValue().get(seqKey);
+                ops.opsForList().size(key);
+                return null;
+            }
+        });
+
+        Long seq = toLong(results.get(0));
+        if (seq != null) return seq;
+
+        // Rooms written before the counter existed: number what is there from 1
+        Long size = toLong(results.get(1));
+        return size != null ? size : 0;
+    }
+
+    @Override
+    public HistoryVersion version(String roomId) {
+        String key = "room:" + roomId;
+        String seqKey = "room:" + roomId + ":seq";
+        String genKey = "room:" + roomId + ":gen";
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.opsForList().index(key, -1);
+                ops.opsForValue().get(seqKey);
+                ops.opsForList().size(key);
+                ops.opsForValue().get(genKey);
+                return null;
+            }
+        });
+
+        Long generation = toLong(results.get(3));
+        return new HistoryVersion(generation != null ? generation : 0, newestStored(results));
+    }
+
+    @Override
+    public HistoryPage readPage(String roomId, int limit, Long before, Long after) {
+        historyMigrator.migrateLazily(roomId);
+
+        String key = "room:" + roomId;
+        return HistoryWindow.read((skip, count) -> tail(key, skip, count), version(roomId).sequence(),
+                limit, before, after, () -> {
+                    List<Object> stored = redisTemplate.opsForList().range(key, 0, -1);
+                    return stored != null ? stored : List.of();
+                });
+    }
+
+    // LRANGE of the window and LINDEX -1 in one round trip, so an append in between shows
+    private HistoryWindow.Slice tail(String key, long skip, int count) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.opsForList().range(key, -(skip + count), -(skip + 1));
+                ops.opsForList().index(key, -1);
+                return null;
+            }
+        });
+
+        @SuppressWarnings("unchecked")
+        List<Object> entries = results.get(0) != null ? (List<Object>) results.get(0) : List.of();
+        Long newest = sequenceOf(results.get(1));
+        return new HistoryWindow.Slice(entries, newest != null ? newest : 0);
+    }
+
+    // Sequence of the last list entry; rooms written before messages carried one fall back to the counter.
+    // Takes the results of LINDEX -1, GET counter and LLEN.
+    private static long newestStored(List<Object> results) {
+        if (results.get(0) == null) return 0;
+
+        Long seq = sequenceOf(results.get(0));
+        if (seq == null) seq = toLong(results.get(1));
+        if (seq == null) seq = toLong(results.get(2));
+        return seq != null ? seq : 0;
+    }
+
+    private static Long sequenceOf(Object value) {
+        return value instanceof ChatMessage message ? message.getSeq() : null;
+    }
+
+    @Override
+    public void delete(String roomId) {
+        redisTemplate.delete(List.of("room:" + roomId, "room:" + roomId + ":seq", "room:" + roomId + ":gen"));
+    }
+
+    static Long toLong(Object value) {
+        if (value instanceof Number number) return number.longValue();
+        if (value instanceof String text) return Long.parseLong(text);
+        return null;
+    }
+}
@@ -0,0 +1,324 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind stage for chat history.
+ * Messages are queued per room and flushed in micro-batches, each batch being a single
+ * {@link HistoryStore#append} round trip, so the STOMP thread never waits on Redis.
+ * A batch that fails to write goes back to the head of its room's queue and is retried with backoff; it keeps
+ * its share of the capacity until it is written or the room is discarded. A write can fail after Redis applied
+ * it, or part of it (a timeout, a connection dropped before the reply), so a retry first reads which of its
+ * sequence numbers are stored and writes only the others.
+ */
+@Component
+@Slf4j
+public class MessageWriteBehindBuffer {
+
+    private final HistoryStore historyStore;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+
+    // Longest wait between retries of a room whose writes keep failing
+    static final long MAX_RETRY_BACKOFF_MS = 5000;
+
+    // A queue is only added to, created and removed inside this map's atomic operations, so a message can't land
+    // in a queue that was just discarded or pruned
+    private final Map<String, RoomQueue> rooms = new ConcurrentHashMap<>();
+
+    // Global bound on accepted-but-unflushed messages (backpressure)
+    private final Semaphore capacity;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService flusher;
+    private volatile boolean shuttingDown = false;
+
+    public MessageWriteBehindBuffer(HistoryStore historyStore,
+                                    @Value("${anonchat.write-behind.enabled:true}") boolean enabled,
+                                    @Value("${anonchat.write-behind.batch-size:100}") int batchSize,
+                                    @Value("${anonchat.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                                    @Value("${anonchat.write-behind.queue-capacity:50000}") int queueCapacity,
+                                    @Value("${anonchat.write-behind.offer-timeout-ms:200}") long offerTimeoutMs) {
+        this.historyStore = historyStore;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+        this.capacity = new Semaphore(Math.max(1, queueCapacity));
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "history-flush-timer"));
+        this.flusher = Executors.newFixedThreadPool(2, r -> daemon(r, "history-flusher"));
+
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::flushAllQuietly,
+                    this.flushIntervalMs, this.flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Accept a message for persistence. Returns as soon as the message is queued.
+     * When the buffer is full the caller waits briefly, then writes the room inline.
+     */
+    public void enqueue(String roomId, ChatMessage message) {
+        if (reserve()) enqueueReserved(roomId, message);
+        else writeInline(roomId, message);
+    }
+
+    /**
+     * Room for one message, waiting up to {@code anonchat.write-behind.offer-timeout-ms} when the buffer is full.
+     * False means the message has to be written with {@link #writeInline}. Callers that take a lock between
+     * reserving and queueing reserve first, so nothing waits under the lock.
+     */
+    public boolean reserve() {
+        if (!enabled || shuttingDown) return false;
+
+        try {
+            return capacity.tryAcquire(offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Give back a reservation that won't be used */
+    public void unreserve() {
+        capacity.release();
+    }
+
+    /**
+     * Queue a message for which {@link #reserve} returned true. Never waits.
+     */
+    public void enqueueReserved(String roomId, ChatMessage message) {
+        RoomQueue queue = rooms.compute(roomId, (id, existing) -> {
+            RoomQueue target = existing != null ? existing : new RoomQueue();
+            target.messages.add(message);
+            return target;
+        });
+
+        if (queue.messages.size() >= batchSize) {
+            flusher.execute(() -> flushRoomQuietly(roomId));
+        }
+    }
+
+    /**
+     * Synchronously persist everything queued for a room (used before reads and deletes).
+     * If a write fails, the exception is rethrown and the unwritten messages stay queued.
+     */
+    public void flushRoom(String roomId) {
+        RoomQueue queue = rooms.get(roomId);
+        if (queue == null) return;
+
+        queue.lock.lock();
+        try {
+            drainLocked(roomId, queue);
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    /**
+     * Drop anything still queued for a room without writing it.
+     */
+    public void discardRoom(String roomId) {
+        RoomQueue queue = rooms.remove(roomId);
+        if (queue == null) return;
+
+        queue.lock.lock();
+        try {
+            int dropped = 0;
+            while (queue.messages.poll() != null) dropped++;
+            capacity.release(dropped);
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    public void flushAll() {
+        for (String roomId : rooms.keySet()) {
+            flushRoom(roomId);
+        }
+    }
+
+    public int pendingCount() {
+        int total = 0;
+        for (RoomQueue queue : rooms.values()) total += queue.messages.size();
+        return total;
+    }
+
+    int roomCount() {
+        return rooms.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        scheduler.shutdown();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Whatever was accepted must reach Redis before the connection factory goes away
+        for (String roomId : rooms.keySet()) {
+            try {
+                flushRoom(roomId);
+            } catch (Exception e) {
+                RoomQueue queue = rooms.get(roomId);
+                log.error("Lost {} unwritten messages of room {} on shutdown", queue == null ? 0 : queue.messages.size(),
+                        roomId, e);
+            }
+        }
+        log.info("Write-behind buffer flushed on shutdown.");
+    }
+
+    /**
+     * Backpressure: drain the room ourselves (keeps this node's order), then write the message.
+     */
+    public void writeInline(String roomId, ChatMessage message) {
+        RoomQueue queue = rooms.get(roomId);
+        if (queue == null) {
+            writeBatch(roomId, List.of(message));
+            return;
+        }
+
+        queue.lock.lock();
+        try {
+            drainLocked(roomId, queue);
+            writeBatch(roomId, List.of(message));
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    // Writes the queue out in batches. A batch is removed only once written: on failure it goes back to the head,
+    // the room backs off, and the exception is rethrown. An emptied queue is dropped from the map.
+    private void drainLocked(String roomId, RoomQueue queue) {
+        List<ChatMessage> batch = new ArrayList<>(Math.min(batchSize, queue.messages.size()));
+        ChatMessage next;
+        while ((next = queue.messages.poll()) != null) {
+            batch.add(next);
+
+            if (batch.size() == batchSize) {
+                writeAndRelease(roomId, queue, batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeAndRelease(roomId, queue, batch);
+        }
+
+        queue.backoffMs = 0;
+        queue.retryAtMs = 0;
+        // Atomic with enqueue: a message added meanwhile keeps the queue alive
+        rooms.computeIfPresent(roomId, (id, existing) -> existing == queue && existing.messages.isEmpty() ? null : existing);
+    }
+
+    private void writeAndRelease(String roomId, RoomQueue queue, List<ChatMessage> batch) {
+        try {
+            List<ChatMessage> unwritten = queue.unconfirmed ? unwritten(roomId, batch) : batch;
+            if (!unwritten.isEmpty()) writeBatch(roomId, unwritten);
+            queue.unconfirmed = false;
+        } catch (RuntimeException e) {
+            // Back in front of anything queued since, in the original order
+            for (int i = batch.size() - 1; i >= 0; i--) queue.messages.addFirst(batch.get(i));
+            queue.unconfirmed = true;
+            queue.backoffMs = Math.min(MAX_RETRY_BACKOFF_MS, Math.max(flushIntervalMs, queue.backoffMs * 2));
+            queue.retryAtMs = System.currentTimeMillis() + queue.backoffMs;
+            throw e;
+        }
+        capacity.release(batch.size());
+    }
+
+    private void writeBatch(String roomId, List<ChatMessage> batch) {
+        historyStore.append(roomId, batch);
+    }
+
+    // The messages of a retried batch that are not stored yet. Only this node writes these numbers, and only under
+    // the room's lock, so nothing else can store them between the read and the write.
+    private List<ChatMessage> unwritten(String roomId, List<ChatMessage> batch) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (ChatMessage message : batch) {
+            if (message.getSeq() == null) continue;
+            min = Math.min(min, message.getSeq());
+            max = Math.max(max, message.getSeq());
+        }
+        if (min > max) return batch;
+
+        Set<Long> stored = new HashSet<>();
+        long after = min - 1;
+        while (after < max) {
+            HistoryPage page = historyStore.readPage(roomId, ChatService.MAX_PAGE_SIZE, null, after);
+            if (page.getMessages().isEmpty()) break;
+            for (Object entry : page.getMessages()) {
+                if (entry instanceof ChatMessage message && message.getSeq() != null) stored.add(message.getSeq());
+            }
+            after = page.getLastSeq();
+        }
+        if (stored.isEmpty()) return batch;
+
+        List<ChatMessage> unwritten = new ArrayList<>(batch.size());
+        for (ChatMessage message : batch) {
+            if (message.getSeq() == null || !stored.contains(message.getSeq())) unwritten.add(message);
+        }
+        return unwritten;
+    }
+
+    private void flushAllQuietly() {
+        for (String roomId : rooms.keySet()) {
+            flushRoomQuietly(roomId);
+        }
+    }
+
+    private void flushRoomQuietly(String roomId) {
+        RoomQueue queue = rooms.get(roomId);
+        if (queue == null || queue.messages.isEmpty()) return;
+
+        // Someone else is already flushing this room; they will pick up our messages
+        if (!queue.lock.tryLock()) return;
+        try {
+            // Still backing off after a failed write
+            if (System.currentTimeMillis() < queue.retryAtMs) return;
+            drainLocked(roomId, queue);
+        } catch (Exception e) {
+            log.error("Failed to flush history for room {}, {} messages kept for retry in {} ms",
+                    roomId, queue.messages.size(), queue.backoffMs, e);
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static final class RoomQueue {
+        private final Deque<ChatMessage> messages = new ConcurrentLinkedDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        // Guarded by lock
+        private long backoffMs;
+        // The head of the queue was in a write that failed, which Redis may have applied anyway
+        private boolean unconfirmed;
+        private volatile long retryAtMs;
+    }
+}
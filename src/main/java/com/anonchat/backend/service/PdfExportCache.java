@@ -0,0 +1,144 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.util.CapturingOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the last rendered PDF of each room, tagged with the room version it was built from: the room's generation
+ * and the newest sequence stored in Redis. A request for the same room at the same version is served from memory
+ * instead of re-rendering. Only renders that completed are kept.
+ * <p>
+ * Deleting a room evicts it here, but only on the node that ran the delete. Other nodes never serve their copy of
+ * a deleted room: the version is read from Redis first, and a room recreated since has a new generation.
+ * Bounded by total bytes (LRU) and expires with the room TTL.
+ */
+@Component
+public class PdfExportCache {
+
+    public record Entry(HistoryVersion version, byte[] pdf, long createdAt) {
+    }
+
+    /** Writes a PDF to the stream it is given */
+    @FunctionalInterface
+    public interface Render {
+        void to(OutputStream out) throws IOException;
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long ttlMs = ChatService.ROOM_TTL.toMillis();
+
+    // Access-ordered, so iteration starts at the least recently used room
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong generations = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+    private final AtomicLong maxGenerationNanos = new AtomicLong();
+
+    public PdfExportCache(@Value("${anonchat.export.cache.max-bytes:67108864}") long maxBytes,
+                          @Value("${anonchat.export.cache.max-entry-bytes:8388608}") long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    }
+
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public synchronized Entry get(String roomId, HistoryVersion version) {
+        Entry entry = entries.get(roomId);
+
+        if (entry != null && System.currentTimeMillis() - entry.createdAt() > ttlMs) {
+            remove(roomId);
+            entry = null;
+        }
+
+        if (entry == null || !entry.version().equals(version)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Renders into {@code out} and caches a copy under {@code version}, unless it outgrows the per-entry limit or
+     * {@code current} reads a different version once it is done: history read after an append may hold messages
+     * the version does not. If the render throws, nothing is cached and the exception propagates.
+     */
+    public void renderAndCache(String roomId, HistoryVersion version, Supplier<HistoryVersion> current,
+                               OutputStream out, Render render) throws IOException {
+        long start = System.nanoTime();
+        CapturingOutputStream capture = new CapturingOutputStream(out, maxEntryBytes);
+        render.to(capture);
+        capture.flush();
+        recordGeneration(System.nanoTime() - start);
+
+        byte[] pdf = capture.getCaptured();
+        if (pdf != null && version.equals(current.get())) put(roomId, version, pdf);
+    }
+
+    synchronized void put(String roomId, HistoryVersion version, byte[] pdf) {
+        if (pdf.length > maxEntryBytes) return;
+
+        // A newer render of the same room already landed
+        Entry current = entries.get(roomId);
+        if (current != null && current.version().generation() == version.generation()
+                && current.version().sequence() > version.sequence()) return;
+
+        remove(roomId);
+        entries.put(roomId, new Entry(version, pdf, System.currentTimeMillis()));
+        totalBytes += pdf.length;
+
+        Iterator<Map.Entry<String, Entry>> lru = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && lru.hasNext()) {
+            Entry evicted = lru.next().getValue();
+            lru.remove();
+            totalBytes -= evicted.pdf().length;
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void evictRoom(String roomId) {
+        remove(roomId);
+    }
+
+    void recordGeneration(long nanos) {
+        generations.incrementAndGet();
+        generationNanos.addAndGet(nanos);
+        maxGenerationNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long count = generations.get();
+        return Map.of(
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "evictions", evictions.get(),
+                "entries", entries.size(),
+                "bytes", totalBytes,
+                "generations", count,
+                "avgGenerationMs", count == 0 ? 0.0 : generationNanos.get() / 1e6 / count,
+                "maxGenerationMs", maxGenerationNanos.get() / 1e6
+        );
+    }
+
+    private void remove(String roomId) {
+        Entry removed = entries.remove(roomId);
+        if (removed != null) totalBytes -= removed.pdf().length;
+    }
+}
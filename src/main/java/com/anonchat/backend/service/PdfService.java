@@ -1,80 +1,154 @@
 package com.anonchat.backend.service;
 
 import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.util.ChatMessageCodec;
 import com.lowagie.text.*;
 import com.lowagie.text.pdf.PdfWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+@Slf4j
 @Service
 public class PdfService {
 
+    // Fonts are resolved once and shared; they are only read while rendering
+    private static final Font TITLE_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
+    private static final Font SENDER_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12);
+    private static final Font MESSAGE_FONT = FontFactory.getFont(FontFactory.HELVETICA, 12);
+    private static final Font SYS_FONT = FontFactory.getFont(FontFactory.COURIER_OBLIQUE, 10, java.awt.Color.GRAY);
+
+    // Caps exports rendering at the same time; excess requests wait up to queueTimeoutMs, then get a 429
+    private final Semaphore exportSlots;
+    private final long queueTimeoutMs;
+
+    // Null until a MeterRegistry is injected (plain construction in tests and benchmarks)
+    private Timer exportTimer;
+
+    public PdfService(@Value("${anonchat.export.max-concurrent:4}") int maxConcurrent,
+                      @Value("${anonchat.export.queue-timeout-ms:2000}") long queueTimeoutMs) {
+        this.exportSlots = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.queueTimeoutMs = Math.max(0, queueTimeoutMs);
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.exportTimer = Timer.builder("anonchat.pdf.export")
+                .description("Time to render a chat history as PDF")
+                .register(meterRegistry);
+    }
+
+    /**
+     * One of the concurrent export slots, or null if none freed up within the queue timeout. Closing it more
+     * than once is harmless, so every path that can end an export may close it.
+     */
+    public ExportSlot tryAcquireExportSlot() {
+        try {
+            return exportSlots.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS) ? new ExportSlot() : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public final class ExportSlot implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ExportSlot() {
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) exportSlots.release();
+        }
+    }
+
     public ByteArrayInputStream exportChatToPdf(String roomId, List<Object> history) {
-        Document document = new Document();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeChatPdf(roomId, List.of(history), out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * Render the chat straight into {@code out}, one history page at a time.
+     * PdfWriter flushes each finished PDF page, so memory stays bounded by a single history page.
+     * The stream is left open for the caller. Fails rather than returning after a partial render, so a
+     * truncated PDF is never mistaken for a complete one.
+     */
+    public void writeChatPdf(String roomId, Iterable<List<Object>> historyPages, OutputStream out) {
+        Timer timer = exportTimer;
+        if (timer == null) {
+            render(roomId, historyPages, out);
+            return;
+        }
 
+        long start = System.nanoTime();
         try {
-            PdfWriter.getInstance(document, out);
+            render(roomId, historyPages, out);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void render(String roomId, Iterable<List<Object>> historyPages, OutputStream out) {
+        Document document = new Document();
+
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCloseStream(false);
             document.open();
 
             // Title
-            Font titleFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Paragraph title = new Paragraph("Chat History: " + roomId, titleFont);
+            Paragraph title = new Paragraph("Chat History: " + roomId, TITLE_FONT);
             title.setAlignment(Element.ALIGN_CENTER);
             document.add(title);
             document.add(Chunk.NEWLINE);
 
-            // Fonts
-            Font senderFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12);
-            Font messageFont = FontFactory.getFont(FontFactory.HELVETICA, 12);
-            Font sysFont = FontFactory.getFont(FontFactory.COURIER_OBLIQUE, 10, java.awt.Color.GRAY);
-
-            for (Object item : history) {
-                // Check if the item is a ChatMessage Object (New Serializer)
-                if (item instanceof ChatMessage) {
-                    ChatMessage msg = (ChatMessage) item;
-
-                    String sender = msg.getSender();
-                    String content = msg.getContent();
-                    ChatMessage.MessageType type = msg.getType();
-
-                    if (type == ChatMessage.MessageType.CHAT) {
-                        Paragraph p = new Paragraph();
-                        p.add(new Chunk(sender + ": ", senderFont));
-                        p.add(new Chunk(content, messageFont));
-                        document.add(p);
-                    } else {
-                        // JOIN/LEAVE events
-                        document.add(new Paragraph(sender + " " + content, sysFont));
-                    }
-                }
-                // FALLBACK: Check if it's a Map (Old Serializer or different config)
-                else if (item instanceof java.util.Map) {
-                    java.util.Map<?, ?> msg = (java.util.Map<?, ?>) item;
-                    String sender = (String) msg.get("sender");
-                    String content = (String) msg.get("content");
-                    String typeStr = String.valueOf(msg.get("type"));
-
-                    if ("CHAT".equals(typeStr)) {
-                        Paragraph p = new Paragraph();
-                        p.add(new Chunk(sender + ": ", senderFont));
-                        p.add(new Chunk(content, messageFont));
-                        document.add(p);
-                    } else {
-                        document.add(new Paragraph(sender + " " + content, sysFont));
-                    }
+            for (List<Object> page : historyPages) {
+                for (Object item : page) {
+                    addMessage(document, item);
                 }
             }
 
             document.close();
 
         } catch (DocumentException e) {
-            e.printStackTrace();
+            log.error("Failed to render the PDF export of room {}", roomId, e);
+            throw new IllegalStateException("Could not render the PDF export of room " + roomId, e);
         }
+    }
 
-        return new ByteArrayInputStream(out.toByteArray());
+    private void addMessage(Document document, Object item) throws DocumentException {
+        // ChatMessage from either codec, or a Map for JSON stored without type information
+        ChatMessage msg = ChatMessageCodec.fromLegacy(item);
+        if (msg == null) return;
+
+        String sender = msg.getSender();
+        String content = msg.getContent();
+        ChatMessage.MessageType type = msg.getType();
+
+        if (type == ChatMessage.MessageType.CHAT) {
+            Paragraph p = new Paragraph();
+            p.add(new Chunk(sender + ": ", SENDER_FONT));
+            p.add(new Chunk(content, MESSAGE_FONT));
+            document.add(p);
+        } else if (type == ChatMessage.MessageType.PRESENCE) {
+            // Summary of several joins and leaves, e.g. "12 joined, 4 left"
+            document.add(new Paragraph(content, SYS_FONT));
+        } else {
+            // JOIN/LEAVE events
+            document.add(new Paragraph(sender + " " + content, SYS_FONT));
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,217 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Join and leave announcements, coalesced per room. The first change in a quiet room is saved and broadcast at
+ * once and opens a window; changes during the window are held and, when it ends, either sent one by one (up to
+ * {@code summary-threshold} of them) or replaced by a single summary such as "12 joined, 4 left", saved and
+ * broadcast once. The window is renewed while changes keep coming, so a reconnect storm costs one broadcast per
+ * window instead of one per session.
+ * <p>
+ * Windows are per node: each node announces the sessions it holds. Changes still held when the node shuts down
+ * are sent then.
+ */
+@Slf4j
+@Component
+public class PresenceEvents {
+
+    private static final String EVENTS_DESCRIPTION =
+            "Join/leave announcements: changes broadcast on their own, changes folded into a summary, summaries sent";
+
+    private final ChatService chatService;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final long windowMs;
+    private final int summaryThreshold;
+    private final ScheduledExecutorService scheduler;
+
+    // roomId -> changes held until the room's window ends; present while the window is open
+    private final Map<String, List<ChatMessage>> windows = new ConcurrentHashMap<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong summaries = new AtomicLong();
+
+    public PresenceEvents(ChatService chatService,
+                          SimpMessageSendingOperations messagingTemplate,
+                          @Value("${anonchat.presence.events.window-ms:1000}") long windowMs,
+                          @Value("${anonchat.presence.events.summary-threshold:3}") int summaryThreshold) {
+        this.chatService = chatService;
+        this.messagingTemplate = messagingTemplate;
+        this.windowMs = Math.max(0, windowMs);
+        this.summaryThreshold = Math.max(0, summaryThreshold);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence-events");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("anonchat.presence.events", published, AtomicLong::get)
+                .description(EVENTS_DESCRIPTION).tag("result", "published").register(meterRegistry);
+        FunctionCounter.builder("anonchat.presence.events", coalesced, AtomicLong::get)
+                .description(EVENTS_DESCRIPTION).tag("result", "coalesced").register(meterRegistry);
+        FunctionCounter.builder("anonchat.presence.events", summaries, AtomicLong::get)
+                .description(EVENTS_DESCRIPTION).tag("result", "summary").register(meterRegistry);
+    }
+
+    public void joined(String roomId, String username) {
+        record(roomId, event(ChatMessage.MessageType.JOIN, username, "joined the room."));
+    }
+
+    public void left(String roomId, String username) {
+        record(roomId, event(ChatMessage.MessageType.LEAVE, username, "left the room."));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowMs", windowMs);
+        stats.put("summaryThreshold", summaryThreshold);
+        stats.put("openWindows", windows.size());
+        stats.put("published", published.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("summaries", summaries.get());
+        return stats;
+    }
+
+    private void record(String roomId, ChatMessage event) {
+        // Once shut down there is nothing left to end a window
+        if (windowMs == 0 || scheduler.isShutdown()) {
+            publish(roomId, event);
+            return;
+        }
+
+        boolean[] opened = {false};
+        windows.compute(roomId, (id, held) -> {
+            if (held == null) {
+                opened[0] = true;
+                return new ArrayList<>();
+            }
+            held.add(event);
+            return held;
+        });
+
+        if (opened[0]) {
+            publish(roomId, event);
+            scheduler.schedule(() -> flushQuietly(roomId), windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushQuietly(String roomId) {
+        flushQuietly(roomId, true);
+    }
+
+    private void flushQuietly(String roomId, boolean reopen) {
+        try {
+            flush(roomId, reopen);
+        } catch (Exception e) {
+            log.warn("Presence announcement for room {} failed", roomId, e);
+        }
+    }
+
+    /** Ends the room's current window: sends what it held, and keeps the window open if it held anything */
+    void flush(String roomId) {
+        flush(roomId, true);
+    }
+
+    private void flush(String roomId, boolean reopen) {
+        List<ChatMessage> events = new ArrayList<>();
+        windows.computeIfPresent(roomId, (id, held) -> {
+            events.addAll(held);
+            // A whole window without changes closes it: the next one is sent at once
+            return held.isEmpty() || !reopen ? null : new ArrayList<>();
+        });
+        if (events.isEmpty()) return;
+
+        if (reopen) scheduler.schedule(() -> flushQuietly(roomId), windowMs, TimeUnit.MILLISECONDS);
+
+        // No "Ghost History" for a room deleted during the window
+        if (chatService.isRoomBeingDeleted(roomId)) return;
+
+        if (events.size() <= summaryThreshold) {
+            for (ChatMessage event : events) publish(roomId, event);
+        } else {
+            summaries.incrementAndGet();
+            coalesced.addAndGet(events.size());
+            send(roomId, summarize(events));
+        }
+    }
+
+    /**
+     * One message for a window of changes, taken in order per name: a leave followed by a join of the same name is
+     * a reconnect; a join followed by a leave is someone who came and went, so a join and a leave.
+     */
+    static ChatMessage summarize(List<ChatMessage> events) {
+        // name -> leaves in this window not yet followed by a join
+        Map<String, Integer> away = new HashMap<>();
+        int joined = 0, reconnected = 0;
+        for (ChatMessage event : events) {
+            String name = String.valueOf(event.getSender());
+            if (event.getType() != ChatMessage.MessageType.JOIN) {
+                away.merge(name, 1, Integer::sum);
+            } else if (away.getOrDefault(name, 0) > 0) {
+                away.merge(name, -1, Integer::sum);
+                reconnected++;
+            } else {
+                joined++;
+            }
+        }
+        int left = 0;
+        for (int count : away.values()) left += count;
+
+        List<String> parts = new ArrayList<>(3);
+        if (joined > 0) parts.add(joined + " joined");
+        if (left > 0) parts.add(left + " left");
+        if (reconnected > 0) parts.add(reconnected + " reconnected");
+
+        return ChatMessage.builder()
+                .type(ChatMessage.MessageType.PRESENCE)
+                .sender("System")
+                .content(String.join(", ", parts))
+                .build();
+    }
+
+    private void publish(String roomId, ChatMessage event) {
+        published.incrementAndGet();
+        send(roomId, event);
+    }
+
+    // Saved first: the history and the broadcast carry the same sequence number
+    private void send(String roomId, ChatMessage message) {
+        chatService.saveMessage(roomId, message);
+        messagingTemplate.convertAndSend("/topic/" + roomId, message);
+    }
+
+    private static ChatMessage event(ChatMessage.MessageType type, String username, String content) {
+        return ChatMessage.builder()
+                .type(type)
+                .sender(username)
+                .content(content)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        // Held changes have no timer left to send them
+        for (String roomId : List.copyOf(windows.keySet())) flushQuietly(roomId, false);
+    }
+}
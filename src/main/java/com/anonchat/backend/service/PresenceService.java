@@ -0,0 +1,338 @@
+package com.anonchat.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Who is in which room, across all nodes.
+ * <p>
+ * Each node counts its own STOMP sessions per room and publishes them on a heartbeat into two hashes it alone
+ * writes, {@code presence:{node}:counts} (room -> sessions) and {@code presence:{node}:users} (room -> names),
+ * both with a TTL of a few heartbeats. A node that dies simply stops refreshing them, so its sessions drop out
+ * on their own instead of leaving counts wrong forever. Live nodes are listed in the {@code presence:nodes}
+ * sorted set, scored by their last heartbeat; occupancy is one pipelined HGET per live node.
+ * <p>
+ * Only the heartbeat carries ordinary changes. A room going from empty to occupied (or back) on this node is
+ * written through immediately, so "is anyone left?" never waits for a heartbeat.
+ */
+@Slf4j
+@Service
+public class PresenceService {
+
+    static final String NODES_KEY = "presence:nodes";
+
+    // Every Nth heartbeat publishes the whole local state instead of just the changes
+    private static final int FULL_WRITE_EVERY = 12;
+
+    private static final TypeReference<List<String>> NAMES = new TypeReference<>() {};
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long heartbeatIntervalMs;
+    private final long ttlMs;
+
+    // sessionId -> where that session joined
+    private final Map<String, Membership> sessions = new ConcurrentHashMap<>();
+
+    // roomId -> (sessionId -> username) for this node
+    private final Map<String, Map<String, String>> rooms = new ConcurrentHashMap<>();
+
+    // Rooms changed since the last heartbeat
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+    private volatile boolean fullWriteNeeded = true;
+
+    // Cached from the last heartbeat; a node that started since then is missed for one interval at most
+    private volatile List<String> liveNodes = List.of();
+
+    private ScheduledExecutorService heartbeat;
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong heartbeatFailures = new AtomicLong();
+    private final AtomicLong writeThroughs = new AtomicLong();
+
+    public PresenceService(RedisTemplate<String, String> redisTemplate,
+                           @Value("${anonchat.presence.heartbeat-interval-ms:5000}") long heartbeatIntervalMs,
+                           @Value("${anonchat.presence.ttl-ms:15000}") long ttlMs) {
+        this.redisTemplate = redisTemplate;
+        this.heartbeatIntervalMs = Math.max(100, heartbeatIntervalMs);
+        this.ttlMs = Math.max(ttlMs, this.heartbeatIntervalMs * 2);
+    }
+
+    @PostConstruct
+    public void start() {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleWithFixedDelay(this::heartbeatQuietly, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record that a STOMP session joined a room under a name. A session is in one room at a time;
+     * joining another one leaves the first.
+     */
+    public void join(String roomId, String sessionId, String username) {
+        Membership previous = sessions.put(sessionId, new Membership(roomId, username));
+        if (previous != null && !previous.roomId().equals(roomId)) removeSession(previous.roomId(), sessionId);
+
+        boolean[] first = {false};
+        rooms.compute(roomId, (id, members) -> {
+            if (members == null) {
+                members = new ConcurrentHashMap<>();
+                first[0] = true;
+            }
+            members.put(sessionId, username != null ? username : "");
+            return members;
+        });
+
+        dirtyRooms.add(roomId);
+        if (first[0]) writeThrough(roomId);
+    }
+
+    /**
+     * Forget a session. Returns the room it was in, or null if it never joined one.
+     */
+    public String leave(String sessionId) {
+        Membership membership = sessions.remove(sessionId);
+        if (membership == null) return null;
+
+        removeSession(membership.roomId(), sessionId);
+        return membership.roomId();
+    }
+
+    /**
+     * Sessions in the room across all live nodes. With {@code fresh} the node list is re-read first,
+     * for decisions that must not miss a node that just started.
+     */
+    public long occupancy(String roomId, boolean fresh) {
+        long total = 0;
+        for (String count : readAllNodes(roomId, "counts", fresh)) {
+            try {
+                total += Long.parseLong(count);
+            } catch (NumberFormatException ignored) {
+                // Not ours
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Names of everyone in the room across all live nodes, sorted; a name appears once per session.
+     */
+    public List<String> onlineUsers(String roomId) {
+        List<String> users = new ArrayList<>();
+        for (String names : readAllNodes(roomId, "users", false)) {
+            try {
+                users.addAll(objectMapper.readValue(names, NAMES));
+            } catch (Exception e) {
+                log.debug("Skipping unreadable presence entry for room {}", roomId);
+            }
+        }
+        users.sort(String.CASE_INSENSITIVE_ORDER);
+        return users;
+    }
+
+    /** STOMP sessions on this node that joined a room */
+    public int localSessionCount() {
+        return sessions.size();
+    }
+
+    /** Rooms with at least one session on this node */
+    public int localRoomCount() {
+        return rooms.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("liveNodes", liveNodes.size());
+        stats.put("localSessions", sessions.size());
+        stats.put("localRooms", rooms.size());
+        stats.put("heartbeats", heartbeats.get());
+        stats.put("heartbeatFailures", heartbeatFailures.get());
+        stats.put("writeThroughs", writeThroughs.get());
+        return stats;
+    }
+
+    /**
+     * Publish this node's changes (after a failure, and every few beats, its whole state) and refresh the TTLs.
+     */
+    public void heartbeat() {
+        boolean full = fullWriteNeeded;
+        Set<String> changed = full ? new HashSet<>(rooms.keySet()) : new HashSet<>(dirtyRooms);
+        dirtyRooms.removeAll(changed);
+
+        Map<String, String[]> snapshot = new HashMap<>();
+        for (String roomId : changed) snapshot.put(roomId, snapshotOf(roomId));
+
+        long now = System.currentTimeMillis();
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.multi();
+                    if (full) ops.delete(List.of(countsKey(nodeId), usersKey(nodeId)));
+                    snapshot.forEach((roomId, entry) -> write(ops, roomId, entry));
+                    ops.expire(countsKey(nodeId), ttlMs, TimeUnit.MILLISECONDS);
+                    ops.expire(usersKey(nodeId), ttlMs, TimeUnit.MILLISECONDS);
+                    ops.opsForZSet().add(NODES_KEY, nodeId, now);
+                    ops.opsForZSet().removeRangeByScore(NODES_KEY, 0, now - ttlMs);
+                    ops.exec();
+                    ops.opsForZSet().rangeByScore(NODES_KEY, now - ttlMs, Double.POSITIVE_INFINITY);
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            // Nothing is known to have landed: write everything next time
+            fullWriteNeeded = true;
+            heartbeatFailures.incrementAndGet();
+            throw e;
+        }
+
+        // Rewrite everything now and then, in case Redis lost the hashes (restart, failover)
+        fullWriteNeeded = heartbeats.incrementAndGet() % FULL_WRITE_EVERY == 0;
+
+        @SuppressWarnings("unchecked")
+        Set<String> nodes = results.get(results.size() - 1) instanceof Set<?> set ? (Set<String>) set : Set.of();
+        liveNodes = List.copyOf(nodes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (heartbeat != null) heartbeat.shutdownNow();
+        try {
+            // Leave cleanly rather than waiting for the TTL
+            redisTemplate.delete(List.of(countsKey(nodeId), usersKey(nodeId)));
+            redisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+        } catch (RuntimeException e) {
+            log.debug("Could not remove presence on shutdown: {}", e.getMessage());
+        }
+    }
+
+    private void removeSession(String roomId, String sessionId) {
+        boolean[] last = {false};
+        rooms.computeIfPresent(roomId, (id, members) -> {
+            members.remove(sessionId);
+            if (!members.isEmpty()) return members;
+            last[0] = true;
+            return null;
+        });
+
+        dirtyRooms.add(roomId);
+        if (last[0]) writeThrough(roomId);
+    }
+
+    // Empty <-> occupied transitions skip the heartbeat; the next heartbeat writes the room again anyway
+    private void writeThrough(String roomId) {
+        String[] entry = snapshotOf(roomId);
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    write(ops, roomId, entry);
+                    ops.expire(countsKey(nodeId), ttlMs, TimeUnit.MILLISECONDS);
+                    ops.expire(usersKey(nodeId), ttlMs, TimeUnit.MILLISECONDS);
+                    return null;
+                }
+            });
+            writeThroughs.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.warn("Presence write for room {} failed, leaving it to the heartbeat: {}", roomId, e.getMessage());
+        }
+    }
+
+    // {count, names as JSON}, or null for a room with no sessions here
+    private String[] snapshotOf(String roomId) {
+        Map<String, String> members = rooms.get(roomId);
+        if (members == null) return null;
+
+        List<String> names = new ArrayList<>(members.values());
+        if (names.isEmpty()) return null;
+        try {
+            return new String[]{String.valueOf(names.size()), objectMapper.writeValueAsString(names)};
+        } catch (Exception e) {
+            return new String[]{String.valueOf(names.size()), "[]"};
+        }
+    }
+
+    private void write(RedisOperations<String, String> ops, String roomId, String[] entry) {
+        if (entry == null) {
+            ops.opsForHash().delete(countsKey(nodeId), roomId);
+            ops.opsForHash().delete(usersKey(nodeId), roomId);
+        } else {
+            ops.opsForHash().put(countsKey(nodeId), roomId, entry[0]);
+            ops.opsForHash().put(usersKey(nodeId), roomId, entry[1]);
+        }
+    }
+
+    private List<String> readAllNodes(String roomId, String hash, boolean fresh) {
+        List<String> nodes = liveNodes;
+        if (fresh || nodes.isEmpty()) {
+            long now = System.currentTimeMillis();
+            Set<String> live = redisTemplate.opsForZSet().rangeByScore(NODES_KEY, now - ttlMs, Double.POSITIVE_INFINITY);
+            nodes = live != null ? List.copyOf(live) : List.of();
+        }
+        // Our own entry may not have been published yet
+        if (!nodes.contains(nodeId)) {
+            nodes = new ArrayList<>(nodes);
+            nodes.add(nodeId);
+        }
+
+        List<String> keys = new ArrayList<>(nodes.size());
+        for (String node : nodes) keys.add("presence:" + node + ":" + hash);
+
+        List<Object> values = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String key : keys) ops.opsForHash().get(key, roomId);
+                return null;
+            }
+        });
+
+        List<String> found = new ArrayList<>();
+        for (Object value : values) if (value != null) found.add(value.toString());
+        return found;
+    }
+
+    private void heartbeatQuietly() {
+        try {
+            heartbeat();
+        } catch (Exception e) {
+            log.warn("Presence heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    private static String countsKey(String node) {
+        return "presence:" + node + ":counts";
+    }
+
+    private static String usersKey(String node) {
+        return "presence:" + node + ":users";
+    }
+
+    private record Membership(String roomId, String username) {
+    }
+}
@@ -1,30 +1,295 @@
 package com.anonchat.backend.service;
 
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Per-IP limiter: 5 messages up front, then 1 more every 2 seconds.
+ * <p>
+ * Each IP costs two longs: the key (IPv4 packed into a long, other addresses hashed) and a GCRA
+ * "theoretical arrival time". Once that time has passed, the IP has a full bucket again and its entry
+ * carries no information, so it can be dropped at any time without changing behaviour.
+ * Entries live in striped open-addressing tables with a hard cap; expired entries are reclaimed lazily
+ * when a stripe fills up and by a background sweeper, one stripe lock at a time.
+ * <p>
+ * With {@code anonchat.rate-limit.mode=cluster} the budget is shared by all nodes through
+ * {@link ClusterRateLimiter}; the local table is then only used while Redis is unreachable.
+ */
 @Service
 public class RateLimitService {
 
-    // Store buckets in memory (Map<IP_Address, Bucket>)
-    private final Map<String, Bucket> cache = new ConcurrentHashMap<>();
+    // Rule: Allow 5 messages initially
+    static final int CAPACITY = 5;
+    // Refill: Add 1 token every 2 seconds
+    static final long EMISSION_INTERVAL_NANOS = Duration.ofSeconds(2).toNanos();
+    // How far ahead of "now" the arrival time may run before requests are rejected
+    private static final long BURST_TOLERANCE_NANOS = EMISSION_INTERVAL_NANOS * (CAPACITY - 1);
+
+    private static final int STRIPES = 64;
+    private static final long EMPTY = 0L;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ScheduledExecutorService sweeper;
+
+    private final AtomicLong expiredEvictions = new AtomicLong();
+    private final AtomicLong forcedEvictions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ClusterRateLimiter clusterRateLimiter;
+
+    // Null until a MeterRegistry is injected (plain construction in tests and benchmarks)
+    private Timer checkTimer;
+
+    public RateLimitService(@Value("${anonchat.rate-limit.max-entries:100000}") int maxEntries,
+                            @Value("${anonchat.rate-limit.sweep-interval-ms:10000}") long sweepIntervalMs) {
+        int perStripe = Math.max(16, (maxEntries + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe(perStripe);
+
+        if (sweepIntervalMs > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rate-limit-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    @Autowired(required = false)
+    void setClusterRateLimiter(ClusterRateLimiter clusterRateLimiter) {
+        this.clusterRateLimiter = clusterRateLimiter;
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.checkTimer = Timer.builder("anonchat.ratelimit.check")
+                .description("Time to decide whether a message is within its sender's rate limit")
+                .register(meterRegistry);
+        FunctionCounter.builder("anonchat.ratelimit.rejections", rejected, AtomicLong::get)
+                .description("Messages rejected by the rate limiter")
+                .register(meterRegistry);
+    }
 
     public boolean allowRequest(String ipAddress) {
-        Bucket bucket = cache.computeIfAbsent(ipAddress, this::createNewBucket);
-        return bucket.tryConsume(1);
+        Timer timer = checkTimer;
+        if (timer == null) return check(ipAddress);
+
+        long start = System.nanoTime();
+        try {
+            return check(ipAddress);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private boolean check(String ipAddress) {
+        if (clusterRateLimiter != null) {
+            switch (clusterRateLimiter.tryAcquire(ipAddress)) {
+                case ALLOW:
+                    return true;
+                case DENY:
+                    rejected.incrementAndGet();
+                    return false;
+                default:
+                    // Redis is down: keep limiting per node rather than not at all
+                    break;
+            }
+        }
+
+        long key = keyOf(ipAddress);
+        boolean allowed = stripes[stripeOf(key)].tryAcquire(key, System.nanoTime());
+        if (!allowed) rejected.incrementAndGet();
+        return allowed;
+    }
+
+    public int entryCount() {
+        int total = 0;
+        for (Stripe stripe : stripes) total += stripe.size();
+        return total;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", clusterRateLimiter != null ? "cluster" : "local");
+        stats.put("entries", entryCount());
+        stats.put("capacity", (long) STRIPES * stripes[0].capacity);
+        stats.put("expiredEvictions", expiredEvictions.get());
+        stats.put("forcedEvictions", forcedEvictions.get());
+        stats.put("rejected", rejected.get());
+        if (clusterRateLimiter != null) stats.put("cluster", clusterRateLimiter.stats());
+        return stats;
+    }
+
+    /** Drop every entry whose bucket has refilled completely */
+    public void sweep() {
+        long now = System.nanoTime();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.purgeExpired(now);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) sweeper.shutdownNow();
     }
 
-    private Bucket createNewBucket(String ipAddress) {
-        // Rule: Allow 5 messages initially
-        // Refill: Add 1 token every 2 seconds
-        return Bucket.builder()
-                .addLimit(Bandwidth.classic(5, Refill.greedy(1, Duration.ofSeconds(2))))
-                .build();
+    /**
+     * IPv4 "a.b.c.d" -> 2^32 | address, parsed without allocating.
+     * Anything else (IPv6, hostnames) -> 64-bit FNV-1a hash with the top bit set, so the two never collide.
+     */
+    static long keyOf(String ip) {
+        long address = 0;
+        int octet = -1;
+        int dots = 0;
+
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) return hashKey(ip);
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                address = (address << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return hashKey(ip);
+            }
+        }
+        if (dots != 3 || octet < 0) return hashKey(ip);
+
+        return (1L << 32) | (address << 8) | octet;
+    }
+
+    private static long hashKey(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash | Long.MIN_VALUE;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int stripeOf(long key) {
+        return (mix(key) >>> 26) & (STRIPES - 1);
+    }
+
+    private final class Stripe {
+        private final int capacity;
+        private long[] keys;
+        private long[] arrivals;
+        private int size;
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            // Load factor <= 0.5 keeps linear probes short
+            int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            this.keys = new long[tableSize];
+            this.arrivals = new long[tableSize];
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized boolean tryAcquire(long key, long now) {
+            int slot = find(key);
+
+            if (keys[slot] == EMPTY) {
+                if (size >= capacity) {
+                    makeRoom(now);
+                    slot = find(key);
+                }
+                // First request of a fresh bucket always passes
+                keys[slot] = key;
+                arrivals[slot] = now + EMISSION_INTERVAL_NANOS;
+                size++;
+                return true;
+            }
+
+            // GCRA: the request fits if the arrival time has not run more than the burst ahead of now
+            long arrival = Math.max(arrivals[slot], now);
+            if (arrival - now > BURST_TOLERANCE_NANOS) return false;
+
+            arrivals[slot] = arrival + EMISSION_INTERVAL_NANOS;
+            return true;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void makeRoom(long now) {
+            purgeExpired(now);
+            if (size < capacity) return;
+
+            // Still full of active IPs (e.g. a flood): drop the quarter closest to a full refill
+            long[] sorted = new long[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) sorted[n++] = arrivals[i];
+            }
+            Arrays.sort(sorted);
+            long cutoff = sorted[Math.max(0, size / 4 - 1)];
+
+            int before = size;
+            rebuild(cutoff);
+            forcedEvictions.addAndGet(before - size);
+        }
+
+        private void purgeExpired(long now) {
+            int expired = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY && arrivals[i] - now <= 0) expired++;
+            }
+            if (expired == 0) return;
+
+            int before = size;
+            rebuild(now);
+            expiredEvictions.addAndGet(before - size);
+        }
+
+        // Re-insert only entries whose arrival time is after the cutoff; also clears probe chains
+        private void rebuild(long cutoff) {
+            long[] oldKeys = keys;
+            long[] oldArrivals = arrivals;
+            keys = new long[oldKeys.length];
+            arrivals = new long[oldArrivals.length];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY && oldArrivals[i] - cutoff > 0) {
+                    int slot = find(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    arrivals[slot] = oldArrivals[i];
+                    size++;
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
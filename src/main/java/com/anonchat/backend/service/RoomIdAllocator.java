@@ -0,0 +1,254 @@
+package com.anonchat.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.random.RandomGenerator;
+
+/**
+ * Room IDs that never land on an existing room. An ID is taken with one script call that checks every key a
+ * room can have and sets its name only if none exists, so two creations (on any nodes) can't share an ID and a
+ * room whose name expired before its history is not handed out again.
+ * <p>
+ * IDs come from a small set of independent DRBG instances, picked by thread, instead of a new SecureRandom per
+ * call or one shared instance every request thread queues on.
+ * <p>
+ * With {@code anonchat.room-id.pool-size} above 0, IDs are also reserved ahead in batches (one script call each)
+ * by a background thread, and a creation takes one from the pool without waiting on an ID check.
+ */
+@Slf4j
+@Component
+public class RoomIdAllocator {
+
+    static final String CHARS = "abcdefghijklmnopqrstuvwxyz0123456789";
+    static final int ID_LEN = 8;
+
+    // 36^8: IDs are drawn from 42 random bits, retrying above this so every ID is equally likely
+    private static final long ID_SPACE = 2_821_109_907_456L;
+
+    // Name of a room reserved for the pool but not created yet
+    static final String RESERVED = "\u0000";
+    static final Duration RESERVATION_TTL = Duration.ofMinutes(10);
+    // Pooled IDs are handed out only well before their reservation runs out
+    private static final long POOL_MAX_AGE_MS = RESERVATION_TTL.toMillis() * 4 / 5;
+
+    // Taken IDs in a row before giving up; with 36^8 IDs even one is unlikely
+    static final int MAX_ATTEMPTS = 8;
+    static final int REFILL_BATCH = 100;
+
+    /*
+     * KEYS = per candidate: its name key first, then every other key of the room.
+     * ARGV[1] = name, ARGV[2] = TTL ms, ARGV[3] = keys per candidate.
+     * Returns the (1-based) positions of the candidates that were free and are now taken.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RESERVE_SCRIPT = new DefaultRedisScript<>("""
+            local per = tonumber(ARGV[3])
+            local taken = {}
+            for i = 1, #KEYS, per do
+                if redis.call('EXISTS', unpack(KEYS, i, i + per - 1)) == 0 then
+                    redis.call('SET', KEYS[i], ARGV[1], 'PX', ARGV[2])
+                    taken[#taken + 1] = (i - 1) / per + 1
+                end
+            end
+            return taken
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RandomGenerator[] sources;
+    private final int poolSize;
+    private final long refillIntervalMs;
+
+    private final Queue<Pooled> pool = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() walks the queue
+    private final AtomicInteger pooled = new AtomicInteger();
+    private ScheduledExecutorService refiller;
+
+    private final AtomicLong reservations = new AtomicLong();
+    private final AtomicLong collisions = new AtomicLong();
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+
+    private record Pooled(String roomId, long reservedAtMs) {
+    }
+
+    @Autowired
+    public RoomIdAllocator(RedisTemplate<String, String> redisTemplate,
+                           @Value("${anonchat.room-id.pool-size:0}") int poolSize,
+                           @Value("${anonchat.room-id.refill-interval-ms:100}") long refillIntervalMs) {
+        this(redisTemplate, poolSize, refillIntervalMs, defaultSources());
+    }
+
+    RoomIdAllocator(RedisTemplate<String, String> redisTemplate, int poolSize, long refillIntervalMs,
+                    RandomGenerator[] sources) {
+        this.redisTemplate = redisTemplate;
+        this.poolSize = Math.max(0, poolSize);
+        this.refillIntervalMs = Math.max(10, refillIntervalMs);
+        this.sources = sources;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (poolSize == 0) return;
+
+        refiller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "room-id-refill");
+            t.setDaemon(true);
+            return t;
+        });
+        refiller.scheduleWithFixedDelay(this::refillQuietly, 0, refillIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** A random ID; not checked against Redis */
+    public String generateRoomId() {
+        RandomGenerator random = sources[(int) Thread.currentThread().threadId() & (sources.length - 1)];
+        long n;
+        do {
+            n = random.nextLong() >>> (Long.SIZE - 42);
+        } while (n >= ID_SPACE);
+
+        char[] id = new char[ID_LEN];
+        for (int i = ID_LEN - 1; i >= 0; i--) {
+            id[i] = CHARS.charAt((int) (n % CHARS.length()));
+            n /= CHARS.length();
+        }
+        return new String(id);
+    }
+
+    /** Takes a free room ID and names the room, in one round trip (or none for the ID check, from the pool) */
+    public String allocate(String roomName) {
+        Pooled reserved = takePooled();
+        if (reserved != null) {
+            // Still held by this node: the reservation outlives the pool entry
+            redisTemplate.opsForValue().set(nameKey(reserved.roomId()), roomName, ChatService.ROOM_TTL);
+            return reserved.roomId();
+        }
+        if (poolSize > 0) poolMisses.incrementAndGet();
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            String roomId = generateRoomId();
+            if (!reserve(List.of(roomId), roomName, ChatService.ROOM_TTL).isEmpty()) return roomId;
+        }
+        throw new IllegalStateException("Could not allocate a room ID.");
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", poolSize);
+        stats.put("pooled", pooled.get());
+        stats.put("poolHits", poolHits.get());
+        stats.put("poolMisses", poolMisses.get());
+        stats.put("reservations", reservations.get());
+        stats.put("collisions", collisions.get());
+        return stats;
+    }
+
+    private Pooled takePooled() {
+        long now = System.currentTimeMillis();
+        Pooled entry;
+        while ((entry = pool.poll()) != null) {
+            pooled.decrementAndGet();
+            if (now - entry.reservedAtMs() < POOL_MAX_AGE_MS) {
+                poolHits.incrementAndGet();
+                return entry;
+            }
+            // Too close to expiring; the reservation lapses on its own
+        }
+        return null;
+    }
+
+    private void refillQuietly() {
+        try {
+            refill();
+        } catch (Exception e) {
+            log.warn("Room ID pool refill failed", e);
+        }
+    }
+
+    /** Tops the pool up to its size, {@link #REFILL_BATCH} IDs per script call */
+    synchronized void refill() {
+        int missing;
+        while ((missing = poolSize - pooled.get()) > 0) {
+            List<String> candidates = new ArrayList<>(Math.min(missing, REFILL_BATCH));
+            for (int i = 0; i < Math.min(missing, REFILL_BATCH); i++) candidates.add(generateRoomId());
+
+            long reservedAt = System.currentTimeMillis();
+            for (String roomId : reserve(candidates, RESERVED, RESERVATION_TTL)) {
+                pool.add(new Pooled(roomId, reservedAt));
+                pooled.incrementAndGet();
+            }
+        }
+    }
+
+    /** The candidates that were free and now carry {@code name} */
+    private List<String> reserve(List<String> candidates, String name, Duration ttl) {
+        int perRoom = keysOf(candidates.get(0)).size();
+        List<String> keys = new ArrayList<>(candidates.size() * perRoom);
+        for (String roomId : candidates) keys.addAll(keysOf(roomId));
+
+        List<?> positions = redisTemplate.execute(RESERVE_SCRIPT, keys,
+                name, Long.toString(ttl.toMillis()), Integer.toString(perRoom));
+
+        List<String> taken = new ArrayList<>(candidates.size());
+        if (positions != null) {
+            for (Object position : positions) taken.add(candidates.get(((Number) position).intValue() - 1));
+        }
+        reservations.addAndGet(taken.size());
+        collisions.addAndGet(candidates.size() - taken.size());
+        return taken;
+    }
+
+    // The name key first, then the rest of what a room owns (the same inventory RoomPurger deletes)
+    static List<String> keysOf(String roomId) {
+        List<String> keys = new ArrayList<>(RoomPurger.SUFFIXES.length);
+        keys.add(nameKey(roomId));
+        for (String key : RoomPurger.keysOf(roomId)) {
+            if (!key.equals(keys.get(0))) keys.add(key);
+        }
+        return keys;
+    }
+
+    static String nameKey(String roomId) {
+        return "room:" + roomId + ":name";
+    }
+
+    // A power of two of DRBG instances, about two per core
+    private static RandomGenerator[] defaultSources() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        RandomGenerator[] sources = new RandomGenerator[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                sources[i] = SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                sources[i] = new SecureRandom();
+            }
+        }
+        return sources;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refiller != null) refiller.shutdownNow();
+    }
+}
@@ -0,0 +1,87 @@
+package com.anonchat.backend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Messages per second for the busiest rooms on this node.
+ * <p>
+ * Messages are counted per room for one interval at a time; at the end of each interval only the
+ * {@code anonchat.metrics.top-rooms} busiest rooms are published as {@code anonchat.room.messages.rate{room=...}},
+ * replacing the previous set. The number of time series stays fixed however many rooms there are.
+ */
+@Component
+public class RoomMessageRates {
+
+    private final int topRooms;
+    private final long intervalMs;
+    private final MultiGauge rates;
+    private final ScheduledExecutorService publisher;
+
+    // Counts for the interval in progress; swapped out whole when it ends
+    private volatile Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public RoomMessageRates(MeterRegistry meterRegistry,
+                            @Value("${anonchat.metrics.top-rooms:10}") int topRooms,
+                            @Value("${anonchat.metrics.room-rate-interval-ms:10000}") long intervalMs) {
+        this.topRooms = Math.max(1, topRooms);
+        this.intervalMs = Math.max(1000, intervalMs);
+        this.rates = MultiGauge.builder("anonchat.room.messages.rate")
+                .description("Messages per second in the busiest rooms on this node")
+                .register(meterRegistry);
+
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "room-message-rates");
+            t.setDaemon(true);
+            return t;
+        });
+        publisher.scheduleAtFixedRate(this::publish, this.intervalMs, this.intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void record(String roomId) {
+        LongAdder count = counts.get(roomId);
+        if (count == null) count = counts.computeIfAbsent(roomId, id -> new LongAdder());
+        count.increment();
+    }
+
+    /** End the interval: publish the busiest rooms of the one that just finished */
+    void publish() {
+        Map<String, LongAdder> finished = counts;
+        counts = new ConcurrentHashMap<>();
+
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        for (Map.Entry<String, Long> room : top(finished, topRooms)) {
+            rows.add(MultiGauge.Row.of(Tags.of("room", room.getKey()), room.getValue() * 1000.0 / intervalMs));
+        }
+        rates.register(rows, true);
+    }
+
+    /** The {@code k} rooms with the most messages, busiest first */
+    static List<Map.Entry<String, Long>> top(Map<String, LongAdder> counts, int k) {
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(k + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<String, LongAdder> room : counts.entrySet()) {
+            heap.add(Map.entry(room.getKey(), room.getValue().sum()));
+            if (heap.size() > k) heap.poll();
+        }
+
+        List<Map.Entry<String, Long>> top = new ArrayList<>(heap);
+        top.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return top;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdownNow();
+    }
+}
@@ -0,0 +1,422 @@
+package com.anonchat.backend.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-process near-cache for room metadata: the name, a hash of the owner token, and the deletion tombstone.
+ * <p>
+ * Entries are invalidated by Redis keyspace notifications for {@code room:*:name}, {@code room:*:owner} and
+ * {@code room:*:deleting}, so a write on any node evicts the entry everywhere within a pub/sub round trip.
+ * A lost notification would leave an entry stale, so the cache only answers while the notification stream
+ * is proven live: every node writes its own probe key on a short interval and waits for the notification.
+ * If a probe goes missing (the subscription dropped, or the server has notifications turned off), every
+ * read goes straight to Redis, and the cache starts empty once probes arrive again.
+ * <p>
+ * The server's {@code notify-keyspace-events} is only changed with {@code anonchat.room-cache.configure-server=true};
+ * otherwise it has to be configured already. Notifications come through the application's
+ * RedisMessageListenerContainer when there is one (the Redis broker relay's), so no extra subscriber connection
+ * is opened for them.
+ * <p>
+ * A load that races with an invalidation is never stored: the load reserves its slot first, and the
+ * invalidation removes the reservation.
+ */
+@Component
+@Slf4j
+public class RoomMetadataCache implements MessageListener {
+
+    public enum Field {
+        NAME("name"), OWNER("owner"), DELETING("deleting");
+
+        private final String suffix;
+
+        Field(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    // Keyspace events for keys (K), generic commands like DEL and EXPIRE (g), string commands (the '$' class),
+    // and expiry (x)
+    static final String REQUIRED_EVENTS = "Kg$x";
+
+    // A tombstone lives 3 seconds in Redis; don't keep one much past that if its expiry event is late
+    static final long TOMBSTONE_MAX_AGE_MS = 1000;
+
+    private static final String PROBE_PREFIX = "anonchat:cache-probe:";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final ObjectProvider<RedisMessageListenerContainer> sharedContainer;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxAgeMs;
+    private final long probeIntervalMs;
+    private final boolean configureServer;
+    private final String keyspaceEvents;
+    private final String channelPrefix;
+    private final String probeKey = PROBE_PREFIX + UUID.randomUUID();
+
+    // Redis key -> value, or a reservation while it loads
+    private final Map<String, Slot> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+
+    // When this node last saw its own probe come back; 0 until the first one
+    private volatile long lastProbeAt;
+
+    // Set by the probe thread once subscribed
+    private volatile RedisMessageListenerContainer listenerContainer;
+    // True when listenerContainer is someone else's: only our listener is removed on shutdown
+    private volatile boolean containerShared;
+    private int subscribeFailures;
+    private ScheduledExecutorService prober;
+
+    public RoomMetadataCache(RedisConnectionFactory connectionFactory,
+                             ObjectProvider<RedisMessageListenerContainer> sharedContainer,
+                             @Value("${anonchat.room-cache.enabled:true}") boolean enabled,
+                             @Value("${anonchat.room-cache.max-entries:50000}") int maxEntries,
+                             @Value("${anonchat.room-cache.max-age-ms:30000}") long maxAgeMs,
+                             @Value("${anonchat.room-cache.probe-interval-ms:500}") long probeIntervalMs,
+                             @Value("${anonchat.room-cache.configure-server:false}") boolean configureServer,
+                             @Value("${anonchat.room-cache.keyspace-events:" + REQUIRED_EVENTS + "}") String keyspaceEvents,
+                             @Value("${spring.data.redis.database:0}") int database) {
+        this.connectionFactory = connectionFactory;
+        this.sharedContainer = sharedContainer;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxAgeMs = Math.max(1, maxAgeMs);
+        this.probeIntervalMs = Math.max(100, probeIntervalMs);
+        this.configureServer = configureServer;
+        this.keyspaceEvents = keyspaceEvents;
+        this.channelPrefix = "__keyspace@" + database + "__:";
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("anonchat.room-cache.requests", hits, AtomicLong::get)
+                .description("Room metadata reads, by whether the near-cache answered")
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("anonchat.room-cache.requests", misses, AtomicLong::get)
+                .description("Room metadata reads, by whether the near-cache answered")
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("anonchat.room-cache.requests", bypasses, AtomicLong::get)
+                .description("Room metadata reads, by whether the near-cache answered")
+                .tag("result", "bypass").register(meterRegistry);
+        FunctionCounter.builder("anonchat.room-cache.invalidations", invalidations, AtomicLong::get)
+                .description("Room metadata entries invalidated by keyspace notifications or local writes")
+                .register(meterRegistry);
+        Gauge.builder("anonchat.room-cache.size", entries, Map::size)
+                .description("Room metadata entries cached on this node")
+                .register(meterRegistry);
+        Gauge.builder("anonchat.room-cache.live", this, cache -> cache.isLive() ? 1 : 0)
+                .description("1 while keyspace notifications are arriving and the near-cache is answering reads")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts probing. Subscribing happens on the probe thread and is retried on every probe until Redis answers,
+     * so a node starts without Redis; until then every read bypasses the cache.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "room-cache-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        prober.scheduleWithFixedDelay(this::probe, 0, probeIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Probe thread only; true once the listener is registered
+    private boolean subscribe() {
+        if (listenerContainer != null) return true;
+
+        if (configureServer) enableKeyspaceEvents();
+        else checkKeyspaceEvents();
+
+        List<Topic> topics = List.of(
+                new PatternTopic(channelPrefix + "room:*:" + Field.NAME.suffix),
+                new PatternTopic(channelPrefix + "room:*:" + Field.OWNER.suffix),
+                new PatternTopic(channelPrefix + "room:*:" + Field.DELETING.suffix),
+                new ChannelTopic(channelPrefix + probeKey));
+
+        // Subscribes once the shared container starts, or right away if it already has
+        RedisMessageListenerContainer shared = sharedContainer != null ? sharedContainer.getIfAvailable() : null;
+        RedisMessageListenerContainer container = shared;
+        try {
+            if (shared != null) {
+                shared.addMessageListener(this, topics);
+            } else {
+                container = new RedisMessageListenerContainer();
+                container.setConnectionFactory(connectionFactory);
+                container.addMessageListener(this, topics);
+                container.afterPropertiesSet();
+                container.start();
+            }
+        } catch (Exception e) {
+            release(container, shared != null);
+            if (subscribeFailures++ == 0) {
+                log.warn("Room metadata cache could not subscribe to keyspace notifications ({}); "
+                        + "reads go to Redis until it can", e.toString());
+            }
+            return false;
+        }
+        containerShared = shared != null;
+        listenerContainer = container;
+        if (subscribeFailures > 0) log.info("Room metadata cache subscribed after {} failed attempts", subscribeFailures);
+        return true;
+    }
+
+    /**
+     * The value of {@code field} for a room, from the cache while it is live, otherwise from {@code loader}.
+     * {@code loader} reads Redis and may return null; absence is cached too.
+     */
+    public String get(String roomId, Field field, Supplier<String> loader) {
+        if (!isLive()) {
+            bypasses.incrementAndGet();
+            return loader.get();
+        }
+
+        String key = key(roomId, field);
+        long now = System.currentTimeMillis();
+        Slot slot = entries.get(key);
+        if (slot != null && slot.loaded && now < slot.expiresAt) {
+            hits.incrementAndGet();
+            return slot.value;
+        }
+        misses.incrementAndGet();
+
+        // Reserve the slot before reading; an invalidation in the meantime removes the reservation
+        Slot reservation = new Slot(null, 0, false);
+        boolean reserved;
+        if (slot == null) {
+            if (entries.size() >= maxEntries) evictOne();
+            reserved = entries.putIfAbsent(key, reservation) == null;
+        } else {
+            reserved = entries.replace(key, slot, reservation);
+        }
+
+        String value = loader.get();
+        if (reserved) {
+            long maxAge = field == Field.DELETING && value != null ? Math.min(maxAgeMs, TOMBSTONE_MAX_AGE_MS) : maxAgeMs;
+            entries.replace(key, reservation, new Slot(value, now + maxAge, true));
+        }
+        return value;
+    }
+
+    /** Drop a field after writing it, so this node reads its own write without waiting for the notification */
+    public void invalidate(String roomId, Field field) {
+        if (entries.remove(key(roomId, field)) != null) invalidations.incrementAndGet();
+    }
+
+    public boolean isLive() {
+        return enabled && lastProbeAt != 0 && System.currentTimeMillis() - lastProbeAt <= staleAfterMs();
+    }
+
+    // Keyspace notifications: "__keyspace@0__:room:{id}:{field}" with the event name as the body
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        if (!channel.startsWith(channelPrefix)) return;
+
+        String key = channel.substring(channelPrefix.length());
+        if (key.equals(probeKey)) {
+            probeReceived();
+        } else if (entries.remove(key) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("live", isLive());
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : Math.round(hitCount * 1000.0 / lookups) / 1000.0);
+        stats.put("bypasses", bypasses.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("evictions", evictions.get());
+        stats.put("resets", resets.get());
+        stats.put("lastProbeAgeMs", lastProbeAt == 0 ? null : System.currentTimeMillis() - lastProbeAt);
+        return stats;
+    }
+
+    /** A probe came back: the stream is live. After a gap, anything cached before it may have missed an invalidation. */
+    void probeReceived() {
+        long now = System.currentTimeMillis();
+        if (lastProbeAt == 0 || now - lastProbeAt > staleAfterMs()) {
+            entries.clear();
+            if (lastProbeAt != 0) {
+                resets.incrementAndGet();
+                log.info("Room metadata cache resumed after {} ms without keyspace notifications", now - lastProbeAt);
+            }
+        }
+        lastProbeAt = now;
+    }
+
+    // A single missed probe is enough to stop answering
+    private long staleAfterMs() {
+        return probeIntervalMs * 3 / 2;
+    }
+
+    private void probe() {
+        if (!subscribe()) return;
+
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.stringCommands().set(probeKey.getBytes(StandardCharsets.UTF_8),
+                    Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8),
+                    Expiration.milliseconds(probeIntervalMs * 10), RedisStringCommands.SetOption.UPSERT);
+        } catch (Exception e) {
+            log.debug("Room metadata cache probe failed: {}", e.toString());
+        }
+    }
+
+    // Turn on the notifications the cache needs, keeping whatever else the server already publishes (opt-in).
+    // Managed Redis often forbids CONFIG; the probes then show whether notifications are on anyway.
+    private void enableKeyspaceEvents() {
+        if (keyspaceEvents == null || keyspaceEvents.isBlank()) return;
+
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            Properties current = connection.serverCommands().getConfig("notify-keyspace-events");
+            String flags = current == null ? "" : current.getProperty("notify-keyspace-events", "");
+            String merged = mergeEventFlags(flags, keyspaceEvents);
+            if (!merged.equals(flags)) {
+                connection.serverCommands().setConfig("notify-keyspace-events", merged);
+                log.info("Set notify-keyspace-events to '{}' (was '{}') for the room metadata cache", merged, flags);
+            }
+        } catch (Exception e) {
+            log.warn("Could not enable keyspace notifications ({}); the room metadata cache stays off unless "
+                    + "the server has notify-keyspace-events={} already", e.toString(), keyspaceEvents);
+        }
+    }
+
+    // Without configure-server, only say what is missing; the probes keep the cache off until it is fixed
+    private void checkKeyspaceEvents() {
+        if (keyspaceEvents == null || keyspaceEvents.isBlank()) return;
+
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            Properties current = connection.serverCommands().getConfig("notify-keyspace-events");
+            String flags = current == null ? "" : current.getProperty("notify-keyspace-events", "");
+            if (!mergeEventFlags(flags, keyspaceEvents).equals(flags)) {
+                log.warn("notify-keyspace-events is '{}' and lacks some of '{}': the room metadata cache stays off. "
+                        + "Configure the server, or set anonchat.room-cache.configure-server=true", flags, keyspaceEvents);
+            }
+        } catch (Exception e) {
+            log.debug("Could not read notify-keyspace-events ({}); the probes will tell", e.toString());
+        }
+    }
+
+    /** {@code current} plus whichever of {@code required} it lacks; 'A' already covers every class but K and E */
+    static String mergeEventFlags(String current, String required) {
+        StringBuilder merged = new StringBuilder(current);
+        boolean all = current.indexOf('A') >= 0;
+        for (char flag : required.toCharArray()) {
+            boolean covered = current.indexOf(flag) >= 0 || (all && flag != 'K' && flag != 'E');
+            if (!covered) merged.append(flag);
+        }
+        return merged.toString();
+    }
+
+    /** Stored in place of the owner token, so the cache never holds a credential */
+    public static String tokenHash(String token) {
+        if (token == null) return null;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Constant-time comparison of a presented token with a stored hash */
+    public static boolean tokenMatches(String hash, String token) {
+        if (hash == null || token == null) return false;
+        return MessageDigest.isEqual(hash.getBytes(StandardCharsets.UTF_8),
+                tokenHash(token).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String key(String roomId, Field field) {
+        return "room:" + roomId + ":" + field.suffix;
+    }
+
+    // Arbitrary victim: the cache only has to stay bounded, and a wrong guess costs one Redis read
+    private void evictOne() {
+        Iterator<String> keys = entries.keySet().iterator();
+        if (keys.hasNext()) {
+            keys.next();
+            keys.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (prober != null) prober.shutdownNow();
+        release(listenerContainer, containerShared);
+    }
+
+    // Someone else's container only loses our listener; our own is stopped
+    private void release(RedisMessageListenerContainer container, boolean shared) {
+        if (container == null) return;
+        try {
+            if (shared) container.removeMessageListener(this);
+            else container.destroy();
+        } catch (Exception e) {
+            log.debug("Failed to stop the room metadata cache listener", e);
+        }
+    }
+
+    // Identity matters: a reservation is replaced only by the load that made it
+    private static final class Slot {
+        final String value;
+        final long expiresAt;
+        final boolean loaded;
+
+        Slot(String value, long expiresAt, boolean loaded) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.loaded = loaded;
+        }
+    }
+}
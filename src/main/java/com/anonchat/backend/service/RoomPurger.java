@@ -0,0 +1,72 @@
+package com.anonchat.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Removes rooms from Redis: every key a room owns goes in one script call, so other nodes see the room either
+ * whole or gone, and UNLINK frees a large history on a background thread in Redis instead of blocking it.
+ */
+@Component
+@RequiredArgsConstructor
+public class RoomPurger {
+
+    // Blocks claims and disconnect handling while clients are told the room is gone
+    static final Duration TOMBSTONE_TTL = Duration.ofSeconds(3);
+
+    // Rooms per script call: bounds how long one call holds Redis
+    static final int BATCH_SIZE = 100;
+
+    static final String[] SUFFIXES = {":deleting", "", ":seq", ":stream", ":gen", ":name", ":owner"};
+
+    /*
+     * KEYS = per room, in SUFFIXES order: tombstone, list, counter, stream, generation, name, owner.
+     * ARGV[1] = tombstone TTL ms, ARGV[2] = keys per room. Returns the number of keys unlinked.
+     */
+    private static final RedisScript<Long> PURGE_SCRIPT = new DefaultRedisScript<>("""
+            local per = tonumber(ARGV[2])
+            local unlinked = 0
+            for i = 1, #KEYS, per do
+                redis.call('SET', KEYS[i], 'true', 'PX', ARGV[1])
+                unlinked = unlinked + redis.call('UNLINK', unpack(KEYS, i + 1, i + per - 1))
+            end
+            return unlinked
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /** Purges the rooms, {@link #BATCH_SIZE} per round trip; returns how many keys existed and were removed */
+    public long purge(Collection<String> roomIds) {
+        long unlinked = 0;
+        List<String> keys = new ArrayList<>(Math.min(roomIds.size(), BATCH_SIZE) * SUFFIXES.length);
+        for (String roomId : roomIds) {
+            keys.addAll(keysOf(roomId));
+            if (keys.size() == BATCH_SIZE * SUFFIXES.length) {
+                unlinked += run(keys);
+                keys.clear();
+            }
+        }
+        if (!keys.isEmpty()) unlinked += run(keys);
+        return unlinked;
+    }
+
+    static List<String> keysOf(String roomId) {
+        List<String> keys = new ArrayList<>(SUFFIXES.length);
+        for (String suffix : SUFFIXES) keys.add("room:" + roomId + suffix);
+        return keys;
+    }
+
+    private long run(List<String> keys) {
+        Long unlinked = redisTemplate.execute(PURGE_SCRIPT, keys,
+                Long.toString(TOMBSTONE_TTL.toMillis()), Integer.toString(SUFFIXES.length));
+        return unlinked != null ? unlinked : 0;
+    }
+}
@@ -0,0 +1,220 @@
+package com.anonchat.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background cleanup of room state in Redis. Walks {@code room:*} with SCAN a small batch at a time, pausing
+ * between batches, and per batch:
+ * <ul>
+ *     <li>removes {@code room:{id}:count} keys, left over from before presence moved to per-node hashes;</li>
+ *     <li>removes the history, counter, stream and generation of rooms that have neither a name nor an owner
+ *     and nobody in them: nothing can reach that history any more;</li>
+ *     <li>gives what is left that would otherwise live forever the normal room TTL: a sequence counter whose
+ *     messages were never written (only the history append sets its TTL), or data from before TTLs.</li>
+ * </ul>
+ * One node runs a pass per interval; the others skip it. Each batch costs two round trips, plus a presence read
+ * per room that looks orphaned. Also finds rooms by ID prefix for the bulk purge API.
+ */
+@Component
+@Slf4j
+public class RoomReaper {
+
+    static final String LOCK_KEY = "reaper:lock";
+
+    // Room occupancy before per-node presence
+    static final String OBSOLETE_COUNT_SUFFIX = ":count";
+
+    // What a room keeps about its messages; none of it means anything without the room's name or owner
+    static final List<String> HISTORY_SUFFIXES = List.of("", ":seq", ":stream", ":gen");
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final PresenceService presenceService;
+    private final long intervalMs;
+    private final int batchSize;
+    private final long pauseMs;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong expiriesSet = new AtomicLong();
+    private final AtomicLong obsoleteRemoved = new AtomicLong();
+    private final AtomicLong orphansRemoved = new AtomicLong();
+    private volatile long lastPassMs = -1;
+
+    public RoomReaper(RedisTemplate<String, String> redisTemplate,
+                      PresenceService presenceService,
+                      @Value("${anonchat.reaper.enabled:true}") boolean enabled,
+                      @Value("${anonchat.reaper.interval-ms:300000}") long intervalMs,
+                      @Value("${anonchat.reaper.batch-size:200}") int batchSize,
+                      @Value("${anonchat.reaper.pause-ms:20}") long pauseMs) {
+        this.redisTemplate = redisTemplate;
+        this.presenceService = presenceService;
+        this.intervalMs = Math.max(1000, intervalMs);
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMs = Math.max(0, pauseMs);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "room-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::runIfLeader, this.intervalMs, this.intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * IDs of rooms with any key in Redis whose ID starts with {@code prefix}, at most {@code limit}, found with
+     * the same incremental SCAN as a pass.
+     */
+    public List<String> findRooms(String prefix, int limit) {
+        Set<String> roomIds = new LinkedHashSet<>();
+        ScanOptions options = ScanOptions.scanOptions().match("room:" + prefix + "*").count(batchSize).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext() && roomIds.size() < limit) {
+                String roomId = roomIdOf(cursor.next());
+                if (roomId != null && roomId.startsWith(prefix)) roomIds.add(roomId);
+            }
+        }
+        return new ArrayList<>(roomIds);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("intervalMs", intervalMs);
+        stats.put("batchSize", batchSize);
+        stats.put("passes", passes.get());
+        stats.put("keysScanned", scanned.get());
+        stats.put("expiriesSet", expiriesSet.get());
+        stats.put("obsoleteRemoved", obsoleteRemoved.get());
+        stats.put("orphansRemoved", orphansRemoved.get());
+        stats.put("lastPassMs", lastPassMs);
+        return stats;
+    }
+
+    void runIfLeader() {
+        try {
+            // Held for most of the interval, so only one node walks the keyspace per interval
+            Boolean acquired = redisTemplate.opsForValue()
+                    .setIfAbsent(LOCK_KEY, "1", Duration.ofMillis(intervalMs * 9 / 10));
+            if (Boolean.TRUE.equals(acquired)) pass();
+        } catch (Exception e) {
+            log.warn("Room reaper pass failed", e);
+        }
+    }
+
+    /** One full SCAN of the room keys */
+    void pass() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        ScanOptions options = ScanOptions.scanOptions().match("room:*").count(batchSize).build();
+
+        List<String> batch = new ArrayList<>(batchSize);
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() == batchSize) {
+                    reap(batch);
+                    batch.clear();
+                    if (pauseMs > 0) Thread.sleep(pauseMs);
+                }
+            }
+        }
+        if (!batch.isEmpty()) reap(batch);
+
+        passes.incrementAndGet();
+        lastPassMs = System.currentTimeMillis() - start;
+    }
+
+    void reap(List<String> keys) {
+        scanned.addAndGet(keys.size());
+
+        // Rooms with history keys in this batch, checked for a name and an owner in the same round trip
+        List<String> historyRooms = new ArrayList<>(new LinkedHashSet<>(keys.stream()
+                .filter(RoomReaper::isHistoryKey).map(RoomReaper::roomIdOf).toList()));
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) connection.keyCommands().pTtl(bytes(key));
+            for (String roomId : historyRooms) {
+                connection.keyCommands().exists(bytes("room:" + roomId + ":name"), bytes("room:" + roomId + ":owner"));
+            }
+            return null;
+        });
+
+        Set<String> orphans = new HashSet<>();
+        for (int i = 0; i < historyRooms.size(); i++) {
+            String roomId = historyRooms.get(i);
+            // Read last: someone in the room may be about to claim it
+            if (replies.get(keys.size() + i) instanceof Long found && found == 0
+                    && presenceService.occupancy(roomId, false) == 0) {
+                orphans.add(roomId);
+            }
+        }
+
+        List<String> remove = new ArrayList<>();
+        List<String> noExpiry = new ArrayList<>();
+        long obsolete = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (key.endsWith(OBSOLETE_COUNT_SUFFIX)) {
+                remove.add(key);
+                obsolete++;
+            } else if (isHistoryKey(key) && orphans.contains(roomIdOf(key))) {
+                remove.add(key);
+            } else if (replies.get(i) instanceof Long ttl && ttl == -1) {
+                noExpiry.add(key);
+            }
+        }
+        if (remove.isEmpty() && noExpiry.isEmpty()) return;
+
+        long ttlSeconds = ChatService.ROOM_TTL.toSeconds();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (!remove.isEmpty()) {
+                connection.keyCommands().unlink(remove.stream().map(RoomReaper::bytes).toArray(byte[][]::new));
+            }
+            for (String key : noExpiry) connection.keyCommands().expire(bytes(key), ttlSeconds);
+            return null;
+        });
+        obsoleteRemoved.addAndGet(obsolete);
+        orphansRemoved.addAndGet(remove.size() - obsolete);
+        expiriesSet.addAndGet(noExpiry.size());
+        if (!orphans.isEmpty()) {
+            log.info("Reaper removed the history of {} rooms with no name, owner or members", orphans.size());
+        }
+    }
+
+    static boolean isHistoryKey(String key) {
+        String roomId = roomIdOf(key);
+        return roomId != null && HISTORY_SUFFIXES.contains(key.substring(5 + roomId.length()));
+    }
+
+    // "room:{id}" or "room:{id}:{suffix}"; room IDs never contain ':'
+    static String roomIdOf(String key) {
+        if (!key.startsWith("room:")) return null;
+        int end = key.indexOf(':', 5);
+        String roomId = end < 0 ? key.substring(5) : key.substring(5, end);
+        return roomId.isEmpty() ? null : roomId;
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
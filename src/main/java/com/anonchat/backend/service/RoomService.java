@@ -3,40 +3,29 @@ package com.anonchat.backend.service;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import lombok.RequiredArgsConstructor;
-import java.time.Duration;
-import java.security.SecureRandom;
 
 @Service
 @RequiredArgsConstructor
 public class RoomService {
 
     private final RedisTemplate<String, String> redisTemplate;
-    private static final String CHARS = "abcdefghijklmnopqrstuvwxyz0123456789";
-    private static final int ID_LEN = 8;
-
-    public String generateRoomId() {
-        SecureRandom random = new SecureRandom();
-        StringBuilder sb = new StringBuilder(ID_LEN);
-        for (int i = 0; i < ID_LEN; i++)
-            sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
-
-        return sb.toString();
-    }
+    private final RoomMetadataCache metadataCache;
+    private final RoomIdAllocator idAllocator;
 
     // Create room and map ID -> Name
     public String createRoom(String roomName) {
-        String uniqueId = generateRoomId();
-
-        // Save the human-readable name in Redis (Expires in 1 hour if idle)
-        String key = "room:" + uniqueId + ":name";
-        redisTemplate.opsForValue().set(key, roomName, Duration.ofHours(1));
+        // Picks an ID no room has and saves the human-readable name (Expires in 1 hour if idle)
+        String uniqueId = idAllocator.allocate(roomName);
+        metadataCache.invalidate(uniqueId, RoomMetadataCache.Field.NAME);
 
         return uniqueId;
     }
 
     // NEW: Get Name from ID (for joiners)
     public String getRoomName(String roomId) {
-        String name = redisTemplate.opsForValue().get("room:" + roomId + ":name");
-        return name != null ? name : "Unknown Room";
+        String name = metadataCache.get(roomId, RoomMetadataCache.Field.NAME,
+                () -> redisTemplate.opsForValue().get("room:" + roomId + ":name"));
+        // Reserved for a room that hasn't been created yet
+        return name != null && !name.equals(RoomIdAllocator.RESERVED) ? name : "Unknown Room";
     }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package com.anonchat.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Room sequence numbers, leased from Redis in blocks so a busy room doesn't pay an INCR per message.
+ * <p>
+ * A room starts with blocks of one number; a block used up before it expires doubles the next one, up to
+ * {@code anonchat.history.sequence.max-block}, and a block that expires with numbers left halves it. Blocks expire
+ * after {@code anonchat.history.sequence.lease-ms}, which bounds how long this node can keep numbering behind
+ * another node's newer messages, and how long it may hand out numbers of a room deleted elsewhere.
+ * Unused numbers are simply skipped: sequences grow, but not one by one.
+ * <p>
+ * With {@code anonchat.broker.mode=redis} every block is one number, leased as it is used: several nodes then
+ * number a room without gaps, so a number not stored yet is one another node still has to write (see
+ * {@link #consecutive}).
+ * <p>
+ * Leasing ({@link #ensure}) waits on Redis and is done outside any lock; taking a number ({@link #next}) never waits.
+ */
+@Component
+public class SequenceLeases {
+
+    // Rooms remembered beyond that are forgotten once their lease has expired
+    private static final int MAX_ROOMS = 10_000;
+
+    private final HistoryStore historyStore;
+    private final int maxBlock;
+    private final long leaseMs;
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final AtomicLong blocks = new AtomicLong();
+    private final AtomicLong numbers = new AtomicLong();
+
+    public SequenceLeases(HistoryStore historyStore,
+                          @Value("${anonchat.history.sequence.max-block:64}") int maxBlock,
+                          @Value("${anonchat.history.sequence.lease-ms:500}") long leaseMs,
+                          @Value("${anonchat.broker.mode:simple}") String brokerMode) {
+        this.historyStore = historyStore;
+        this.maxBlock = "redis".equals(brokerMode) ? 1 : Math.max(1, maxBlock);
+        this.leaseMs = Math.max(1, leaseMs);
+    }
+
+    /** Numbers {@code first..last} leased by this node in one round trip */
+    public record Block(long first, long last) {
+    }
+
+    public Block ensure(String roomId) {
+        return ensure(roomId, block -> {
+        });
+    }
+
+    /**
+     * Make sure the room has a live block with a number left, leasing one if needed. Returns the new block, or null
+     * if the current one still has numbers. One thread per room leases; the others wait for it.
+     * {@code onLeased} sees a new block before any of its numbers is handed out.
+     */
+    public Block ensure(String roomId, Consumer<Block> onLeased) {
+        Lease lease = leases.get(roomId);
+        if (lease == null) {
+            if (leases.size() >= MAX_ROOMS) forgetExpired();
+            lease = leases.computeIfAbsent(roomId, id -> new Lease());
+        }
+        if (lease.hasNumbers(System.currentTimeMillis())) return null;
+
+        lease.renewal.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (lease.hasNumbers(now)) return null;
+
+            int size = lease.nextBlockSize(maxBlock);
+            long last = historyStore.allocateSequences(roomId, size);
+            Block block = new Block(last - size + 1, last);
+            onLeased.accept(block);
+            lease.install(block, now + leaseMs);
+            blocks.incrementAndGet();
+            return block;
+        } finally {
+            lease.renewal.unlock();
+        }
+    }
+
+    /**
+     * Next number of the room's block, or 0 if it is used up or expired (lease another with {@link #ensure}).
+     */
+    public long next(String roomId) {
+        Lease lease = leases.get(roomId);
+        long seq = lease != null ? lease.take(System.currentTimeMillis()) : 0;
+        if (seq > 0) numbers.incrementAndGet();
+        return seq;
+    }
+
+    /**
+     * The newest number that can belong to a message, given the room counter just read from Redis: if the counter
+     * is still at the end of this node's block, numbers this node leased but didn't use are left out.
+     */
+    public long lastUsed(String roomId, long counter) {
+        Lease lease = leases.get(roomId);
+        return lease != null ? lease.lastUsed(counter) : counter;
+    }
+
+    /**
+     * True when numbers are leased one at a time, so every number below the room counter belongs to a message
+     * (unless a lease expired unused, which takes a stalled sender).
+     */
+    public boolean consecutive() {
+        return maxBlock == 1;
+    }
+
+    /** Forget the room's block, e.g. because the room was deleted and its counter starts over */
+    public void evictRoom(String roomId) {
+        leases.remove(roomId);
+    }
+
+    public Map<String, Object> stats() {
+        long blockCount = blocks.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxBlock", maxBlock);
+        stats.put("rooms", leases.size());
+        stats.put("blocks", blockCount);
+        stats.put("numbers", numbers.get());
+        stats.put("numbersPerBlock", blockCount == 0 ? 0.0 : Math.round(numbers.get() * 10.0 / blockCount) / 10.0);
+        return stats;
+    }
+
+    private void forgetExpired() {
+        long now = System.currentTimeMillis();
+        leases.values().removeIf(lease -> lease.expiredBefore(now));
+    }
+
+    private static final class Lease {
+        private final ReentrantLock renewal = new ReentrantLock();
+
+        // Guarded by this
+        private long next = 1;
+        private long end;
+        private long expiresAt;
+        private int size;
+        // Every number in (lastUsed, end] was leased here and not used
+        private long lastUsed;
+
+        synchronized boolean hasNumbers(long now) {
+            return next <= end && now < expiresAt;
+        }
+
+        synchronized long take(long now) {
+            if (next > end || now >= expiresAt) return 0;
+            lastUsed = next;
+            return next++;
+        }
+
+        // Doubles after a block that ran out in time, halves after one that expired with numbers left
+        synchronized int nextBlockSize(int maxBlock) {
+            if (size == 0) return 1;
+            if (next > end) return Math.min(maxBlock, size * 2);
+            return Math.max(1, size / 2);
+        }
+
+        synchronized void install(Block block, long expiresAt) {
+            // Numbers between our blocks went to another node: they may belong to messages
+            if (block.first() != end + 1) lastUsed = block.first() - 1;
+            this.next = block.first();
+            this.end = block.last();
+            this.size = (int) (block.last() - block.first() + 1);
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized long lastUsed(long counter) {
+            return counter == end ? lastUsed : counter;
+        }
+
+        synchronized boolean expiredBefore(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * History as a Redis stream {@code room:{id}:stream}. Redis assigns every entry a monotonic ID
+ * ({@code <millis>-<n>}), which becomes {@link ChatMessage#getId()} and, for messages stored without one,
+ * the timestamp. Each entry also carries its room sequence ({@code s}) next to the encoded message ({@code m}),
+ * so cursors work exactly as with the list backend (see {@link HistoryWindow#read}). Streams can't seek by
+ * position, so a page reads back from the newest entry to the start of the page.
+ * <p>
+ * Appends trim with {@code MAXLEN ~}, which lets Redis drop whole radix-tree nodes instead of single entries;
+ * the stream may hold slightly more than the limit, reads never return more.
+ */
+@Component
+@ConditionalOnProperty(name = "anonchat.history.backend", havingValue = "stream")
+@RequiredArgsConstructor
+public class StreamHistoryStore implements HistoryStore {
+
+    static final String SEQ_FIELD = "s";
+    static final String MESSAGE_FIELD = "m";
+
+    /*
+     * KEYS[1] = stream, KEYS[2] = sequence counter, KEYS[3] = generation; ARGV[1] = max length,
+     * ARGV[2] = TTL seconds, ARGV[3] = generation if the room has none yet,
+     * ARGV[4..] = (sequence, encoded message) pairs, already numbered by allocateSequences.
+     */
+    private static final RedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>("""
+            for i = 4, #ARGV, 2 do
+                redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', 's', ARGV[i], 'm', ARGV[i + 1])
+            end
+            redis.call('SET', KEYS[3], ARGV[3], 'NX')
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+            redis.call('EXPIRE', KEYS[2], ARGV[2])
+            redis.call('EXPIRE', KEYS[3], ARGV[2])
+            return (#ARGV - 3) / 2
+            """, Long.class);
+
+    /*
+     * KEYS[1] = stream, KEYS[2] = generation. Returns {sequence of the newest entry, generation}, 0 if absent.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> VERSION_SCRIPT = new DefaultRedisScript<>("""
+            local newest = redis.call('XREVRANGE', KEYS[1], '+', '-', 'COUNT', 1)[1]
+            local seq = 0
+            if newest then
+                local fields = newest[2]
+                for i = 1, #fields, 2 do
+                    if fields[i] == 's' then seq = tonumber(fields[i + 1]) or 0 end
+                end
+            end
+            return {seq, tonumber(redis.call('GET', KEYS[2]) or '0') or 0}
+            """, List.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Override
+    public long allocateSequences(String roomId, int count) {
+        Long last = redisTemplate.opsForValue().increment(seqKey(roomId), count);
+        return last != null ? last : 0;
+    }
+
+    @Override
+    public void append(String roomId, List<ChatMessage> batch) {
+        Object[] args = new Object[batch.size() * 2 + 3];
+        args[0] = ChatService.HISTORY_LIMIT;
+        args[1] = ChatService.ROOM_TTL.toSeconds();
+        args[2] = HistoryVersion.newGeneration();
+        for (int i = 0; i < batch.size(); i++) {
+            ChatMessage message = batch.get(i);
+            args[i * 2 + 3] = message.getSeq() != null ? message.getSeq() : 0L;
+            args[i * 2 + 4] = message;
+        }
+
+        redisTemplate.execute(APPEND_SCRIPT, List.of(streamKey(roomId), seqKey(roomId), genKey(roomId)), args);
+    }
+
+    @Override
+    public List<Object> readAll(String roomId) {
+        return HistoryWindow.inSequenceOrder(stored(roomId));
+    }
+
+    @Override
+    public long latestSequence(String roomId) {
+        Long seq = ListHistoryStore.toLong(redisTemplate.opsForValue().get(seqKey(roomId)));
+        return seq != null ? seq : 0;
+    }
+
+    @Override
+    public HistoryVersion version(String roomId) {
+        List<?> values = redisTemplate.execute(VERSION_SCRIPT, List.of(streamKey(roomId), genKey(roomId)));
+        if (values == null || values.size() < 2) return new HistoryVersion(0, 0);
+        return new HistoryVersion(((Number) values.get(1)).longValue(), ((Number) values.get(0)).longValue());
+    }
+
+    @Override
+    public HistoryPage readPage(String roomId, int limit, Long before, Long after) {
+        return HistoryWindow.read((skip, count) -> tail(roomId, skip, count), version(roomId).sequence(),
+                limit, before, after, () -> stored(roomId));
+    }
+
+    // The newest skip + count entries in one XREVRANGE, the newest skip of them dropped
+    private HistoryWindow.Slice tail(String roomId, long skip, int count) {
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .reverseRange(streamKey(roomId), Range.unbounded(), Limit.limit().count((int) (skip + count)));
+        if (records == null || records.isEmpty()) return new HistoryWindow.Slice(List.of(), 0);
+
+        Long newest = toMessage(records.get(0)) instanceof ChatMessage message ? message.getSeq() : null;
+        List<Object> entries = new ArrayList<>(Math.max(0, records.size() - (int) skip));
+        for (int i = records.size() - 1; i >= skip; i--) entries.add(toMessage(records.get(i)));
+        return new HistoryWindow.Slice(entries, newest != null ? newest : 0);
+    }
+
+    @Override
+    public void delete(String roomId) {
+        redisTemplate.delete(List.of(streamKey(roomId), seqKey(roomId), genKey(roomId)));
+    }
+
+    // The retained entries in the order they were stored, oldest first
+    private List<Object> stored(String roomId) {
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .reverseRange(streamKey(roomId), Range.unbounded(), Limit.limit().count(ChatService.HISTORY_LIMIT));
+        if (records == null) return List.of();
+
+        List<Object> messages = new ArrayList<>(records.size());
+        for (int i = records.size() - 1; i >= 0; i--) messages.add(toMessage(records.get(i)));
+        return messages;
+    }
+
+    private static Object toMessage(MapRecord<String, Object, Object> record) {
+        Object value = record.getValue().get(MESSAGE_FIELD);
+        if (value instanceof ChatMessage message) {
+            message.setId(record.getId().getValue());
+            // Written with a codec version that had no room for it
+            if (message.getSeq() == null) message.setSeq(ListHistoryStore.toLong(record.getValue().get(SEQ_FIELD)));
+            if (message.getTimestamp() == null) message.setTimestamp(record.getId().getTimestamp());
+        }
+        return value;
+    }
+
+    private static String streamKey(String roomId) {
+        return "room:" + roomId + ":stream";
+    }
+
+    private static String seqKey(String roomId) {
+        return "room:" + roomId + ":seq";
+    }
+
+    private static String genKey(String roomId) {
+        return "room:" + roomId + ":gen";
+    }
+}
@@ -0,0 +1,228 @@
+package com.anonchat.backend.util;
+
+import java.util.*;
+
+/**
+ * Immutable multi-pattern matcher (Aho-Corasick). Finds every dictionary word in one pass over the text,
+ * so the cost depends on the text length, not on the dictionary size.
+ * Matching is ASCII case-insensitive. In whole-word mode only matches bounded like {@code \bword\b}
+ * (with {@link java.util.regex.Pattern#CASE_INSENSITIVE}) are reported; otherwise any substring counts.
+ */
+public final class AhoCorasickMatcher {
+
+    @FunctionalInterface
+    public interface MatchHandler {
+        /**
+         * @param start   first matched index in the text
+         * @param end     index after the last matched char
+         * @param payload value stored with the word (e.g. severity)
+         */
+        void onMatch(int start, int end, int payload);
+    }
+
+    private static final int NONE = -1;
+
+    // Transitions of state s are edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1]), sorted by char
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+
+    // Direct lookup for the root, where most steps land
+    private final int[] rootAscii = new int[128];
+
+    private final int[] fail;
+    private final int[] dictLink;   // Next state on the fail chain that ends a word
+    private final int[] payload;    // Payload of the word ending here, or NONE
+    private final int[] length;     // Length of the word ending here
+    private final int words;
+    private final boolean wholeWords;
+
+    private AhoCorasickMatcher(List<Map<Character, Integer>> children, int[] payload, int[] length, int words,
+                               boolean wholeWords) {
+        int states = children.size();
+        this.wholeWords = wholeWords;
+        this.payload = payload;
+        this.length = length;
+        this.words = words;
+        this.fail = new int[states];
+        this.dictLink = new int[states];
+
+        // Flatten the trie
+        int edges = 0;
+        for (Map<Character, Integer> map : children) edges += map.size();
+        edgeStart = new int[states + 1];
+        edgeChars = new char[edges];
+        edgeTargets = new int[edges];
+
+        int e = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = e;
+            Map<Character, Integer> map = children.get(s);
+            Character[] keys = map.keySet().toArray(new Character[0]);
+            Arrays.sort(keys);
+            for (Character c : keys) {
+                edgeChars[e] = c;
+                edgeTargets[e] = map.get(c);
+                e++;
+            }
+        }
+        edgeStart[states] = e;
+
+        Arrays.fill(rootAscii, NONE);
+        for (int i = edgeStart[0]; i < edgeStart[1]; i++) {
+            if (edgeChars[i] < 128) rootAscii[edgeChars[i]] = edgeTargets[i];
+        }
+
+        // Failure and dictionary links, breadth first so shallower states are always done first
+        dictLink[0] = NONE;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = edgeStart[0]; i < edgeStart[1]; i++) {
+            int child = edgeTargets[i];
+            fail[child] = 0;
+            dictLink[child] = NONE;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            for (int i = edgeStart[u]; i < edgeStart[u + 1]; i++) {
+                char c = edgeChars[i];
+                int v = edgeTargets[i];
+
+                int f = fail[u];
+                int next;
+                while ((next = step(f, c)) == NONE && f != 0) f = fail[f];
+                fail[v] = next == NONE ? 0 : next;
+                dictLink[v] = payload[fail[v]] != NONE ? fail[v] : dictLink[fail[v]];
+                queue.add(v);
+            }
+        }
+    }
+
+    /**
+     * Build a whole-word matcher from word -> payload. Duplicate words (after case folding) keep the highest payload.
+     */
+    public static AhoCorasickMatcher build(Map<String, Integer> dictionary) {
+        return build(dictionary, true);
+    }
+
+    public static AhoCorasickMatcher build(Map<String, Integer> dictionary, boolean wholeWords) {
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> payloads = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        children.add(new HashMap<>());
+        payloads.add(NONE);
+        lengths.add(0);
+
+        int words = 0;
+        for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+            String word = entry.getKey();
+            if (word == null || word.isEmpty()) continue;
+
+            int s = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = fold(word.charAt(i));
+                Integer next = children.get(s).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<>());
+                    payloads.add(NONE);
+                    lengths.add(0);
+                    children.get(s).put(c, next);
+                }
+                s = next;
+            }
+
+            if (payloads.get(s) == NONE) words++;
+            payloads.set(s, Math.max(payloads.get(s), entry.getValue()));
+            lengths.set(s, word.length());
+        }
+
+        return new AhoCorasickMatcher(children,
+                payloads.stream().mapToInt(Integer::intValue).toArray(),
+                lengths.stream().mapToInt(Integer::intValue).toArray(),
+                words, wholeWords);
+    }
+
+    public int size() {
+        return words;
+    }
+
+    /**
+     * Report every occurrence in {@code text}, in order of their end position.
+     */
+    public void scan(CharSequence text, MatchHandler handler) {
+        int s = 0;
+        int len = text.length();
+
+        for (int i = 0; i < len; i++) {
+            char c = fold(text.charAt(i));
+
+            int next;
+            while ((next = step(s, c)) == NONE && s != 0) s = fail[s];
+            s = next == NONE ? 0 : next;
+
+            for (int o = payload[s] != NONE ? s : dictLink[s]; o != NONE; o = dictLink[o]) {
+                int start = i - length[o] + 1;
+                int end = i + 1;
+                if (!wholeWords || (isBoundary(text, start) && isBoundary(text, end))) {
+                    handler.onMatch(start, end, payload[o]);
+                }
+            }
+        }
+    }
+
+    /**
+     * True as soon as any dictionary word occurs in {@code text}; allocation-free.
+     */
+    public boolean containsAny(CharSequence text) {
+        int s = 0;
+        int len = text.length();
+
+        for (int i = 0; i < len; i++) {
+            char c = fold(text.charAt(i));
+
+            int next;
+            while ((next = step(s, c)) == NONE && s != 0) s = fail[s];
+            s = next == NONE ? 0 : next;
+
+            for (int o = payload[s] != NONE ? s : dictLink[s]; o != NONE; o = dictLink[o]) {
+                int start = i - length[o] + 1;
+                if (!wholeWords || (isBoundary(text, start) && isBoundary(text, i + 1))) return true;
+            }
+        }
+        return false;
+    }
+
+    private int step(int state, char c) {
+        if (state == 0) {
+            if (c < 128) return rootAscii[c];
+        }
+
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) lo = mid + 1;
+            else if (m > c) hi = mid - 1;
+            else return edgeTargets[mid];
+        }
+        return NONE;
+    }
+
+    // Same rule as regex \b: word-ness differs on either side of the index
+    private static boolean isBoundary(CharSequence text, int index) {
+        boolean before = index > 0 && isWordChar(text.charAt(index - 1));
+        boolean after = index < text.length() && isWordChar(text.charAt(index));
+        return before != after;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static char fold(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + 32) : c;
+    }
+}
@@ -0,0 +1,49 @@
+package com.anonchat.backend.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes everything through to the wrapped stream and keeps a copy, up to a size limit.
+ * Once the limit is exceeded the copy is dropped and only pass-through continues.
+ */
+public class CapturingOutputStream extends FilterOutputStream {
+
+    private final long limit;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    public CapturingOutputStream(OutputStream out, long limit) {
+        super(out);
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        capture(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        capture(b, off, len);
+    }
+
+    /**
+     * @return the captured bytes, or null if the output outgrew the limit
+     */
+    public byte[] getCaptured() {
+        return copy != null ? copy.toByteArray() : null;
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        if (copy == null) return;
+        if (copy.size() + len > limit) {
+            copy = null;
+            return;
+        }
+        copy.write(b, off, len);
+    }
+}
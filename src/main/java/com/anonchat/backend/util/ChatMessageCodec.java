@@ -0,0 +1,212 @@
+package com.anonchat.backend.util;
+
+import com.anonchat.backend.model.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Compact, versioned binary layout for stored {@link ChatMessage}s; no field or class names on the wire.
+ * <pre>
+ *   byte    MAGIC (0xC5, can never start a JSON document)
+ *   byte    format version
+ *   byte    type: 0 = null, 1 = CHAT, 2 = JOIN, 3 = LEAVE, 4 = PRESENCE (written from version 4)
+ *   varint  sender length + 1 (0 = null), then UTF-8 bytes
+ *   varint  content length + 1 (0 = null), then UTF-8 bytes
+ *   varlong timestamp in epoch millis + 1 (0 = null)                 (version 2+)
+ *   varlong room sequence + 1 (0 = null)                              (version 3+)
+ * </pre>
+ * A new field or type code means a new version number; {@link #decode} keeps reading every older version.
+ * Writers pick the version (anonchat.history.codec-write-version): during a rolling deploy they keep writing
+ * what the oldest node reads, and the setting is raised once every node runs the new reader. Fields an older
+ * version has no room for are dropped, and a PRESENCE summary below version 4 is stored with no type.
+ * The message ID is not part of the payload: it is where the entry is stored (see HistoryStore).
+ */
+public final class ChatMessageCodec {
+
+    public static final byte MAGIC = (byte) 0xC5;
+    public static final byte VERSION_1 = 1;
+    public static final byte VERSION_2 = 2;
+    public static final byte VERSION_3 = 3;
+    public static final byte VERSION_4 = 4;
+    public static final byte LATEST_VERSION = VERSION_4;
+
+    private static final ChatMessage.MessageType[] TYPES = {
+            null, ChatMessage.MessageType.CHAT, ChatMessage.MessageType.JOIN, ChatMessage.MessageType.LEAVE,
+            ChatMessage.MessageType.PRESENCE
+    };
+
+    private ChatMessageCodec() {
+    }
+
+    /** True if {@code bytes} were written by this codec (as opposed to legacy JSON) */
+    public static boolean isCompact(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == MAGIC;
+    }
+
+    public static byte[] encode(ChatMessage message) {
+        return encode(message, LATEST_VERSION);
+    }
+
+    /** Encode in the layout of {@code version}, so nodes that only read up to that version can read it */
+    public static byte[] encode(ChatMessage message, byte version) {
+        if (version < VERSION_1 || version > LATEST_VERSION)
+            throw new IllegalArgumentException("Unknown chat message format version " + version + ".");
+
+        byte[] sender = utf8(message.getSender());
+        byte[] content = utf8(message.getContent());
+
+        boolean hasTimestamp = version >= VERSION_2;
+        boolean hasSeq = version >= VERSION_3;
+        long timestamp = hasTimestamp && message.getTimestamp() != null ? message.getTimestamp() + 1 : 0;
+        long seq = hasSeq && message.getSeq() != null ? message.getSeq() + 1 : 0;
+
+        int size = 3 + fieldSize(sender) + fieldSize(content)
+                + (hasTimestamp ? varintSize(timestamp) : 0) + (hasSeq ? varintSize(seq) : 0);
+        byte[] out = new byte[size];
+        out[0] = MAGIC;
+        out[1] = version;
+        out[2] = typeCode(message.getType(), version);
+
+        int pos = writeField(out, 3, sender);
+        pos = writeField(out, pos, content);
+        if (hasTimestamp) pos = writeVarint(out, pos, timestamp);
+        if (hasSeq) writeVarint(out, pos, seq);
+        return out;
+    }
+
+    public static ChatMessage decode(byte[] bytes) {
+        if (!isCompact(bytes)) throw new IllegalArgumentException("Not a compact chat message.");
+
+        try {
+            switch (bytes[1]) {
+                case VERSION_1:
+                case VERSION_2:
+                case VERSION_3:
+                case VERSION_4:
+                    return decodeFields(bytes, bytes[1]);
+                default:
+                    throw new IllegalArgumentException("Unknown chat message format version " + bytes[1] + ".");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated chat message.", e);
+        }
+    }
+
+    /**
+     * A history entry as returned by the JSON serializer: a ChatMessage, or a plain Map when it was stored
+     * without type information. Returns null for anything else.
+     */
+    public static ChatMessage fromLegacy(Object item) {
+        if (item instanceof ChatMessage message) return message;
+        if (!(item instanceof Map<?, ?> map) || !(map.containsKey("content") || map.containsKey("sender"))) return null;
+
+        Object type = map.get("type");
+        ChatMessage.MessageType messageType = null;
+        for (ChatMessage.MessageType candidate : ChatMessage.MessageType.values()) {
+            if (candidate.name().equals(String.valueOf(type))) messageType = candidate;
+        }
+
+        return ChatMessage.builder()
+                .content((String) map.get("content"))
+                .sender((String) map.get("sender"))
+                .type(messageType)
+                .build();
+    }
+
+    private static ChatMessage decodeFields(byte[] bytes, byte version) {
+        // Type codes are accepted whatever the version: version 3 entries with PRESENCE exist
+        int typeCode = bytes[2];
+        if (typeCode < 0 || typeCode >= TYPES.length)
+            throw new IllegalArgumentException("Unknown chat message type " + typeCode + ".");
+
+        int[] pos = {3};
+        String sender = readField(bytes, pos);
+        String content = readField(bytes, pos);
+        long timestamp = version >= VERSION_2 ? readVarint(bytes, pos) : 0;
+        long seq = version >= VERSION_3 ? readVarint(bytes, pos) : 0;
+
+        return ChatMessage.builder()
+                .content(content)
+                .sender(sender)
+                .type(TYPES[typeCode])
+                .timestamp(timestamp > 0 ? timestamp - 1 : null)
+                .seq(seq > 0 ? seq - 1 : null)
+                .build();
+    }
+
+    private static byte typeCode(ChatMessage.MessageType type, byte version) {
+        if (type == null) return 0;
+        return switch (type) {
+            case CHAT -> 1;
+            case JOIN -> 2;
+            case LEAVE -> 3;
+            // Older readers reject code 4; the summary text still reads fine without a type
+            case PRESENCE -> version >= VERSION_4 ? (byte) 4 : 0;
+            case EPHEMERAL -> throw new IllegalArgumentException("Ephemeral messages are never stored.");
+        };
+    }
+
+    private static byte[] utf8(String text) {
+        return text != null ? text.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int fieldSize(byte[] field) {
+        int length = field != null ? field.length + 1 : 0;
+        return varintSize(length) + (field != null ? field.length : 0);
+    }
+
+    private static int writeField(byte[] out, int pos, byte[] field) {
+        pos = writeVarint(out, pos, field != null ? field.length + 1 : 0);
+
+        if (field != null) {
+            System.arraycopy(field, 0, out, pos, field.length);
+            pos += field.length;
+        }
+        return pos;
+    }
+
+    private static String readField(byte[] bytes, int[] pos) {
+        long length = readVarint(bytes, pos);
+        if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("Malformed length in chat message.");
+
+        if (length == 0) return null;
+        int size = (int) length - 1;
+        if (size > bytes.length - pos[0]) throw new IllegalArgumentException("Truncated chat message.");
+
+        String text = new String(bytes, pos[0], size, StandardCharsets.UTF_8);
+        pos[0] += size;
+        return text;
+    }
+
+    private static int writeVarint(byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static long readVarint(byte[] bytes, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) throw new IllegalArgumentException("Malformed varint in chat message.");
+            b = bytes[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,279 @@
+package com.anonchat.backend.util;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Single-pass, char-level text folding for filtering:
+ * accents, case, fullwidth forms, common homoglyphs and leetspeak fold to plain a-z,
+ * whitespace runs collapse to one space, and punctuation is either dropped or turned into a separator.
+ * <p>
+ * Works in buffers borrowed from a small shared pool, so a call allocates nothing while the pool has one free.
+ * A thread-local buffer would not do that under virtual threads, which run one message each: every message would
+ * get a fresh buffer. Every output char remembers the range of input chars it came from, so matches on the folded
+ * text can be mapped back to the original. The returned view is valid until it is closed, which returns its
+ * buffer to the pool.
+ */
+public final class TextNormalizer {
+
+    public enum Punctuation {
+        /** Remove punctuation entirely ("a.d.m.i.n" -> "admin"); used for reserved-name checks */
+        DROP,
+        /** Treat punctuation as a word separator; keeps word boundaries intact for content filtering */
+        SEPARATE
+    }
+
+    /** Folded view of one input. Implements CharSequence so matchers can scan it directly. */
+    public static final class Result implements CharSequence, AutoCloseable {
+        private char[] chars = new char[256];
+        private int[] starts = new int[256];
+        private int[] ends = new int[256];
+        private int length;
+        private boolean open;
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        /** First input index behind output char {@code index} */
+        public int originalStart(int index) {
+            return starts[index];
+        }
+
+        /** Input index after the last input char behind output char {@code index} (including dropped marks) */
+        public int originalEnd(int index) {
+            return ends[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+
+        /** Hands the buffer back to the pool; the view must not be used afterwards */
+        @Override
+        public void close() {
+            if (!open) return;
+            open = false;
+            giveBack(this);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= chars.length) return;
+            int size = Math.max(capacity, chars.length * 2);
+            chars = Arrays.copyOf(chars, size);
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+        }
+
+        private void append(char c, int start, int end) {
+            chars[length] = c;
+            starts[length] = start;
+            ends[length] = end;
+            length++;
+        }
+    }
+
+    // Calls in flight at once are bounded by the threads that run them: carriers under virtual threads, pools otherwise.
+    // A call that finds no free buffer near its slot allocates one; one that finds no empty slot drops its buffer.
+    private static final AtomicReferenceArray<Result> POOL =
+            new AtomicReferenceArray<>(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+    private static final int PROBES = 4;
+
+    // Marker values in FOLD
+    private static final char SKIP = '\u0000';   // Combining mark / zero-width: drop, but credit to the previous char
+    private static final char PUNCT = '\u0001';
+    private static final char SPACE = ' ';
+
+    // Folded form of every char below U+0500 (Latin, Greek, Cyrillic); others fold on the fly
+    private static final char[] FOLD = new char[0x0500];
+
+    // Digits and symbols that stand for letters. They only fold inside a word ("4dm1n", "$tupid"),
+    // so plain numbers and trailing punctuation ("stupid!") are left alone.
+    private static final char[] LEET = new char[128];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            char folded;
+            if (c >= 'A' && c <= 'Z') folded = (char) (c + 32);
+            else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_') folded = c;
+            else if (Character.isWhitespace(c) || Character.isSpaceChar(c)) folded = SPACE;
+            else if (c >= 0x0300 && c <= 0x036F) folded = SKIP;
+            else if (c < 0x00C0) folded = PUNCT;
+            else if (!Character.isLetterOrDigit(c)) folded = PUNCT;
+            else {
+                // Strip accents once at startup: first char of the canonical decomposition
+                char base = Character.toLowerCase(Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0));
+                folded = base >= 'a' && base <= 'z' ? base : Character.toLowerCase(c);
+            }
+            FOLD[c] = folded;
+        }
+
+        LEET['4'] = 'a';
+        LEET['@'] = 'a';
+        LEET['8'] = 'b';
+        LEET['3'] = 'e';
+        LEET['6'] = 'g';
+        LEET['9'] = 'g';
+        LEET['1'] = 'i';
+        LEET['!'] = 'i';
+        LEET['|'] = 'i';
+        LEET['0'] = 'o';
+        LEET['5'] = 's';
+        LEET['$'] = 's';
+        LEET['7'] = 't';
+        LEET['+'] = 't';
+
+        // Cyrillic look-alikes: а в е ё к м н о р с т у х ѕ і ј
+        FOLD['\u0430'] = 'a';
+        FOLD['\u0432'] = 'b';
+        FOLD['\u0435'] = 'e';
+        FOLD['\u0451'] = 'e';
+        FOLD['\u043A'] = 'k';
+        FOLD['\u043C'] = 'm';
+        FOLD['\u043D'] = 'h';
+        FOLD['\u043E'] = 'o';
+        FOLD['\u0440'] = 'p';
+        FOLD['\u0441'] = 'c';
+        FOLD['\u0442'] = 't';
+        FOLD['\u0443'] = 'y';
+        FOLD['\u0445'] = 'x';
+        FOLD['\u0455'] = 's';
+        FOLD['\u0456'] = 'i';
+        FOLD['\u0458'] = 'j';
+
+        // Greek look-alikes: α β ε ι κ ν ο ρ τ υ χ
+        FOLD['\u03B1'] = 'a';
+        FOLD['\u03B2'] = 'b';
+        FOLD['\u03B5'] = 'e';
+        FOLD['\u03B9'] = 'i';
+        FOLD['\u03BA'] = 'k';
+        FOLD['\u03BD'] = 'v';
+        FOLD['\u03BF'] = 'o';
+        FOLD['\u03C1'] = 'p';
+        FOLD['\u03C4'] = 't';
+        FOLD['\u03C5'] = 'u';
+        FOLD['\u03C7'] = 'x';
+
+        // Uppercase look-alikes were lowered to the Cyrillic/Greek lowercase above; follow through to ASCII
+        for (char c = 0; c < FOLD.length; c++) {
+            char f = FOLD[c];
+            if (f >= 128 && f < FOLD.length) FOLD[c] = FOLD[f];
+        }
+    }
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Fold {@code input} into a pooled buffer; close the result when done with it.
+     */
+    public static Result normalize(CharSequence input, Punctuation punctuation) {
+        Result out = borrow();
+        int len = input.length();
+        out.ensureCapacity(len);
+        out.length = 0;
+
+        int pendingSpace = -1; // Input index of a collapsed whitespace/separator run, not yet written
+
+        for (int i = 0; i < len; i++) {
+            char raw = ascii(input.charAt(i));
+            char c = foldChar(raw);
+
+            if (c == SKIP) {
+                if (out.length > 0) out.ends[out.length - 1] = i + 1;
+                continue;
+            }
+
+            if (raw < 128 && LEET[raw] != 0) {
+                boolean letterNext = i + 1 < len && isLetter(foldChar(ascii(input.charAt(i + 1))));
+                // Digits may also close a word ("a55"); symbols only count when a letter follows
+                boolean letterBefore = c != PUNCT && pendingSpace < 0
+                        && out.length > 0 && isLetter(out.chars[out.length - 1]);
+                if (letterNext || letterBefore) c = LEET[raw];
+            }
+
+            if (c == PUNCT || (c == '_' && punctuation == Punctuation.DROP)) {
+                if (punctuation == Punctuation.DROP) continue;
+                c = SPACE;
+            }
+
+            if (c == SPACE) {
+                // Collapse runs and trim the front
+                if (out.length > 0 && pendingSpace < 0) pendingSpace = i;
+                continue;
+            }
+
+            if (pendingSpace >= 0) {
+                out.append(SPACE, pendingSpace, pendingSpace + 1);
+                pendingSpace = -1;
+            }
+
+            out.append(c, i, i + 1);
+        }
+
+        // Trailing whitespace is never written
+        return out;
+    }
+
+    private static Result borrow() {
+        int start = slot();
+        for (int i = 0; i < PROBES; i++) {
+            int index = (start + i) % POOL.length();
+            Result pooled = POOL.get(index);
+            if (pooled != null && POOL.compareAndSet(index, pooled, null)) {
+                pooled.open = true;
+                return pooled;
+            }
+        }
+        Result fresh = new Result();
+        fresh.open = true;
+        return fresh;
+    }
+
+    private static void giveBack(Result result) {
+        int start = slot();
+        for (int i = 0; i < PROBES; i++) {
+            if (POOL.compareAndSet((start + i) % POOL.length(), null, result)) return;
+        }
+    }
+
+    // Threads start at different slots, so they rarely contend for one buffer
+    private static int slot() {
+        return Math.floorMod(Long.hashCode(Thread.currentThread().threadId()), POOL.length());
+    }
+
+    private static char foldChar(char c) {
+        if (c < FOLD.length) return FOLD[c];
+
+        // Zero-width chars used to split words
+        if (c == '\u200B' || c == '\u200C' || c == '\u200D' || c == '\u2060' || c == '\uFEFF') return SKIP;
+
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) return SPACE;
+        if (!Character.isLetterOrDigit(c)) return PUNCT;
+
+        char lower = Character.toLowerCase(c);
+        return lower < FOLD.length ? FOLD[lower] : lower;
+    }
+
+    // Fullwidth ASCII variants (U+FF01..U+FF5E), e.g. "ａｄｍｉｎ"
+    private static char ascii(char c) {
+        return c >= '\uFF01' && c <= '\uFF5E' ? (char) (c - 0xFEE0) : c;
+    }
+
+    private static boolean isLetter(char folded) {
+        return folded >= 'a' && folded <= 'z';
+    }
+}
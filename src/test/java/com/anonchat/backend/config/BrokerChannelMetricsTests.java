@@ -0,0 +1,72 @@
+package com.anonchat.backend.config;
+
+import com.anonchat.backend.service.PresenceService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class BrokerChannelMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ExecutorSubscribableChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        BrokerChannelMetrics metrics = new BrokerChannelMetrics(mock(OutboundBackpressure.class),
+                mock(PresenceService.class));
+        metrics.bindTo(registry);
+
+        channel = new ExecutorSubscribableChannel(executor);
+        channel.addInterceptor(metrics.inboundInterceptor());
+        // One thread, held by the first message until the test lets it go
+        channel.subscribe(message -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void queuedMessagesAreCountedUntilHandled() throws InterruptedException {
+        for (int i = 0; i < 3; i++) channel.send(MessageBuilder.withPayload("m" + i).build());
+        awaitGauge("anonchat.broker.active", 1);
+
+        assertThat(gauge("anonchat.broker.queue.depth")).isEqualTo(2);
+
+        release.countDown();
+        awaitGauge("anonchat.broker.active", 0);
+        assertThat(gauge("anonchat.broker.queue.depth")).isZero();
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("channel", "inbound").gauge().value();
+    }
+
+    private void awaitGauge(String name, double expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (gauge(name) != expected && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat(gauge(name)).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,164 @@
+package com.anonchat.backend.config;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.util.ChatMessageCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatMessageRedisSerializerTests {
+
+    private final RedisSerializer<Object> serializer = RedisConfig.valueSerializer(true);
+
+    @Test
+    void roundTripsMessagesInTheCompactFormat() {
+        ChatMessage message = message("Zoë", "héllo 👋 " + "x".repeat(300), ChatMessage.MessageType.CHAT);
+
+        byte[] bytes = serializer.serialize(message);
+
+        assertThat(ChatMessageCodec.isCompact(bytes)).isTrue();
+        assertThat(new String(bytes, StandardCharsets.ISO_8859_1)).doesNotContain("com.anonchat");
+        assertSameMessage(serializer.deserialize(bytes), message);
+    }
+
+    @Test
+    void keepsNullFields() {
+        ChatMessage message = message(null, null, null);
+
+        assertSameMessage(serializer.deserialize(serializer.serialize(message)), message);
+    }
+
+    @Test
+    void keepsTimestampAndSequence() {
+        ChatMessage message = message("Alice", "hi", ChatMessage.MessageType.CHAT);
+        message.setTimestamp(1718036000123L);
+        message.setSeq(171L);
+
+        ChatMessage decoded = (ChatMessage) serializer.deserialize(serializer.serialize(message));
+
+        assertThat(decoded.getTimestamp()).isEqualTo(1718036000123L);
+        assertThat(decoded.getSeq()).isEqualTo(171L);
+    }
+
+    @Test
+    void readsEntriesWrittenBeforeSequencesWereStored() {
+        byte[] current = serializer.serialize(message("Bob", "hello", ChatMessage.MessageType.CHAT));
+
+        // Version 2 is the same layout without the trailing sequence (null -> a single 0 byte)
+        byte[] version2 = Arrays.copyOf(current, current.length - 1);
+        version2[1] = ChatMessageCodec.VERSION_2;
+
+        ChatMessage decoded = (ChatMessage) serializer.deserialize(version2);
+        assertSameMessage(decoded, message("Bob", "hello", ChatMessage.MessageType.CHAT));
+        assertThat(decoded.getSeq()).isNull();
+    }
+
+    @Test
+    void writesTheConfiguredVersionForNodesNotYetUpgraded() {
+        ChatMessage message = message("System", "3 joined, 1 left", ChatMessage.MessageType.PRESENCE);
+        message.setTimestamp(1718036000123L);
+        message.setSeq(171L);
+
+        byte[] version3 = RedisConfig.valueSerializer(true, ChatMessageCodec.VERSION_3).serialize(message);
+        assertThat(version3[1]).isEqualTo(ChatMessageCodec.VERSION_3);
+        ChatMessage decoded = (ChatMessage) serializer.deserialize(version3);
+        // Readers before version 4 reject the PRESENCE code; the summary is kept without a type
+        assertThat(decoded.getType()).isNull();
+        assertThat(decoded.getContent()).isEqualTo("3 joined, 1 left");
+        assertThat(decoded.getSeq()).isEqualTo(171L);
+
+        byte[] version2 = RedisConfig.valueSerializer(true, ChatMessageCodec.VERSION_2).serialize(message);
+        decoded = (ChatMessage) serializer.deserialize(version2);
+        assertThat(version2[1]).isEqualTo(ChatMessageCodec.VERSION_2);
+        assertThat(decoded.getTimestamp()).isEqualTo(1718036000123L);
+        assertThat(decoded.getSeq()).isNull();
+
+        byte[] latest = serializer.serialize(message);
+        assertThat(latest[1]).isEqualTo(ChatMessageCodec.VERSION_4);
+        assertThat(((ChatMessage) serializer.deserialize(latest)).getType())
+                .isEqualTo(ChatMessage.MessageType.PRESENCE);
+    }
+
+    @Test
+    void rejectsAnUnknownWriteVersion() {
+        assertThatThrownBy(() -> RedisConfig.valueSerializer(true, 5)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RedisConfig.valueSerializer(true, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void isMuchSmallerThanTypedJson() {
+        ChatMessage message = message("Alice", "hey everyone, see you all at the next match tonight",
+                ChatMessage.MessageType.CHAT);
+
+        int json = RedisConfig.jsonSerializer().serialize(message).length;
+        int compact = serializer.serialize(message).length;
+
+        assertThat(compact).isLessThan(json / 2);
+    }
+
+    @Test
+    void readsHistoryWrittenAsTypedJson() {
+        ChatMessage message = message("Bob", "joined the room.", ChatMessage.MessageType.JOIN);
+        byte[] legacy = RedisConfig.jsonSerializer().serialize(message);
+
+        assertSameMessage(serializer.deserialize(legacy), message);
+    }
+
+    @Test
+    void otherValuesStayJson() {
+        byte[] token = serializer.serialize("3f1c2a");
+
+        assertThat(new String(token, StandardCharsets.UTF_8)).isEqualTo("\"3f1c2a\"");
+        assertThat(serializer.deserialize(token)).isEqualTo("3f1c2a");
+        assertThat(serializer.deserialize("42".getBytes(StandardCharsets.UTF_8))).isEqualTo(42);
+    }
+
+    @Test
+    void rollbackModeWritesJsonButStillReadsCompactEntries() {
+        RedisSerializer<Object> rollback = RedisConfig.valueSerializer(false);
+        ChatMessage message = message("Alice", "hi", ChatMessage.MessageType.CHAT);
+
+        assertThat(ChatMessageCodec.isCompact(rollback.serialize(message))).isFalse();
+        assertSameMessage(rollback.deserialize(serializer.serialize(message)), message);
+    }
+
+    @Test
+    void rejectsTruncatedAndUnknownVersions() {
+        byte[] bytes = serializer.serialize(message("Alice", "hello", ChatMessage.MessageType.CHAT));
+
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 2);
+        assertThatThrownBy(() -> serializer.deserialize(truncated)).isInstanceOf(SerializationException.class);
+
+        byte[] future = bytes.clone();
+        future[1] = 99;
+        assertThatThrownBy(() -> serializer.deserialize(future)).isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void convertsUntypedJsonMaps() {
+        ChatMessage converted = ChatMessageCodec.fromLegacy(Map.of("sender", "Eve", "content", "left the room.",
+                "type", "LEAVE"));
+
+        assertSameMessage(converted, message("Eve", "left the room.", ChatMessage.MessageType.LEAVE));
+        assertThat(ChatMessageCodec.fromLegacy(Map.of("unrelated", 1))).isNull();
+    }
+
+    private static ChatMessage message(String sender, String content, ChatMessage.MessageType type) {
+        return ChatMessage.builder().sender(sender).content(content).type(type).build();
+    }
+
+    private static void assertSameMessage(Object actual, ChatMessage expected) {
+        assertThat(actual).isInstanceOf(ChatMessage.class);
+        ChatMessage message = (ChatMessage) actual;
+        assertThat(message.getSender()).isEqualTo(expected.getSender());
+        assertThat(message.getContent()).isEqualTo(expected.getContent());
+        assertThat(message.getType()).isEqualTo(expected.getType());
+    }
+}
@@ -0,0 +1,98 @@
+package com.anonchat.backend.config;
+
+import com.anonchat.backend.config.OutboundBackpressure.OverflowPolicy;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class OutboundBackpressureTests {
+
+    // Drain tasks only run when the test says so: a client that isn't reading
+    private final List<Runnable> pending = new ArrayList<>();
+    private final List<String> written = new ArrayList<>();
+
+    @Test
+    void dropsTheOldestBroadcastsAndKeepsOtherFrames() throws Exception {
+        OutboundBackpressure backpressure = new OutboundBackpressure(10_000, 1024, OverflowPolicy.DROP_OLDEST, pending::add);
+        WebSocketSession session = connect(backpressure);
+
+        session.sendMessage(new TextMessage("RECEIPT\nreceipt-id:1\n\n\0"));
+        for (int i = 1; i <= 10; i++) session.sendMessage(broadcast("r1", i));
+        runPending();
+
+        assertThat(written.getFirst()).startsWith("RECEIPT");
+        assertThat(written.getLast()).contains("message-id:10\n");
+        assertThat(written).hasSizeLessThan(11);
+
+        Map<String, Object> stats = backpressure.stats();
+        assertThat((long) stats.get("dropped")).isEqualTo(11 - written.size());
+        assertThat(stats.get("rooms")).asString().contains("r1");
+    }
+
+    @Test
+    void coalescesTheBacklogIntoOneMessage() throws Exception {
+        OutboundBackpressure backpressure = new OutboundBackpressure(10_000, 64 * 1024, OverflowPolicy.COALESCE, pending::add);
+        WebSocketSession session = connect(backpressure);
+
+        for (int i = 1; i <= 3; i++) session.sendMessage(broadcast("r1", i));
+        runPending();
+
+        assertThat(written).hasSize(1);
+        assertThat(written.getFirst().split("\0")).hasSize(3);
+        assertThat(backpressure.stats().get("coalesced")).isEqualTo(2L);
+    }
+
+    @Test
+    void disconnectsWithAResumeHint() throws Exception {
+        OutboundBackpressure backpressure = new OutboundBackpressure(10_000, 1024, OverflowPolicy.DISCONNECT, pending::add);
+        WebSocketSession delegate = mock(WebSocketSession.class);
+        WebSocketSession session = connect(backpressure, delegate);
+
+        for (int i = 1; i <= 10; i++) session.sendMessage(broadcast("r1", i));
+        runPending();
+
+        verify(delegate).close(OutboundBackpressure.SLOW_CONSUMER);
+        assertThat(written).isEmpty();
+        assertThat(backpressure.stats().get("slowDisconnects")).isEqualTo(1L);
+    }
+
+    @Test
+    void readsTheRoomFromTheFrameHeaders() {
+        assertThat(OutboundBackpressure.roomOf(broadcast("a1b2", 1))).isEqualTo("a1b2");
+        assertThat(OutboundBackpressure.roomOf(new TextMessage("MESSAGE\n\n\ndestination:/topic/x\n\0"))).isNull();
+    }
+
+    private WebSocketSession connect(OutboundBackpressure backpressure) throws Exception {
+        return connect(backpressure, mock(WebSocketSession.class));
+    }
+
+    private WebSocketSession connect(OutboundBackpressure backpressure, WebSocketSession delegate) throws Exception {
+        when(delegate.getId()).thenReturn("s1");
+        when(delegate.isOpen()).thenReturn(true);
+        doAnswer(call -> written.add(((WebSocketMessage<?>) call.getArgument(0)).getPayload().toString()))
+                .when(delegate).sendMessage(any());
+
+        WebSocketHandler handler = mock(WebSocketHandler.class);
+        backpressure.decorate(handler).afterConnectionEstablished(delegate);
+        return backpressure.session("s1");
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) pending.removeFirst().run();
+    }
+
+    private static TextMessage broadcast(String roomId, int id) {
+        return new TextMessage("MESSAGE\ndestination:/topic/" + roomId + "\nsubscription:sub-0\nmessage-id:" + id
+                + "\ncontent-type:application/json\n\n{\"content\":\"" + "x".repeat(200) + "\"}\0");
+    }
+}
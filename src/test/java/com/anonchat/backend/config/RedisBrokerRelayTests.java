@@ -0,0 +1,206 @@
+package com.anonchat.backend.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Three relay nodes wired to an in-memory stand-in for Redis pub/sub.
+ */
+class RedisBrokerRelayTests {
+
+    private FakePubSub redis;
+    private Node nodeA;
+    private Node nodeB;
+    private Node nodeC;
+
+    @BeforeEach
+    void setUp() {
+        redis = new FakePubSub();
+        nodeA = new Node(redis);
+        nodeB = new Node(redis);
+        nodeC = new Node(redis);
+    }
+
+    @Test
+    void broadcastReachesOnlyNodesWithSubscribers() {
+        nodeB.subscribe("s1", "sub-0", "room1");
+        nodeB.subscribe("s2", "sub-0", "room1");
+
+        nodeA.broadcast("room1", "hello");
+
+        assertThat(redis.published).hasSize(1);
+        assertThat(nodeB.delivered).hasSize(1);
+        assertThat(new String((byte[]) nodeB.delivered.get(0).getPayload(), StandardCharsets.UTF_8)).isEqualTo("hello");
+        assertThat(nodeA.delivered).isEmpty();
+        assertThat(nodeC.delivered).isEmpty();
+    }
+
+    @Test
+    void publishesOncePerBroadcastRegardlessOfLocalSessions() {
+        for (int i = 0; i < 50; i++) nodeA.subscribe("s" + i, "sub-0", "room1");
+        nodeB.subscribe("x", "sub-0", "room1");
+
+        nodeA.broadcast("room1", "hi");
+
+        assertThat(redis.published).hasSize(1);
+        assertThat(nodeA.delivered).isEmpty(); // Own broadcast is not echoed back
+        assertThat(nodeB.delivered).hasSize(1);
+    }
+
+    @Test
+    void relayedMessagesAreNotRepublished() {
+        nodeB.subscribe("s1", "sub-0", "room1");
+        nodeA.broadcast("room1", "once");
+
+        // Node B's broker channel would run the interceptor again on the injected message
+        nodeB.relay.preSend(nodeB.delivered.get(0), mock(MessageChannel.class));
+
+        assertThat(redis.published).hasSize(1);
+    }
+
+    @Test
+    void nodeStopsListeningWhenLastLocalSubscriberLeaves() {
+        nodeB.subscribe("s1", "sub-0", "room1");
+        assertThat(redis.listenerCount("room1")).isEqualTo(1);
+
+        nodeB.disconnect("s1");
+        assertThat(nodeB.relay.localSubscriberCount("room1")).isZero();
+        assertThat(redis.listenerCount("room1")).isZero();
+
+        nodeA.broadcast("room1", "nobody home");
+        assertThat(nodeB.delivered).isEmpty();
+    }
+
+    @Test
+    void concurrentJoinsAndLeavesSettleOnTheLastState() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String sessionId = "s" + t;
+                runs.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        nodeB.subscribe(sessionId, "sub-0", "room1");
+                        nodeB.disconnect(sessionId);
+                    }
+                }));
+            }
+            for (Future<?> run : runs) run.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(nodeB.relay.localSubscriberCount("room1")).isZero();
+        assertThat(redis.listenerCount("room1")).isZero();
+
+        nodeB.subscribe("late", "sub-0", "room1");
+        assertThat(redis.listenerCount("room1")).isEqualTo(1);
+    }
+
+    /**
+     * Minimal pub/sub: channel -> listeners, synchronous delivery.
+     */
+    static class FakePubSub {
+        final Map<String, List<MessageListener>> channels = new HashMap<>();
+        final List<byte[]> published = new CopyOnWriteArrayList<>();
+
+        void publish(byte[] channel, byte[] body) {
+            published.add(body);
+            String name = new String(channel, StandardCharsets.UTF_8);
+            for (MessageListener listener : List.copyOf(channels.getOrDefault(name, List.of()))) {
+                listener.onMessage(new DefaultMessage(channel, body), null);
+            }
+        }
+
+        int listenerCount(String roomId) {
+            return channels.getOrDefault(RedisBrokerRelay.CHANNEL_PREFIX + roomId, List.of()).size();
+        }
+    }
+
+    static class Node {
+        final List<Message<?>> delivered = new ArrayList<>();
+        final RedisBrokerRelay relay;
+
+        @SuppressWarnings("unchecked")
+        Node(FakePubSub redis) {
+            RedisConnection connection = mock(RedisConnection.class);
+            when(connection.publish(any(byte[].class), any(byte[].class))).thenAnswer(inv -> {
+                redis.publish(inv.getArgument(0), inv.getArgument(1));
+                return 1L;
+            });
+
+            RedisTemplate<String, Object> template = mock(RedisTemplate.class);
+            when(template.execute(any(RedisCallback.class)))
+                    .thenAnswer(inv -> ((RedisCallback<?>) inv.getArgument(0)).doInRedis(connection));
+
+            RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+            doAnswer(inv -> {
+                ChannelTopic topic = inv.getArgument(1);
+                redis.channels.computeIfAbsent(topic.getTopic(), t -> new ArrayList<>()).add(inv.getArgument(0));
+                return null;
+            }).when(container).addMessageListener(any(MessageListener.class), any(ChannelTopic.class));
+            doAnswer(inv -> {
+                ChannelTopic topic = inv.getArgument(1);
+                redis.channels.getOrDefault(topic.getTopic(), new ArrayList<>()).remove(inv.<MessageListener>getArgument(0));
+                return null;
+            }).when(container).removeMessageListener(any(MessageListener.class), any(ChannelTopic.class));
+
+            MessageChannel brokerChannel = (message, timeout) -> delivered.add(message);
+            relay = new RedisBrokerRelay(template, container, brokerChannel);
+        }
+
+        void broadcast(String roomId, String payload) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setDestination("/topic/" + roomId);
+            Message<byte[]> message = MessageBuilder.createMessage(
+                    payload.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+            relay.preSend(message, mock(MessageChannel.class));
+        }
+
+        void subscribe(String sessionId, String subscriptionId, String roomId) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+            accessor.setSessionId(sessionId);
+            accessor.setSubscriptionId(subscriptionId);
+            accessor.setDestination("/topic/" + roomId);
+            relay.handleSubscribe(new SessionSubscribeEvent(this,
+                    MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+        }
+
+        void disconnect(String sessionId) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+            accessor.setSessionId(sessionId);
+            relay.handleDisconnect(new SessionDisconnectEvent(this,
+                    MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), sessionId, CloseStatus.NORMAL));
+        }
+    }
+}
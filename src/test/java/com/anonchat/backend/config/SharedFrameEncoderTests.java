@@ -0,0 +1,116 @@
+package com.anonchat.backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedFrameEncoderTests {
+
+    private final SharedFrameEncoder encoder = new SharedFrameEncoder();
+
+    @Test
+    void encodesABroadcastOnceForSubscribersWithTheSameSubscriptionId() {
+        byte[] payload = "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] first = encoder.encode(headers("sub-0", "m-1"), payload);
+        byte[] second = encoder.encode(headers("sub-0", "m-1"), payload);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first).isEqualTo(new StompEncoder().encode(headers("sub-0", "m-1"), payload));
+        assertThat(encoder.hits()).isEqualTo(1);
+    }
+
+    @Test
+    void encodesDifferentSubscriptionIdsSeparately() {
+        byte[] payload = "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] first = encoder.encode(headers("sub-0", "m-1"), payload);
+        byte[] other = encoder.encode(headers("sub-7", "m-1"), payload);
+
+        Message<byte[]> decoded = new StompDecoder().decode(ByteBuffer.wrap(other)).getFirst();
+        assertThat(other).isNotEqualTo(first);
+        assertThat(StompHeaderAccessor.wrap(decoded).getSubscriptionId()).isEqualTo("sub-7");
+        assertThat(encoder.hits()).isZero();
+    }
+
+    @Test
+    void doesNotShareFramesAcrossBroadcastsWithEqualPayloads() {
+        byte[] first = encoder.encode(headers("sub-0", "m-1"), "same".getBytes(StandardCharsets.UTF_8));
+        byte[] second = encoder.encode(headers("sub-0", "m-2"), "same".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(new String(second, StandardCharsets.UTF_8)).contains("message-id:m-2");
+        assertThat(second).isNotSameAs(first);
+    }
+
+    @Test
+    void subscribersOnManyThreadsGetTheSameFrame() throws Exception {
+        byte[] payload = "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = new StompEncoder().encode(headers("sub-0", "m-1"), payload);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> frames = new ArrayList<>();
+            for (int i = 0; i < 500; i++) frames.add(pool.submit(() -> encoder.encode(headers("sub-0", "m-1"), payload)));
+            for (Future<byte[]> frame : frames) assertThat(frame.get()).isEqualTo(expected);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(encoder.hits() + encoder.misses()).isEqualTo(500);
+        assertThat(encoder.hits()).isPositive();
+    }
+
+    @Test
+    void manyBroadcastsStayCorrectOnceSlotsAreReused() {
+        for (int i = 0; i < 5000; i++) {
+            byte[] payload = ("{\"seq\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+            byte[] frame = encoder.encode(headers("sub-0", "m-" + i), payload);
+            assertThat(new String(frame, StandardCharsets.UTF_8))
+                    .contains("message-id:m-" + i)
+                    .endsWith("{\"seq\":" + i + "}\0");
+        }
+    }
+
+    @Test
+    void givesEachBroadcastOneMessageId() {
+        SharedFrameEncoder.MessageIds messageIds = new SharedFrameEncoder.MessageIds();
+
+        Message<?> first = messageIds.preSend(broadcast(), null);
+        Message<?> second = messageIds.preSend(broadcast(), null);
+
+        String firstId = SimpMessageHeaderAccessor.wrap(first).getFirstNativeHeader("message-id");
+        String secondId = SimpMessageHeaderAccessor.wrap(second).getFirstNativeHeader("message-id");
+        assertThat(firstId).isNotNull().isNotEqualTo(secondId);
+        assertThat(messageIds.preSend(first, null)).isSameAs(first);
+    }
+
+    private static Map<String, Object> headers(String subscriptionId, String messageId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/topic/room1");
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setNativeHeader("message-id", messageId);
+        return accessor.getMessageHeaders();
+    }
+
+    private static Message<byte[]> broadcast() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/topic/room1");
+        return MessageBuilder.createMessage(new byte[]{1}, accessor.getMessageHeaders());
+    }
+}
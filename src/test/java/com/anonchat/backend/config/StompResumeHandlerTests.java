@@ -0,0 +1,299 @@
+package com.anonchat.backend.config;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import com.anonchat.backend.service.ChatService;
+import com.anonchat.backend.service.HistoryStore;
+import com.anonchat.backend.service.SequenceLeases;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StompResumeHandlerTests {
+
+    private static final String SESSION = "s1";
+    private static final String SUBSCRIPTION = "sub-0";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatService chatService = mock(ChatService.class);
+    private final List<Message<?>> sent = new CopyOnWriteArrayList<>();
+
+    // What the broker's outbound channel does: deliver, then let the ordered decorator send the next frame
+    private final MessageChannel clientOutboundChannel = (message, timeout) -> {
+        sent.add(message);
+        Runnable next = OrderedMessageChannelDecorator.getNextMessageTask(message);
+        if (next != null) next.run();
+        return true;
+    };
+
+    private final MessageConverter converter = new MessageConverter() {
+        @Override
+        public Object fromMessage(Message<?> message, Class<?> targetClass) {
+            return null;
+        }
+
+        @Override
+        public Message<?> toMessage(Object payload, MessageHeaders headers) {
+            try {
+                return MessageBuilder.createMessage(objectMapper.writeValueAsBytes(payload), headers);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    // Released by the test: the replay is reading history until then
+    private final CountDownLatch historyRead = new CountDownLatch(1);
+
+    private StompResumeHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        handler = new StompResumeHandler(chatService, clientOutboundChannel, converter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        handler.shutdown();
+    }
+
+    @Test
+    void liveFramesAreHeldUntilTheReplayIsSent() throws Exception {
+        historyHas(5, page(true, 4, 5));
+        subscribe(3);
+
+        assertThat(live(6)).isNull();
+        assertThat(sent).isEmpty();
+
+        historyRead.countDown();
+        assertThat(seqs(awaitSent(3))).containsExactly(4L, 5L, 6L);
+        assertThat(nativeHeader(sent.get(0), StompResumeHandler.RESUMED_HEADER)).isEqualTo("true");
+        assertThat(nativeHeader(sent.get(2), StompResumeHandler.RESUMED_HEADER)).isNull();
+
+        // Released: live frames now pass straight through, still behind the replay
+        assertThat(live(7)).isNull();
+        assertThat(seqs(awaitSent(4))).endsWith(7L);
+    }
+
+    @Test
+    void liveFramesAlreadyReplayedAreDropped() throws Exception {
+        historyHas(6, page(true, 4, 6));
+        subscribe(3);
+
+        // Broadcast while the replay was reading: 5 and 6 come in the replay too
+        live(5);
+        live(6);
+        live(7);
+        historyRead.countDown();
+
+        assertThat(seqs(awaitSent(4))).containsExactly(4L, 5L, 6L, 7L);
+        live(6);
+        assertThat(seqs(awaitSent(4))).containsExactly(4L, 5L, 6L, 7L);
+    }
+
+    @Test
+    void tooManyHeldFramesEndInAResync() throws Exception {
+        historyHas(5, page(true, 4, 5));
+        subscribe(3);
+
+        for (int i = 0; i <= StompResumeHandler.MAX_HELD; i++) live(6 + i);
+        historyRead.countDown();
+
+        List<Message<?>> frames = awaitSent(2 + 1 + StompResumeHandler.MAX_HELD);
+        assertThat(seqs(frames.subList(0, 2))).containsExactly(4L, 5L);
+        assertThat(nativeHeader(frames.get(2), StompResumeHandler.RESYNC_HEADER)).isEqualTo("true");
+        assertThat(seqs(frames.subList(3, frames.size()))).startsWith(6L).hasSize(StompResumeHandler.MAX_HELD);
+    }
+
+    @Test
+    void resumeAheadOfTheRoomResyncs() throws Exception {
+        // The room was deleted and started over: the client saw 10, the counter is at 5
+        historyHas(5, page(true, 4, 5));
+        historyRead.countDown();
+        subscribe(10);
+
+        Message<?> resync = awaitSent(1).getFirst();
+        assertThat(nativeHeader(resync, StompResumeHandler.RESYNC_HEADER)).isEqualTo("true");
+        assertThat(objectMapper.readTree((byte[]) resync.getPayload()).get("latestSeq").asLong()).isEqualTo(5);
+        verify(chatService, never()).getHistoryPage(anyString(), anyInt(), any(), any());
+
+        // Nothing was replayed, so nothing live is taken for a duplicate
+        live(3);
+        assertThat(seqs(awaitSent(2).subList(1, 2))).containsExactly(3L);
+    }
+
+    @Test
+    void trimmedGapResyncs() throws Exception {
+        // Nothing at or before 3 is retained and the oldest kept is 8: 4..7 may have been trimmed
+        historyHas(9, page(false, 8, 9));
+        historyRead.countDown();
+        subscribe(3);
+
+        assertThat(nativeHeader(awaitSent(1).getFirst(), StompResumeHandler.RESYNC_HEADER)).isEqualTo("true");
+    }
+
+    @Test
+    void interleavedBlocksOfTwoNodesAreNeitherLostNorRepeated() throws Exception {
+        // Two nodes leasing blocks from one room counter: A numbers 1, 3, 4 and B numbers 2, 5, 6
+        AtomicLong counter = new AtomicLong();
+        HistoryStore store = mock(HistoryStore.class);
+        when(store.allocateSequences(eq("r1"), anyInt()))
+                .thenAnswer(call -> counter.addAndGet(call.getArgument(1, Integer.class)));
+        SequenceLeases nodeA = new SequenceLeases(store, 64, 60_000, "simple");
+        SequenceLeases nodeB = new SequenceLeases(store, 64, 60_000, "simple");
+        List<Long> numberedByA = new ArrayList<>();
+        List<Long> numberedByB = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            numberedByA.add(take(nodeA));
+            numberedByB.add(take(nodeB));
+        }
+        assertThat(numberedByA).containsExactly(1L, 3L, 4L);
+        assertThat(numberedByB).containsExactly(2L, 5L, 6L);
+
+        // The client saw 1. Everything but A's 4 is stored; 4 is still in A's write-behind buffer
+        storedHistory(6, List.of(2L, 3L, 5L, 6L));
+        historyRead.countDown();
+        subscribe(1);
+        awaitSent(4);
+
+        // A's 4 arrives live below the newest replayed number, and B's 6 again from a racing broadcast
+        live(4);
+        live(6);
+
+        assertThat(seqs(awaitSent(5))).containsExactly(2L, 3L, 5L, 6L, 4L);
+    }
+
+    @Test
+    void consecutiveNumbersWaitForWhatAnotherNodeHasNotStoredYet() throws Exception {
+        when(chatService.hasConsecutiveSequences()).thenReturn(true);
+        List<Long> stored = new CopyOnWriteArrayList<>(List.of(2L, 3L, 5L));
+        storedHistory(5, stored);
+        historyRead.countDown();
+
+        subscribe(1);
+        // 4 was broadcast while the client was away; its node writes it a moment later
+        Thread.sleep(150);
+        stored.add(2, 4L);
+
+        assertThat(seqs(awaitSent(4))).containsExactly(2L, 3L, 4L, 5L);
+    }
+
+    private static long take(SequenceLeases leases) {
+        while (true) {
+            leases.ensure("r1");
+            long seq = leases.next("r1");
+            if (seq > 0) return seq;
+        }
+    }
+
+    // Pages cut from the sequences stored so far, read at the time of each request
+    private void storedHistory(long latest, List<Long> stored) {
+        when(chatService.getLatestSequence("r1")).thenReturn(latest);
+        when(chatService.getHistoryPage(eq("r1"), anyInt(), isNull(), anyLong())).thenAnswer(call -> {
+            long after = call.getArgument(3, Long.class);
+            List<Long> seqs = stored.stream().filter(seq -> seq > after).sorted().toList();
+            return seqs.isEmpty() ? emptyPage(latest) : page(false, seqs, latest);
+        });
+    }
+
+    private void historyHas(long latest, HistoryPage page) {
+        when(chatService.getLatestSequence("r1")).thenReturn(latest);
+        when(chatService.getHistoryPage(eq("r1"), anyInt(), isNull(), anyLong())).thenAnswer(call -> {
+            historyRead.await(5, TimeUnit.SECONDS);
+            return call.getArgument(3, Long.class) < page.getLastSeq() ? page : emptyPage(latest);
+        });
+    }
+
+    private void subscribe(long resumeFrom) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId(SESSION);
+        accessor.setSubscriptionId(SUBSCRIPTION);
+        accessor.setDestination("/topic/r1");
+        accessor.setNativeHeader(StompResumeHandler.RESUME_FROM_HEADER, String.valueOf(resumeFrom));
+        Message<byte[]> subscribe = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        ExecutorChannelInterceptor inbound = (ExecutorChannelInterceptor) handler.inboundInterceptor();
+        inbound.preSend(subscribe, mock(MessageChannel.class));
+        inbound.afterMessageHandled(subscribe, mock(MessageChannel.class), mock(SimpleBrokerMessageHandler.class), null);
+    }
+
+    // A broadcast on its way to the session; null means the handler held or rerouted it
+    private Message<?> live(long seq) throws Exception {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESSION);
+        accessor.setSubscriptionId(SUBSCRIPTION);
+        accessor.setDestination("/topic/r1");
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(
+                objectMapper.writeValueAsBytes(message(seq)), accessor.getMessageHeaders());
+        return handler.outboundInterceptor().preSend(message, clientOutboundChannel);
+    }
+
+    private List<Message<?>> awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        // Give anything beyond the expected frames a moment to show up
+        Thread.sleep(50);
+        assertThat(sent).hasSize(count);
+        return new ArrayList<>(sent);
+    }
+
+    private List<Long> seqs(List<Message<?>> frames) throws Exception {
+        List<Long> seqs = new ArrayList<>();
+        for (Message<?> frame : frames) seqs.add(objectMapper.readTree((byte[]) frame.getPayload()).get("seq").asLong());
+        return seqs;
+    }
+
+    private static String nativeHeader(Message<?> frame, String name) {
+        return SimpMessageHeaderAccessor.wrap(frame).getFirstNativeHeader(name);
+    }
+
+    private static HistoryPage page(boolean hasMore, long from, long to) {
+        List<Object> messages = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) messages.add(message(seq));
+        return new HistoryPage(messages, from, to, to, hasMore);
+    }
+
+    private static HistoryPage page(boolean hasMore, List<Long> seqs, long latest) {
+        List<Object> messages = new ArrayList<>();
+        for (long seq : seqs) messages.add(message(seq));
+        return new HistoryPage(messages, seqs.getFirst(), seqs.getLast(), latest, hasMore);
+    }
+
+    private static HistoryPage emptyPage(long latest) {
+        return new HistoryPage(List.of(), 0, 0, latest, false);
+    }
+
+    private static ChatMessage message(long seq) {
+        return ChatMessage.builder()
+                .type(ChatMessage.MessageType.CHAT)
+                .sender("user")
+                .content("message " + seq)
+                .seq(seq)
+                .build();
+    }
+}
@@ -0,0 +1,119 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the real lease script on a real Redis (in a container; skipped without Docker), and checks that the Java
+ * twin ClusterRateLimiterTests plays it against gives the same answers.
+ */
+class ClusterRateLimiterScriptTests {
+
+    private static final String IP = "203.0.113.7";
+    private static final String KEY = ClusterRateLimiter.KEY_PREFIX + IP;
+    private static final long INTERVAL_MS = TimeUnit.NANOSECONDS.toMillis(RateLimitService.EMISSION_INTERVAL_NANOS);
+
+    private static GenericContainer<?> redis;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate template;
+
+    @BeforeAll
+    static void startRedis() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Needs Docker for a real Redis");
+
+        redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (connectionFactory != null) connectionFactory.destroy();
+        if (redis != null) redis.stop();
+    }
+
+    @BeforeEach
+    void clearBucket() {
+        template.delete(KEY);
+    }
+
+    @Test
+    void leasesUpToCapacityThenReportsTheWait() {
+        assertThat(lease(2)).isEqualTo(2);
+        assertThat(lease(10)).isEqualTo(RateLimitService.CAPACITY - 2);
+
+        long reply = lease(1);
+        assertThat(reply).isNegative();
+        assertThat(-reply).isBetween(INTERVAL_MS - 100, INTERVAL_MS);
+        // The bucket lives exactly as long as it has debt
+        assertThat(template.getExpire(KEY, TimeUnit.MILLISECONDS))
+                .isBetween(RateLimitService.CAPACITY * INTERVAL_MS - 100, RateLimitService.CAPACITY * INTERVAL_MS);
+    }
+
+    @Test
+    void returnedTokensCanBeLeasedAgain() {
+        lease(RateLimitService.CAPACITY);
+
+        assertThat(lease(-2)).isZero();
+        assertThat(lease(5)).isEqualTo(2);
+
+        // Giving everything back empties the bucket, and the key with it
+        assertThat(lease(-RateLimitService.CAPACITY)).isZero();
+        assertThat(template.hasKey(KEY)).isFalse();
+    }
+
+    @Test
+    void twinGivesTheSameAnswers() {
+        ClusterRateLimiterTests.FakeRedis twin = new ClusterRateLimiterTests.FakeRedis();
+        List<Integer> steps = List.of(2, 1, -1, 3, 1, -2, 2, 4, 1);
+
+        for (int n : steps) {
+            long real = lease(n);
+            long expected = twin.eval(KEY, INTERVAL_MS, RateLimitService.CAPACITY, n);
+            if (expected >= 0) {
+                assertThat(real).as("lease(%d)", n).isEqualTo(expected);
+            } else {
+                // A wait in ms: the two clocks tick apart by the time between the calls
+                assertThat(real).as("lease(%d)", n).isNegative().isCloseTo(expected, within(100L));
+            }
+        }
+    }
+
+    @Test
+    void limiterSpendsOneBudgetThroughTheScript() {
+        ClusterRateLimiter limiter = new ClusterRateLimiter(template, 2, 60_000, 0, 1000);
+        try {
+            int allowed = 0;
+            for (int i = 0; i < 20; i++) {
+                if (limiter.tryAcquire(IP) == ClusterRateLimiter.Decision.ALLOW) allowed++;
+            }
+            assertThat(allowed).isBetween(RateLimitService.CAPACITY - 1, RateLimitService.CAPACITY + 1);
+        } finally {
+            limiter.shutdown();
+        }
+    }
+
+    private long lease(int n) {
+        Long reply = template.execute(ClusterRateLimiter.LEASE_SCRIPT, List.of(KEY),
+                String.valueOf(INTERVAL_MS), String.valueOf(RateLimitService.CAPACITY), String.valueOf(n));
+        assertThat(reply).isNotNull();
+        return reply;
+    }
+}
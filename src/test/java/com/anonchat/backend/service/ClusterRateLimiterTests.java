@@ -0,0 +1,303 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Several application contexts ("nodes") sharing one rate limit bucket. The lease script runs on a real Redis in a
+ * container when Docker is available; without it, on its Java twin (FakeRedis), which ClusterRateLimiterScriptTests
+ * checks against the script.
+ * <p>
+ * Tolerance: tokens are debited in Redis before a node spends them, so the cluster may allow at most
+ * one extra token per 2s refill that happens while a test runs. It may fall short of the budget by
+ * the tokens still parked in other nodes' leases: at most (nodes - 1) * (lease-size - 1).
+ */
+class ClusterRateLimiterTests {
+
+    private static final int NODES = 3;
+    private static final int LEASE_SIZE = 2;
+    private static final String IP = "203.0.113.7";
+
+    private static GenericContainer<?> container;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate realRedis;
+
+    private final List<AnnotationConfigApplicationContext> contexts = new ArrayList<>();
+
+    @BeforeAll
+    static void startRedis() {
+        if (!DockerClientFactory.instance().isDockerAvailable()) return;
+
+        container = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+        container.start();
+        connectionFactory = new LettuceConnectionFactory(container.getHost(), container.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        realRedis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (connectionFactory != null) connectionFactory.destroy();
+        if (container != null) container.stop();
+    }
+
+    @AfterEach
+    void tearDown() {
+        contexts.forEach(AnnotationConfigApplicationContext::close);
+    }
+
+    private static SharedRedis sharedRedis() {
+        return realRedis != null ? new RealRedis(realRedis) : new FakeRedis();
+    }
+
+    @Test
+    void localModeGivesEveryNodeItsOwnBudget() {
+        List<RateLimitService> nodes = startNodes("local", sharedRedis());
+
+        assertThat(roundRobin(nodes, 30)).isEqualTo(NODES * RateLimitService.CAPACITY);
+    }
+
+    @Test
+    void clusterModeEnforcesOneBudgetAcrossNodes() {
+        long started = System.nanoTime();
+        List<RateLimitService> nodes = startNodes("cluster", sharedRedis());
+
+        int allowed = roundRobin(nodes, 30);
+
+        assertThat(allowed).isBetween(
+                RateLimitService.CAPACITY - (NODES - 1) * (LEASE_SIZE - 1),
+                RateLimitService.CAPACITY + refillsSince(started));
+    }
+
+    @Test
+    void clusterBudgetHoldsUnderConcurrentLoad() throws Exception {
+        long started = System.nanoTime();
+        List<RateLimitService> nodes = startNodes("cluster", sharedRedis());
+        AtomicInteger allowed = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(NODES * 4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < NODES * 4; t++) {
+                RateLimitService node = nodes.get(t % NODES);
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        if (node.allowRequest(IP)) allowed.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) future.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(allowed.get()).isBetween(1, RateLimitService.CAPACITY + refillsSince(started));
+    }
+
+    @Test
+    void rejectionsAreAnsweredLocallyOnceTheBucketIsEmpty() throws Exception {
+        SharedRedis redis = sharedRedis();
+        RateLimitService node = startNodes("cluster", redis).get(0);
+
+        // Drain the shared bucket, including anything a background prefetch picked up meanwhile
+        drain(node);
+        Thread.sleep(50);
+        drain(node);
+        int callsBefore = redis.calls.get();
+
+        for (int i = 0; i < 100; i++) assertThat(node.allowRequest(IP)).isFalse();
+
+        assertThat(redis.calls.get()).isEqualTo(callsBefore);
+    }
+
+    @Test
+    void idleLeasesAreHandedBackToTheCluster() {
+        SharedRedis redis = sharedRedis();
+        RateLimitService node = startNodes("cluster", redis).get(0);
+        ClusterRateLimiter clusterRateLimiter = contexts.get(0).getBean(ClusterRateLimiter.class);
+
+        // The node leases a block but only spends one token of it
+        assertThat(node.allowRequest(IP)).isTrue();
+        assertThat(redis.available(IP)).isEqualTo(RateLimitService.CAPACITY - LEASE_SIZE);
+
+        clusterRateLimiter.reconcile();
+
+        assertThat(redis.available(IP)).isEqualTo(RateLimitService.CAPACITY - 1);
+        assertThat(clusterRateLimiter.stats().get("returnedTokens")).isEqualTo((long) LEASE_SIZE - 1);
+    }
+
+    @Test
+    void fallsBackToThePerNodeLimiterWhenRedisIsDown() {
+        SharedRedis redis = sharedRedis();
+        redis.down = true;
+        RateLimitService node = startNodes("cluster", redis).get(0);
+
+        int allowed = 0;
+        for (int i = 0; i < 20; i++) if (node.allowRequest(IP)) allowed++;
+
+        assertThat(allowed).isEqualTo(RateLimitService.CAPACITY);
+    }
+
+    private static int roundRobin(List<RateLimitService> nodes, int requests) {
+        int allowed = 0;
+        for (int i = 0; i < requests; i++) {
+            if (nodes.get(i % nodes.size()).allowRequest(IP)) allowed++;
+        }
+        return allowed;
+    }
+
+    private static void drain(RateLimitService node) {
+        for (int i = 0; i < 100 && node.allowRequest(IP); i++) {
+            // Spend until the first rejection
+        }
+    }
+
+    // Tokens the shared bucket regained since the test started
+    private static int refillsSince(long startedNanos) {
+        return (int) ((System.nanoTime() - startedNanos) / RateLimitService.EMISSION_INTERVAL_NANOS) + 1;
+    }
+
+    private List<RateLimitService> startNodes(String mode, SharedRedis redis) {
+        List<RateLimitService> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                    "anonchat.rate-limit.mode", mode,
+                    "anonchat.rate-limit.lease-size", String.valueOf(LEASE_SIZE),
+                    "anonchat.rate-limit.lease-idle-ms", "0",
+                    "anonchat.rate-limit.reconcile-interval-ms", "0",
+                    "anonchat.rate-limit.sweep-interval-ms", "0")));
+            // Typed, so it is injected where a RedisTemplate<String, String> is asked for
+            RootBeanDefinition template = new RootBeanDefinition(RedisTemplate.class, redis::template);
+            template.setTargetType(ResolvableType.forClassWithGenerics(RedisTemplate.class, String.class, String.class));
+            context.registerBeanDefinition("redisTemplate", template);
+            context.register(RateLimitService.class, ClusterRateLimiter.class);
+            context.refresh();
+
+            contexts.add(context);
+            nodes.add(context.getBean(RateLimitService.class));
+        }
+        return nodes;
+    }
+
+    /** The bucket the nodes share, counting script calls; {@code down} makes every call fail */
+    abstract static class SharedRedis {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean down;
+
+        abstract RedisTemplate<String, String> template();
+
+        /** Tokens left in the bucket of {@code ip} */
+        abstract long available(String ip);
+
+        static long available(long tat, long now) {
+            long interval = RateLimitService.EMISSION_INTERVAL_NANOS / 1_000_000;
+            return RateLimitService.CAPACITY - (Math.max(tat, now) - now + interval - 1) / interval;
+        }
+    }
+
+    /** The real script on the Redis in the container; every node's template is a spy that counts calls */
+    static final class RealRedis extends SharedRedis {
+        private final StringRedisTemplate redis;
+
+        RealRedis(StringRedisTemplate redis) {
+            this.redis = redis;
+            redis.delete(ClusterRateLimiter.KEY_PREFIX + IP);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, String> template() {
+            StringRedisTemplate template = spy(redis);
+            doAnswer(inv -> {
+                calls.incrementAndGet();
+                if (down) throw new RedisConnectionFailureException("Connection refused");
+                return inv.callRealMethod();
+            }).when(template).execute(any(RedisScript.class), anyList(), any(), any(), any());
+            return template;
+        }
+
+        @Override
+        long available(String ip) {
+            Long now = redis.execute((RedisCallback<Long>) connection ->
+                    connection.serverCommands().time(TimeUnit.MILLISECONDS));
+            String tat = redis.opsForValue().get(ClusterRateLimiter.KEY_PREFIX + ip);
+            return available(tat != null ? (long) Double.parseDouble(tat) : now, now);
+        }
+    }
+
+    /**
+     * Java twin of ClusterRateLimiter's lease script, on the local clock. ClusterRateLimiterScriptTests checks it
+     * against the real script.
+     */
+    static class FakeRedis extends SharedRedis {
+        private final Map<String, Long> arrivals = new HashMap<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, String> template() {
+            RedisTemplate<String, String> template = mock(RedisTemplate.class);
+            when(template.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenAnswer(inv -> {
+                if (down) throw new RedisConnectionFailureException("Connection refused");
+                List<String> keys = inv.getArgument(1);
+                return eval(keys.get(0),
+                        Long.parseLong(inv.getArgument(2)),
+                        Long.parseLong(inv.getArgument(3)),
+                        Long.parseLong(inv.getArgument(4)));
+            });
+            return template;
+        }
+
+        @Override
+        synchronized long available(String ip) {
+            long now = System.currentTimeMillis();
+            return available(arrivals.getOrDefault(ClusterRateLimiter.KEY_PREFIX + ip, now), now);
+        }
+
+        synchronized long eval(String key, long interval, long capacity, long n) {
+            calls.incrementAndGet();
+            long now = System.currentTimeMillis();
+            long tat = Math.max(arrivals.getOrDefault(key, now), now);
+
+            if (n < 0) {
+                arrivals.put(key, Math.max(now, tat + n * interval));
+                return 0;
+            }
+
+            long available = capacity - (tat - now + interval - 1) / interval;
+            if (available <= 0) return -(tat - now - (capacity - 1) * interval);
+
+            long granted = Math.min(n, available);
+            arrivals.put(key, tat + granted * interval);
+            return granted;
+        }
+    }
+}
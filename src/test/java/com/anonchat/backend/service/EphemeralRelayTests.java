@@ -0,0 +1,94 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class EphemeralRelayTests {
+
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+    private final List<ChatMessage> broadcasts = new ArrayList<>();
+
+    // Intervals long enough that only the test ends them
+    private final EphemeralRelay relay = new EphemeralRelay(messagingTemplate, 60_000, 1000, 16);
+
+    EphemeralRelayTests() {
+        doAnswer(inv -> broadcasts.add(inv.getArgument(1)))
+                .when(messagingTemplate).convertAndSend(eq("/topic/r1"), any(Object.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        relay.shutdown();
+    }
+
+    @Test
+    void onlyTheLatestSignalPerSenderIsSentEachInterval() {
+        Map<String, Object> alice = new ConcurrentHashMap<>();
+        Map<String, Object> bob = new ConcurrentHashMap<>();
+
+        relay.relay("r1", "s1", "alice", "typing", alice);
+        for (int i = 0; i < 50; i++) relay.relay("r1", "s1", "alice", "typing " + i, alice);
+        for (int i = 0; i < 50; i++) relay.relay("r1", "s2", "bob", "read:" + i, bob);
+        relay.flush("r1");
+
+        assertThat(broadcasts).extracting(ChatMessage::getContent).containsExactly("typing", "typing 49", "read:49");
+        assertThat(broadcasts).allSatisfy(message -> {
+            assertThat(message.getType()).isEqualTo(ChatMessage.MessageType.EPHEMERAL);
+            assertThat(message.getSeq()).isNull();
+        });
+        assertThat(relay.stats()).containsEntry("relayed", 3L).containsEntry("coalesced", 98L);
+    }
+
+    @Test
+    void quietIntervalClosesTheRoom() {
+        Map<String, Object> session = new ConcurrentHashMap<>();
+        relay.relay("r1", "s1", "alice", "typing", session);
+        relay.flush("r1");
+        relay.relay("r1", "s1", "alice", "stopped", session);
+
+        assertThat(broadcasts).extracting(ChatMessage::getContent).containsExactly("typing", "stopped");
+    }
+
+    @Test
+    void oversizedAndEmptySignalsAreDropped() {
+        Map<String, Object> session = new ConcurrentHashMap<>();
+
+        assertThat(relay.relay("r1", "s1", "alice", "x".repeat(17), session)).isFalse();
+        assertThat(relay.relay("r1", "s1", "alice", "", session)).isFalse();
+        assertThat(relay.relay("r1", "s1", "alice", null, session)).isFalse();
+        assertThat(broadcasts).isEmpty();
+    }
+
+    @Test
+    void budgetIsPerSessionPerSecond() {
+        EphemeralRelay strict = new EphemeralRelay(messagingTemplate, 60_000, 3, 16);
+        try {
+            Map<String, Object> session = new ConcurrentHashMap<>();
+            long now = System.nanoTime();
+
+            assertThat(strict.withinBudget(session, now)).isTrue();
+            assertThat(strict.withinBudget(session, now + 1)).isTrue();
+            assertThat(strict.withinBudget(session, now + 2)).isTrue();
+            assertThat(strict.withinBudget(session, now + 3)).isFalse();
+            // Another session has its own budget
+            assertThat(strict.withinBudget(new ConcurrentHashMap<>(), now + 3)).isTrue();
+            assertThat(strict.withinBudget(session, now + TimeUnit.SECONDS.toNanos(1))).isTrue();
+        } finally {
+            strict.shutdown();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.util.TextNormalizer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilterServiceTests {
+
+    private final FilterService filterService = new FilterService("", 1, 0);
+
+    @Test
+    void matchesLegacyRegexEngine() {
+        List<String> inputs = List.of(
+                "You are STUPID!",
+                "stupidity is not a word we mask",
+                "dumb_luck and dumb-luck",
+                "ass, class, bass, Ass.",
+                "idiot idiot idiot",
+                "nothing to see here",
+                "über dumb ünd idiot"
+        );
+
+        for (String input : inputs) {
+            assertThat(filterService.sanitize(input)).as(input).isEqualTo(legacySanitize(input));
+        }
+    }
+
+    @Test
+    void obfuscatedWordsAreMaskedInTheOriginalText() {
+        assertThat(filterService.sanitize("you $tup1d thing")).isEqualTo("you ****** thing");
+        assertThat(filterService.sanitize("ｓｔｕｐｉｄ!")).isEqualTo("******!");
+        assertThat(filterService.sanitize("what an 1d10t")).isEqualTo("what an *****");
+        assertThat(filterService.sanitize("I scored 455 points")).isEqualTo("I scored 455 points");
+    }
+
+    @Test
+    void reservedNamesAreBlockedThroughObfuscation() {
+        assertThat(filterService.isValidUsername("Alice")).isTrue();
+        assertThat(filterService.isValidUsername("player_42")).isTrue();
+
+        assertThat(filterService.isValidUsername("admin")).isFalse();
+        assertThat(filterService.isValidUsername("super_admin")).isFalse();
+        assertThat(filterService.isValidUsername("4dm1n")).isFalse();
+        assertThat(filterService.isValidUsername("a.d.m.i.n")).isFalse();
+        assertThat(filterService.isValidUsername("ａｄｍｉｎ")).isFalse();
+        assertThat(filterService.isValidUsername("\u0430dmin")).isFalse(); // Cyrillic a
+        assertThat(filterService.isValidUsername("Sýstem")).isFalse();
+    }
+
+    @Test
+    void openViewsKeepTheirOwnBuffers() {
+        try (TextNormalizer.Result first = TextNormalizer.normalize("ＳＴＵＰＩＤ", TextNormalizer.Punctuation.DROP)) {
+            try (TextNormalizer.Result second = TextNormalizer.normalize("4dm1n", TextNormalizer.Punctuation.DROP)) {
+                assertThat(second.toString()).isEqualTo("admin");
+            }
+            assertThat(first.toString()).isEqualTo("stupid");
+        }
+    }
+
+    @Test
+    void masksTheSameOnVirtualThreads() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> masked = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String input = i % 2 == 0 ? "you $tup1d thing " + i : "what an 1d10t " + i;
+                masked.add(executor.submit(() -> filterService.sanitize(input)));
+            }
+            for (int i = 0; i < masked.size(); i++) {
+                assertThat(masked.get(i).get())
+                        .isEqualTo(i % 2 == 0 ? "you ****** thing " + i : "what an ***** " + i);
+            }
+        }
+    }
+
+    @Test
+    void severityCarriesThrough() {
+        assertThat(filterService.severity("hello")).isZero();
+        assertThat(filterService.severity("so dumb")).isEqualTo(1);
+        assertThat(filterService.severity("dumb ass")).isEqualTo(2);
+
+        FilterService strict = new FilterService("", 2, 0);
+        assertThat(strict.sanitize("dumb ass")).isEqualTo("dumb ***");
+    }
+
+    @Test
+    void dictionaryFileIsLoadedAndHotSwapped() throws Exception {
+        Path file = Files.createTempFile("dictionary", ".txt");
+        try {
+            Files.write(file, List.of("# moderation list", "heck,2", "darn"));
+            FilterService fromFile = new FilterService(file.toString(), 1, 0);
+
+            assertThat(fromFile.sanitize("heck, darn it, stupid")).isEqualTo("****, **** it, stupid");
+            assertThat(fromFile.severity("heck")).isEqualTo(2);
+
+            fromFile.swapDictionary(Map.of("stupid", 1));
+            assertThat(fromFile.sanitize("heck, darn it, stupid")).isEqualTo("heck, darn it, ******");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static String legacySanitize(String input) {
+        String sanitized = input;
+        for (String word : FilterService.BAD_WORDS.keySet()) {
+            Pattern pattern = Pattern.compile("\\b" + Pattern.quote(word) + "\\b", Pattern.CASE_INSENSITIVE);
+            sanitized = pattern.matcher(sanitized).replaceAll(match -> "*".repeat(match.group().length()));
+        }
+        return sanitized;
+    }
+}
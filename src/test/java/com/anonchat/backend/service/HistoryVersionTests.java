@@ -0,0 +1,43 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryVersionTests {
+
+    @Test
+    void recreatedRoomDoesNotRepeatAVersion() {
+        HistoryVersion before = new HistoryVersion(1_700_000_000_000L, 5);
+        HistoryVersion recreated = new HistoryVersion(1_700_000_900_000L, 5);
+
+        assertThat(before.eTag("")).isNotEqualTo(recreated.eTag(""));
+        assertThat(new HistoryVersion(0, 5).eTag("")).isEqualTo("\"v5\"");
+        assertThat(before.eTag("pdf-")).startsWith("\"pdf-g").endsWith("-v5\"");
+    }
+
+    @Test
+    void weakAndListedTagsAreNotModified() {
+        String etag = new HistoryVersion(1_700_000_000_000L, 42).eTag("");
+
+        assertThat(notModified("W/" + etag, etag)).isTrue();
+        assertThat(notModified("\"v41\", " + etag, etag)).isTrue();
+        // Spring only honours a wildcard on unsafe methods (lost-update checks); a GET gets the full response
+        assertThat(notModified("*", etag)).isFalse();
+        assertThat(notModified(new HistoryVersion(1_700_000_000_000L, 41).eTag(""), etag)).isFalse();
+    }
+
+    private static boolean notModified(String ifNoneMatch, String etag) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/history/r1");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean notModified = new ServletWebRequest(request, response).checkNotModified(etag);
+        if (notModified) assertThat(response.getStatus()).isEqualTo(304);
+        return notModified;
+    }
+}
@@ -0,0 +1,115 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryWindowTests {
+
+    // The store, in the order entries were stored
+    private final List<Object> stored = new ArrayList<>();
+    private final List<Integer> reads = new ArrayList<>();
+    private final AtomicInteger fullReads = new AtomicInteger();
+
+    @Test
+    void consecutiveNumbersAreReadByPosition() {
+        store(1, 500);
+
+        HistoryPage latest = read(50, null, null);
+        HistoryPage older = read(50, 451L, null);
+        HistoryPage since = read(50, null, 100L);
+
+        assertThat(seqs(latest)).startsWith(451L).endsWith(500L).hasSize(50);
+        assertThat(latest.isHasMore()).isTrue();
+        assertThat(seqs(older)).startsWith(401L).endsWith(450L);
+        assertThat(seqs(since)).startsWith(101L).endsWith(150L);
+        // Each page one read of its own size plus the margin, nothing read in full
+        assertThat(reads).containsOnly(50 + HistoryWindow.MARGIN);
+        assertThat(fullReads).hasValue(0);
+    }
+
+    @Test
+    void nothingNewerIsAnEmptyPageWithoutAFullRead() {
+        store(1, 20);
+
+        HistoryPage page = read(50, null, 20L);
+
+        assertThat(page.getMessages()).isEmpty();
+        assertThat(page.getLatestSeq()).isEqualTo(20);
+        assertThat(fullReads).hasValue(0);
+    }
+
+    @Test
+    void gapFallsBackToTheRetainedHistory() {
+        store(1, 10);
+        store(20, 30);      // 11..19 leased and never used
+
+        HistoryPage page = read(5, 15L, null);
+
+        assertThat(seqs(page)).containsExactly(6L, 7L, 8L, 9L, 10L);
+        assertThat(fullReads).hasValue(1);
+    }
+
+    @Test
+    void entryStoredOutOfOrderFallsBack() {
+        store(1, 40);
+        stored.add(stored.size() - 5, message(41));     // A newer number stored before 36..40
+        // Stored last: 36..40, so the position guess is off by one
+
+        HistoryPage page = read(3, null, null);
+
+        assertThat(seqs(page)).containsExactly(39L, 40L, 41L);
+        assertThat(page.getLatestSeq()).isEqualTo(40);
+        assertThat(fullReads).hasValue(1);
+    }
+
+    @Test
+    void appendInBetweenIsReadAgainByPosition() {
+        store(1, 100);
+        HistoryWindow.Tail appending = (skip, count) -> {
+            if (reads.isEmpty()) store(101, 101);
+            return tail(skip, count);
+        };
+
+        HistoryPage page = HistoryWindow.read(appending, 100, 10, null, null, this::all);
+
+        assertThat(seqs(page)).startsWith(92L).endsWith(101L);
+        assertThat(reads).hasSize(2);
+        assertThat(fullReads).hasValue(0);
+    }
+
+    private HistoryPage read(int limit, Long before, Long after) {
+        long newest = ((ChatMessage) stored.getLast()).getSeq();
+        return HistoryWindow.read(this::tail, newest, limit, before, after, this::all);
+    }
+
+    private HistoryWindow.Slice tail(long skip, int count) {
+        reads.add(count);
+        int end = (int) Math.max(0, stored.size() - skip);
+        List<Object> entries = new ArrayList<>(stored.subList(Math.max(0, end - count), end));
+        return new HistoryWindow.Slice(entries, ((ChatMessage) stored.getLast()).getSeq());
+    }
+
+    private List<Object> all() {
+        fullReads.incrementAndGet();
+        return new ArrayList<>(stored);
+    }
+
+    private void store(long first, long last) {
+        for (long seq = first; seq <= last; seq++) stored.add(message(seq));
+    }
+
+    private static ChatMessage message(long seq) {
+        return ChatMessage.builder().type(ChatMessage.MessageType.CHAT).sender("a").content("m" + seq).seq(seq).build();
+    }
+
+    private static List<Long> seqs(HistoryPage page) {
+        return page.getMessages().stream().map(message -> ((ChatMessage) message).getSeq()).toList();
+    }
+}
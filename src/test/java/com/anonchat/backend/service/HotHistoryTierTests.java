@@ -0,0 +1,158 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotHistoryTierTests {
+
+    private final HotHistoryTier tier = new HotHistoryTier(true, 64L << 20, 600_000, 0);
+
+    @AfterEach
+    void tearDown() {
+        tier.shutdown();
+    }
+
+    @Test
+    void newRoomIsAnsweredFromMemory() {
+        write("r1", 1, 5);
+
+        assertThat(seqs(tier.readAll("r1", 5))).containsExactly(1L, 2L, 3L, 4L, 5L);
+
+        HistoryPage page = tier.readPage("r1", 5, 2, null, null);
+        assertThat(page.getFirstSeq()).isEqualTo(4);
+        assertThat(page.getLastSeq()).isEqualTo(5);
+        assertThat(page.isHasMore()).isTrue();
+        assertThat(tier.stats()).containsEntry("hits", 2L);
+    }
+
+    @Test
+    void missesWhenSomethingWasNumberedElsewhere() {
+        write("r1", 1, 5);
+
+        assertThat(tier.readAll("r1", 6)).isNull();
+        // Deleted or expired in Redis
+        assertThat(tier.readAll("r1", 0)).isNull();
+    }
+
+    @Test
+    void keepsOnlyTheRetainedWindow() {
+        write("r1", 1, ChatService.HISTORY_LIMIT + 500);
+
+        List<Object> messages = tier.readAll("r1", ChatService.HISTORY_LIMIT + 500);
+        assertThat(messages).hasSize(ChatService.HISTORY_LIMIT);
+        assertThat(((ChatMessage) messages.get(0)).getSeq()).isEqualTo(501);
+    }
+
+    @Test
+    void roomJoinedMidwayIsFilledFromRedis() {
+        write("r1", 100, 101);
+        assertThat(tier.readAll("r1", 101)).isNull();
+        assertThat(tier.shouldWarmUp("r1")).isTrue();
+        assertThat(tier.shouldWarmUp("r1")).isFalse();
+
+        // A message is written through while the full read is in flight
+        List<Object> stored = new ArrayList<>();
+        for (long seq = 1; seq <= 100; seq++) stored.add(message(seq));
+        write("r1", 102, 102);
+        tier.promote("r1", 101, stored);
+
+        List<Object> messages = tier.readAll("r1", 102);
+        assertThat(messages).hasSize(102);
+        assertThat(seqs(messages)).isSorted().startsWith(1L).endsWith(102L);
+    }
+
+    @Test
+    void coldRoomsAreNotWarmedByPageReads() {
+        assertThat(tier.shouldWarmUp("cold")).isFalse();
+        assertThat(tier.readPage("cold", 10, 50, null, null)).isNull();
+    }
+
+    @Test
+    void gapWaitsForAFillFromRedis() {
+        write("r1", 1, 5);
+        // 6 and 7 were numbered on another node
+        write("r1", 8, 8);
+        assertThat(tier.readAll("r1", 8)).isNull();
+
+        assertThat(tier.shouldWarmUp("r1")).isTrue();
+        List<Object> stored = new ArrayList<>();
+        for (long seq = 1; seq <= 8; seq++) stored.add(message(seq));
+        tier.promote("r1", 8, stored);
+
+        assertThat(seqs(tier.readAll("r1", 8))).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+    }
+
+    @Test
+    void unusedLeasedNumbersAreNotMissing() {
+        tier.leased("r1", 1, 4);
+        write("r1", 1, 2);
+        tier.leased("r1", 5, 12);
+        write("r1", 5, 6);
+
+        // The counter is at the end of this node's block: 3, 4 and 7..12 were skipped
+        assertThat(seqs(tier.readAll("r1", 12))).containsExactly(1L, 2L, 5L, 6L);
+
+        HistoryPage page = tier.readPage("r1", 12, 2, 5L, null);
+        assertThat(seqs(page.getMessages())).containsExactly(1L, 2L);
+        assertThat(page.getLatestSeq()).isEqualTo(6);
+    }
+
+    @Test
+    void counterStartingOverDropsTheEarlierRoom() {
+        write("r1", 1, 5);
+        // Deleted elsewhere and used again: this node leases from 1
+        tier.leased("r1", 1, 1);
+        write("r1", 1, 1);
+
+        assertThat(seqs(tier.readAll("r1", 1))).containsExactly(1L);
+    }
+
+    @Test
+    void deletedRoomIsDropped() {
+        write("r1", 1, 5);
+        tier.evictRoom("r1");
+
+        assertThat(tier.readAll("r1", 5)).isNull();
+        assertThat(tier.stats()).containsEntry("rooms", 0).containsEntry("bytes", 0L);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedRoomsOverBudget() {
+        long perMessage = HotHistoryTier.estimateBytes(message(1));
+        HotHistoryTier small = new HotHistoryTier(true, perMessage * 5, 600_000, 0);
+        try {
+            for (long seq = 1; seq <= 3; seq++) small.append("a", message(seq));
+            for (long seq = 1; seq <= 3; seq++) small.append("b", message(seq));
+
+            assertThat(small.readAll("a", 3)).isNull();
+            assertThat(small.readAll("b", 3)).hasSize(3);
+            assertThat(small.stats()).containsEntry("budgetEvictions", 1L).containsEntry("bytes", perMessage * 3);
+        } finally {
+            small.shutdown();
+        }
+    }
+
+    private void write(String roomId, long from, long to) {
+        for (long seq = from; seq <= to; seq++) tier.append(roomId, message(seq));
+    }
+
+    private static List<Long> seqs(List<Object> messages) {
+        return messages.stream().map(message -> ((ChatMessage) message).getSeq()).toList();
+    }
+
+    private static ChatMessage message(long seq) {
+        return ChatMessage.builder()
+                .type(ChatMessage.MessageType.CHAT)
+                .sender("user")
+                .content("message " + seq)
+                .seq(seq)
+                .build();
+    }
+}
@@ -0,0 +1,179 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import com.anonchat.backend.model.HistoryPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class MessageWriteBehindBufferTests {
+
+    private final HistoryStore historyStore = mock(HistoryStore.class);
+    // Every batch written, in order
+    private final List<List<String>> batches = new ArrayList<>();
+
+    // A timer long enough that only the test flushes
+    private final MessageWriteBehindBuffer buffer = new MessageWriteBehindBuffer(historyStore, true, 3, 60_000, 4, 0);
+
+    private final Answer<Void> recordBatch = inv -> {
+        List<ChatMessage> batch = inv.getArgument(1);
+        synchronized (batches) {
+            batches.add(batch.stream().map(ChatMessage::getContent).toList());
+        }
+        return null;
+    };
+
+    MessageWriteBehindBufferTests() {
+        doAnswer(recordBatch).when(historyStore).append(eq("r1"), anyList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        buffer.shutdown();
+    }
+
+    @Test
+    void messagesWaitForAFlushAndAreWrittenInBatches() {
+        buffer.enqueue("r1", message("a"));
+        buffer.enqueue("r1", message("b"));
+        verify(historyStore, never()).append(eq("r1"), anyList());
+
+        buffer.enqueue("r1", message("c"));
+        buffer.enqueue("r1", message("d"));
+        // A read flushes first; a full batch may already be on its way from a flusher thread
+        buffer.flushRoom("r1");
+
+        synchronized (batches) {
+            assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSizeBetween(1, 3));
+            assertThat(batches.stream().flatMap(List::stream)).containsExactly("a", "b", "c", "d");
+        }
+        assertThat(buffer.pendingCount()).isZero();
+        assertThat(buffer.roomCount()).isZero();
+    }
+
+    @Test
+    void discardedMessagesAreNotWrittenAndFreeTheirCapacity() {
+        for (int i = 0; i < 2; i++) buffer.enqueue("r1", message("old" + i));
+        buffer.discardRoom("r1");
+        buffer.flushRoom("r1");
+        verify(historyStore, never()).append(eq("r1"), anyList());
+
+        // The full capacity is free again: nothing is written inline
+        buffer.enqueue("r1", message("a"));
+        buffer.enqueue("r1", message("b"));
+        verify(historyStore, never()).append(eq("r1"), anyList());
+        assertThat(buffer.pendingCount()).isEqualTo(2);
+    }
+
+    @Test
+    void failedBatchIsKeptAndRetriedAheadOfNewerMessages() {
+        doThrow(new QueryTimeoutException("Redis down")).doAnswer(recordBatch)
+                .when(historyStore).append(eq("r1"), anyList());
+        buffer.enqueue("r1", message("a"));
+        buffer.enqueue("r1", message("b"));
+
+        assertThatThrownBy(() -> buffer.flushRoom("r1")).isInstanceOf(QueryTimeoutException.class);
+        assertThat(buffer.pendingCount()).isEqualTo(2);
+
+        buffer.enqueue("r1", message("c"));
+        buffer.flushRoom("r1");
+
+        assertThat(batches.stream().flatMap(List::stream)).containsExactly("a", "b", "c");
+        assertThat(buffer.pendingCount()).isZero();
+    }
+
+    @Test
+    void retryAfterAPartlyAppliedWriteDoesNotStoreTwice() {
+        // What Redis holds; the second write stores its first message, then the reply is lost
+        List<ChatMessage> stored = new ArrayList<>();
+        int[] appends = {0};
+        doAnswer(inv -> {
+            List<ChatMessage> batch = inv.getArgument(1);
+            synchronized (stored) {
+                if (++appends[0] == 2) {
+                    stored.add(batch.get(0));
+                    throw new QueryTimeoutException("Redis command timed out");
+                }
+                stored.addAll(batch);
+            }
+            return null;
+        }).when(historyStore).append(eq("r1"), anyList());
+        when(historyStore.readPage(eq("r1"), anyInt(), isNull(), anyLong())).thenAnswer(inv -> {
+            long after = inv.getArgument(3);
+            synchronized (stored) {
+                List<Object> page = stored.stream().filter(m -> m.getSeq() > after).map(m -> (Object) m).toList();
+                return HistoryPage.builder().messages(page)
+                        .lastSeq(page.isEmpty() ? 0 : ((ChatMessage) page.get(page.size() - 1)).getSeq()).build();
+            }
+        });
+
+        MessageWriteBehindBuffer buffer = new MessageWriteBehindBuffer(historyStore, true, 3, 60_000, 10, 0);
+        try {
+            for (long seq = 1; seq <= 5; seq++) buffer.enqueue("r1", message("m" + seq, seq));
+            // Written as 1-3, then 4-5, which fails after 4 is stored; a flusher thread may have taken either write
+            for (int attempt = 0; attempt < 3 && buffer.pendingCount() > 0; attempt++) {
+                try {
+                    buffer.flushRoom("r1");
+                } catch (QueryTimeoutException e) {
+                    // Kept for the next attempt
+                }
+            }
+        } finally {
+            buffer.shutdown();
+        }
+
+        synchronized (stored) {
+            assertThat(stored).extracting(ChatMessage::getSeq).containsExactly(1L, 2L, 3L, 4L, 5L);
+        }
+        assertThat(appends[0]).isEqualTo(3);
+    }
+
+    @Test
+    void unwrittenMessagesKeepTheirCapacity() {
+        doThrow(new QueryTimeoutException("Redis down")).when(historyStore).append(eq("r1"), anyList());
+        for (int i = 0; i < 2; i++) buffer.enqueue("r1", message("kept" + i));
+        assertThatThrownBy(() -> buffer.flushRoom("r1")).isInstanceOf(QueryTimeoutException.class);
+
+        buffer.enqueue("r1", message("c"));
+        buffer.enqueue("r1", message("d"));
+        // Capacity is 4 and nothing was released: the fifth waits no time and drains the room inline, which fails
+        assertThatThrownBy(() -> buffer.enqueue("r1", message("e"))).isInstanceOf(QueryTimeoutException.class);
+        assertThat(buffer.pendingCount()).isEqualTo(4);
+    }
+
+    @Test
+    void roomsAreDroppedOnceEmpty() {
+        buffer.enqueue("r1", message("a"));
+        buffer.enqueue("r2", message("b"));
+        assertThat(buffer.roomCount()).isEqualTo(2);
+
+        buffer.flushRoom("r1");
+
+        assertThat(buffer.roomCount()).isEqualTo(1);
+        buffer.discardRoom("r2");
+        assertThat(buffer.roomCount()).isZero();
+    }
+
+    private static ChatMessage message(String content) {
+        return ChatMessage.builder().type(ChatMessage.MessageType.CHAT).sender("alice").content(content).build();
+    }
+
+    private static ChatMessage message(String content, long seq) {
+        ChatMessage message = message(content);
+        message.setSeq(seq);
+        return message;
+    }
+}
@@ -0,0 +1,98 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PdfExportCacheTests {
+
+    private static final HistoryVersion V5 = new HistoryVersion(1000, 5);
+
+    private final PdfExportCache cache = new PdfExportCache(1024, 512);
+
+    @Test
+    void completedRenderIsServedAtTheSameVersion() throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        cache.renderAndCache("r1", V5, () -> V5, response, out -> out.write(pdf(100)));
+
+        assertThat(response.size()).isEqualTo(100);
+        assertThat(cache.get("r1", V5)).isNotNull().satisfies(entry -> assertThat(entry.pdf()).hasSize(100));
+        assertThat(cache.get("r1", V5.withSequence(6))).isNull();
+        assertThat(cache.stats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void failedRenderIsNotCached() {
+        assertThatThrownBy(() -> cache.renderAndCache("r1", V5, () -> V5, new ByteArrayOutputStream(), out -> {
+            out.write(pdf(100));
+            throw new IllegalStateException("Render failed halfway");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.get("r1", V5)).isNull();
+        assertThat(cache.stats()).containsEntry("entries", 0);
+    }
+
+    @Test
+    void recreatedRoomMissesAtTheSameSequence() throws IOException {
+        cache.renderAndCache("r1", V5, () -> V5, new ByteArrayOutputStream(), out -> out.write(pdf(100)));
+
+        // Deleted and created again on another node: this node was never told, but the generation differs
+        HistoryVersion recreated = new HistoryVersion(2000, 5);
+        assertThat(cache.get("r1", recreated)).isNull();
+
+        cache.renderAndCache("r1", recreated, () -> recreated, new ByteArrayOutputStream(),
+                out -> out.write(pdf(50)));
+        assertThat(cache.get("r1", recreated)).isNotNull();
+    }
+
+    @Test
+    void olderRenderDoesNotReplaceANewerOne() throws IOException {
+        HistoryVersion v9 = V5.withSequence(9);
+        cache.renderAndCache("r1", v9, () -> v9, new ByteArrayOutputStream(), out -> out.write(pdf(100)));
+        cache.renderAndCache("r1", V5, () -> V5, new ByteArrayOutputStream(), out -> out.write(pdf(100)));
+
+        assertThat(cache.get("r1", v9)).isNotNull();
+    }
+
+    @Test
+    void renderOfARoomThatChangedMeanwhileIsStreamedButNotKept() throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        // A message was stored while the history was read: the PDF may hold it, V5 does not
+        cache.renderAndCache("r1", V5, () -> V5.withSequence(6), response, out -> out.write(pdf(100)));
+
+        assertThat(response.size()).isEqualTo(100);
+        assertThat(cache.get("r1", V5)).isNull();
+        assertThat(cache.get("r1", V5.withSequence(6))).isNull();
+    }
+
+    @Test
+    void oversizedPdfIsStreamedButNotKept() throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        cache.renderAndCache("r1", V5, () -> V5, response, out -> out.write(pdf(600)));
+
+        assertThat(response.size()).isEqualTo(600);
+        assertThat(cache.get("r1", V5)).isNull();
+    }
+
+    @Test
+    void leastRecentlyUsedRoomIsEvictedFirst() throws IOException {
+        for (String roomId : new String[]{"r1", "r2", "r3"}) {
+            cache.renderAndCache(roomId, V5, () -> V5, new ByteArrayOutputStream(), out -> out.write(pdf(400)));
+            if (roomId.equals("r2")) cache.get("r1", V5);
+        }
+
+        // 1200 bytes against a 1024 limit: r2 was used least recently
+        assertThat(cache.get("r2", V5)).isNull();
+        assertThat(cache.get("r1", V5)).isNotNull();
+        assertThat(cache.get("r3", V5)).isNotNull();
+        assertThat(cache.stats()).containsEntry("evictions", 1L).containsEntry("bytes", 800L);
+    }
+
+    private static byte[] pdf(int size) {
+        return new byte[size];
+    }
+}
@@ -0,0 +1,174 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PdfServiceTests {
+
+    private static final int PAGE_SIZE = 200;
+
+    private final PdfService pdfService = new PdfService(4, 0);
+
+    @Test
+    void bytesReachTheOutputBeforeHistoryIsFullyRead() {
+        CountingOutputStream out = new CountingOutputStream();
+        List<Long> writtenWhenPageRequested = new ArrayList<>();
+
+        pdfService.writeChatPdf("room1", pages(5_000, () -> writtenWhenPageRequested.add(out.count)), out);
+
+        // Earlier PDF pages were already flushed while later history pages were being fetched
+        long lastSample = writtenWhenPageRequested.get(writtenWhenPageRequested.size() - 1);
+        assertThat(lastSample).isGreaterThan(out.count / 2);
+        assertThat(out.count).isGreaterThan(lastSample);
+    }
+
+    @Test
+    void historyIsReadOnePageAtATime() {
+        // A full room: five history pages, each only readable until the next one is requested
+        OnePageAtATime history = new OnePageAtATime(pages(ChatService.HISTORY_LIMIT, () -> {
+        }));
+
+        pdfService.writeChatPdf("room1", history, new CountingOutputStream());
+
+        assertThat(history.pagesServed).isEqualTo(ChatService.HISTORY_LIMIT / PAGE_SIZE);
+    }
+
+    @Test
+    void failedRenderIsRethrown() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Client went away");
+            }
+        };
+
+        assertThatThrownBy(() -> pdfService.writeChatPdf("room1", pages(PAGE_SIZE, () -> {
+        }), broken)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void exportSlotIsReleasedOnce() {
+        PdfService single = new PdfService(1, 0);
+        PdfService.ExportSlot slot = single.tryAcquireExportSlot();
+        assertThat(single.tryAcquireExportSlot()).isNull();
+
+        slot.close();
+        slot.close();
+
+        assertThat(single.tryAcquireExportSlot()).isNotNull();
+        assertThat(single.tryAcquireExportSlot()).isNull();
+    }
+
+    /**
+     * Lazily generated history, like ChatService.iterateHistory: only one page is alive at a time.
+     * {@code onPage} runs just before each page is handed out.
+     */
+    private static Iterable<List<Object>> pages(int total, Runnable onPage) {
+        return () -> new Iterator<>() {
+            private int produced = 0;
+
+            @Override
+            public boolean hasNext() {
+                return produced < total;
+            }
+
+            @Override
+            public List<Object> next() {
+                onPage.run();
+                int size = Math.min(PAGE_SIZE, total - produced);
+                List<Object> page = new ArrayList<>(size);
+                for (int i = 0; i < size; i++, produced++) {
+                    page.add(ChatMessage.builder()
+                            .type(ChatMessage.MessageType.CHAT)
+                            .sender("user" + (produced % 50))
+                            .content("message number " + produced + " with a bit of padding text")
+                            .build());
+                }
+                return page;
+            }
+        };
+    }
+
+    /**
+     * Hands out pages that expire once the next one is requested, and only when the previous one was read to
+     * the end: a renderer that kept earlier pages around, or fetched ahead, fails.
+     */
+    private static class OnePageAtATime implements Iterable<List<Object>> {
+        private final Iterable<List<Object>> pages;
+        int pagesServed;
+
+        OnePageAtATime(Iterable<List<Object>> pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public Iterator<List<Object>> iterator() {
+            Iterator<List<Object>> source = pages.iterator();
+            return new Iterator<>() {
+                private ExpiringPage alive;
+
+                @Override
+                public boolean hasNext() {
+                    return source.hasNext();
+                }
+
+                @Override
+                public List<Object> next() {
+                    if (alive != null) {
+                        assertThat(alive.read).as("previous page read to the end").isEqualTo(alive.size());
+                        alive.expired = true;
+                    }
+                    alive = new ExpiringPage(source.next());
+                    pagesServed++;
+                    return alive;
+                }
+            };
+        }
+    }
+
+    private static class ExpiringPage extends AbstractList<Object> {
+        private final List<Object> messages;
+        boolean expired;
+        int read;
+
+        ExpiringPage(List<Object> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (expired) throw new IllegalStateException("Page read after the next one was requested");
+            read = Math.max(read, index + 1);
+            return messages.get(index);
+        }
+
+        @Override
+        public int size() {
+            return messages.size();
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
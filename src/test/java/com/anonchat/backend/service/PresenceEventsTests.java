@@ -0,0 +1,168 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PresenceEventsTests {
+
+    private final ChatService chatService = mock(ChatService.class);
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+    private final List<ChatMessage> broadcasts = new ArrayList<>();
+
+    // Windows long enough that only the test ends them
+    private final PresenceEvents events = new PresenceEvents(chatService, messagingTemplate, 60_000, 3);
+
+    PresenceEventsTests() {
+        doAnswer(inv -> broadcasts.add(inv.getArgument(1)))
+                .when(messagingTemplate).convertAndSend(eq("/topic/r1"), any(Object.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        events.shutdown();
+    }
+
+    @Test
+    void firstChangeInAQuietRoomGoesOutAtOnce() {
+        events.joined("r1", "alice");
+
+        assertThat(broadcasts).singleElement().satisfies(message -> {
+            assertThat(message.getType()).isEqualTo(ChatMessage.MessageType.JOIN);
+            assertThat(message.getSender()).isEqualTo("alice");
+        });
+        verify(chatService).saveMessage("r1", broadcasts.get(0));
+    }
+
+    @Test
+    void reconnectStormIsOneSummary() {
+        int users = 500;
+        for (int i = 0; i < users; i++) events.left("r1", "user" + i);
+        for (int i = 0; i < users; i++) events.joined("r1", "user" + i);
+        events.flush("r1");
+
+        // 1000 changes, each of which used to be saved and sent to all 500 members: 2 broadcasts instead
+        assertThat(broadcasts).hasSize(2);
+        verify(messagingTemplate, times(2)).convertAndSend(eq("/topic/r1"), any(Object.class));
+        verify(chatService, times(2)).saveMessage(eq("r1"), any());
+
+        assertThat(broadcasts.get(0).getType()).isEqualTo(ChatMessage.MessageType.LEAVE);
+        ChatMessage summary = broadcasts.get(1);
+        assertThat(summary.getType()).isEqualTo(ChatMessage.MessageType.PRESENCE);
+        assertThat(summary.getSender()).isEqualTo("System");
+        // user0's leave was already announced on its own
+        assertThat(summary.getContent()).isEqualTo("1 joined, 499 reconnected");
+        assertThat(events.stats()).containsEntry("published", 1L).containsEntry("coalesced", 999L);
+    }
+
+    @Test
+    void stormLongerThanAWindowIsOneSummaryPerWindow() {
+        events.joined("r1", "first");
+        for (int window = 0; window < 5; window++) {
+            for (int i = 0; i < 100; i++) events.joined("r1", "w" + window + "-" + i);
+            events.flush("r1");
+        }
+        // Quiet window: closed, and the next change is sent at once again
+        events.flush("r1");
+        events.left("r1", "first");
+
+        assertThat(broadcasts).extracting(ChatMessage::getType).containsExactly(
+                ChatMessage.MessageType.JOIN,
+                ChatMessage.MessageType.PRESENCE, ChatMessage.MessageType.PRESENCE, ChatMessage.MessageType.PRESENCE,
+                ChatMessage.MessageType.PRESENCE, ChatMessage.MessageType.PRESENCE,
+                ChatMessage.MessageType.LEAVE);
+        assertThat(broadcasts.get(1).getContent()).isEqualTo("100 joined");
+    }
+
+    @Test
+    void fewChangesAreSentOneByOne() {
+        events.joined("r1", "alice");
+        events.joined("r1", "bob");
+        events.left("r1", "carol");
+        events.joined("r1", "dave");
+        events.flush("r1");
+
+        assertThat(broadcasts).extracting(ChatMessage::getSender).containsExactly("alice", "bob", "carol", "dave");
+    }
+
+    @Test
+    void nothingIsAnnouncedForADeletedRoom() {
+        events.joined("r1", "alice");
+        for (int i = 0; i < 10; i++) events.left("r1", "user" + i);
+        when(chatService.isRoomBeingDeleted("r1")).thenReturn(true);
+        events.flush("r1");
+
+        assertThat(broadcasts).hasSize(1);
+    }
+
+    @Test
+    void heldChangesAreSentOnShutdown() {
+        events.joined("r1", "alice");
+        for (int i = 0; i < 10; i++) events.joined("r1", "user" + i);
+
+        events.shutdown();
+
+        assertThat(broadcasts).hasSize(2);
+        assertThat(broadcasts.get(1).getContent()).isEqualTo("10 joined");
+        assertThat(events.stats()).containsEntry("openWindows", 0);
+
+        // Nothing is held any more once the windows can't be ended
+        events.left("r1", "alice");
+        assertThat(broadcasts).hasSize(3);
+    }
+
+    @Test
+    void summariesAreCounted() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        events.setMeterRegistry(registry);
+
+        events.joined("r1", "alice");
+        for (int i = 0; i < 10; i++) events.joined("r1", "user" + i);
+        events.flush("r1");
+
+        assertThat(registry.get("anonchat.presence.events").tag("result", "summary").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("anonchat.presence.events").tag("result", "coalesced").functionCounter().count())
+                .isEqualTo(10);
+    }
+
+    @Test
+    void summaryCountsPerNameInOrder() {
+        ChatMessage summary = PresenceEvents.summarize(List.of(
+                event(ChatMessage.MessageType.JOIN, "a"),
+                event(ChatMessage.MessageType.JOIN, "b"),
+                event(ChatMessage.MessageType.LEAVE, "b"),
+                event(ChatMessage.MessageType.LEAVE, "c"),
+                event(ChatMessage.MessageType.LEAVE, "d"),
+                event(ChatMessage.MessageType.JOIN, "d")));
+
+        // b came and went; only d left and came back
+        assertThat(summary.getContent()).isEqualTo("2 joined, 2 left, 1 reconnected");
+    }
+
+    @Test
+    void summaryCountsEachSessionOfAName() {
+        ChatMessage summary = PresenceEvents.summarize(List.of(
+                event(ChatMessage.MessageType.LEAVE, "a"),
+                event(ChatMessage.MessageType.LEAVE, "a"),
+                event(ChatMessage.MessageType.JOIN, "a"),
+                event(ChatMessage.MessageType.JOIN, "a"),
+                event(ChatMessage.MessageType.JOIN, "a")));
+
+        assertThat(summary.getContent()).isEqualTo("1 joined, 2 reconnected");
+    }
+
+    private static ChatMessage event(ChatMessage.MessageType type, String sender) {
+        return ChatMessage.builder().type(type).sender(sender).build();
+    }
+}
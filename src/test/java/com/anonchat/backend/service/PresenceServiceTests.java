@@ -0,0 +1,158 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two nodes sharing a real Redis (in a container; skipped without Docker). Heartbeats are driven by the tests,
+ * so a node that stops calling {@link PresenceService#heartbeat} is a node that died.
+ */
+class PresenceServiceTests {
+
+    private static final long INTERVAL_MS = 100;
+    private static final long TTL_MS = 300;
+
+    private static GenericContainer<?> redis;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate template;
+
+    private PresenceService nodeA;
+    private PresenceService nodeB;
+
+    @BeforeAll
+    static void startRedis() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Needs Docker for a real Redis");
+
+        redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (connectionFactory != null) connectionFactory.destroy();
+        if (redis != null) redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        template.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+        nodeA = new PresenceService(template, INTERVAL_MS, TTL_MS);
+        nodeB = new PresenceService(template, INTERVAL_MS, TTL_MS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (nodeA != null) nodeA.shutdown();
+        if (nodeB != null) nodeB.shutdown();
+    }
+
+    @Test
+    void countsSessionsOnAllNodes() {
+        nodeA.join("r1", "a1", "alice");
+        nodeB.join("r1", "b1", "bob");
+        nodeB.join("r1", "b2", "Carol");
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+
+        assertThat(nodeA.occupancy("r1", true)).isEqualTo(3);
+        assertThat(nodeA.onlineUsers("r1")).containsExactly("alice", "bob", "Carol");
+    }
+
+    @Test
+    void emptyAndOccupiedAreWrittenThroughOtherChangesWaitForTheHeartbeat() {
+        nodeA.heartbeat();
+
+        nodeA.join("r1", "a1", "alice");
+        assertThat(nodeB.occupancy("r1", true)).isEqualTo(1);
+
+        nodeA.join("r1", "a2", "bob");
+        assertThat(nodeB.occupancy("r1", true)).isEqualTo(1);
+        nodeA.heartbeat();
+        assertThat(nodeB.occupancy("r1", true)).isEqualTo(2);
+
+        nodeA.leave("a2");
+        assertThat(nodeB.occupancy("r1", true)).isEqualTo(2);
+        nodeA.leave("a1");
+        assertThat(nodeB.occupancy("r1", true)).isZero();
+
+        assertThat(nodeA.stats()).containsEntry("writeThroughs", 2L);
+    }
+
+    @Test
+    void deadNodesSessionsExpire() throws InterruptedException {
+        nodeA.join("r1", "a1", "alice");
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        assertThat(nodeB.occupancy("r1", true)).isEqualTo(1);
+
+        // A stops beating without leaving cleanly; B keeps going
+        Thread.sleep(TTL_MS + 100);
+        nodeB.heartbeat();
+
+        assertThat(nodeB.occupancy("r1", true)).isZero();
+        assertThat(nodeB.onlineUsers("r1")).isEmpty();
+        assertThat(nodeB.stats()).containsEntry("liveNodes", 1);
+    }
+
+    @Test
+    void sessionMovingRoomsLeavesTheFirst() {
+        nodeA.heartbeat();
+
+        nodeA.join("r1", "a1", "alice");
+        nodeA.join("r2", "a1", "alice");
+
+        assertThat(nodeB.occupancy("r1", true)).isZero();
+        assertThat(nodeB.occupancy("r2", true)).isEqualTo(1);
+        assertThat(nodeA.localRoomCount()).isEqualTo(1);
+        assertThat(nodeA.leave("a1")).isEqualTo("r2");
+        assertThat(nodeA.leave("a1")).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ownerIsResetOnlyWhenNoNodeHasAnyoneLeft() {
+        RedisTemplate<String, Object> chatRedis = mock(RedisTemplate.class);
+        ChatService onA = chatService(chatRedis, nodeA);
+        ChatService onB = chatService(chatRedis, nodeB);
+
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        onA.userJoined("r1", "a1", "alice");
+        onB.userJoined("r1", "b1", "bob");
+
+        onA.userLeft("a1");
+        verify(chatRedis, never()).delete(anyString());
+
+        onB.userLeft("b1");
+        verify(chatRedis).delete("room:r1:owner");
+    }
+
+    private static ChatService chatService(RedisTemplate<String, Object> redisTemplate, PresenceService presence) {
+        return new ChatService(redisTemplate, mock(MessageWriteBehindBuffer.class), mock(PdfExportCache.class),
+                mock(HistoryStore.class), mock(SequenceLeases.class), presence,
+                mock(RoomMessageRates.class), mock(RoomMetadataCache.class), mock(HotHistoryTier.class),
+                mock(RoomPurger.class));
+    }
+}
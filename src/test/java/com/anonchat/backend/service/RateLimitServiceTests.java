@@ -0,0 +1,46 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitServiceTests {
+
+    @Test
+    void allowsBurstOfFiveThenRejects() {
+        RateLimitService rateLimitService = new RateLimitService(1_000, 0);
+
+        for (int i = 0; i < RateLimitService.CAPACITY; i++) {
+            assertThat(rateLimitService.allowRequest("192.168.1.10")).isTrue();
+        }
+        assertThat(rateLimitService.allowRequest("192.168.1.10")).isFalse();
+
+        // Other clients are unaffected
+        assertThat(rateLimitService.allowRequest("192.168.1.11")).isTrue();
+        assertThat(rateLimitService.allowRequest("2001:db8::1")).isTrue();
+    }
+
+    @Test
+    void entryCountStaysBoundedUnderAddressScan() {
+        RateLimitService rateLimitService = new RateLimitService(10_000, 0);
+
+        for (int i = 0; i < 500_000; i++) {
+            rateLimitService.allowRequest("10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF));
+        }
+
+        assertThat(rateLimitService.entryCount()).isLessThanOrEqualTo(10_000 + 64 * 16);
+        assertThat((Long) rateLimitService.stats().get("forcedEvictions")).isPositive();
+    }
+
+    @Test
+    void ipv4AddressesPackIntoDistinctKeys() {
+        assertThat(RateLimitService.keyOf("0.0.0.0")).isEqualTo(1L << 32);
+        assertThat(RateLimitService.keyOf("255.255.255.255")).isEqualTo((1L << 32) | 0xFFFFFFFFL);
+        assertThat(RateLimitService.keyOf("10.0.0.1")).isNotEqualTo(RateLimitService.keyOf("10.0.1.0"));
+
+        // Not IPv4: hashed into the upper half of the key space
+        assertThat(RateLimitService.keyOf("::1")).isNegative();
+        assertThat(RateLimitService.keyOf("256.1.1.1")).isNegative();
+        assertThat(RateLimitService.keyOf("1.2.3")).isNegative();
+    }
+}
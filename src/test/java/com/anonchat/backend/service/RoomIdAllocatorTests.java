@@ -0,0 +1,119 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.random.RandomGenerator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoomIdAllocatorTests {
+
+    private static final long SEED = 42;
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, String> template = mock(RedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+
+    // What Redis holds; the reserve script is played against it
+    private final Map<String, String> redis = new HashMap<>();
+
+    RoomIdAllocatorTests() {
+        when(template.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenAnswer(inv -> {
+            List<String> keys = inv.getArgument(1);
+            String name = inv.getArgument(2);
+            int per = Integer.parseInt(inv.getArgument(4));
+
+            List<Long> taken = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i += per) {
+                if (keys.subList(i, i + per).stream().noneMatch(redis::containsKey)) {
+                    redis.put(keys.get(i), name);
+                    taken.add((long) i / per + 1);
+                }
+            }
+            return taken;
+        });
+        when(template.opsForValue()).thenReturn(values);
+        doAnswer(inv -> redis.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void idsAreEightLowercaseAlphanumerics() {
+        RoomIdAllocator allocator = allocator(0);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            String id = allocator.generateRoomId();
+            assertThat(id).matches("[a-z0-9]{8}");
+            ids.add(id);
+        }
+        assertThat(ids).hasSize(10_000);
+    }
+
+    @Test
+    void existingRoomsAreNeverOverwritten() {
+        // The next three IDs the allocator will draw all belong to live rooms, each through a different key
+        List<String> upcoming = upcomingIds(4);
+        redis.put("room:" + upcoming.get(0) + ":name", "First");
+        redis.put("room:" + upcoming.get(1), "history");
+        redis.put("room:" + upcoming.get(2) + ":owner", "token");
+
+        String roomId = allocator(0).allocate("Mine");
+
+        assertThat(roomId).isEqualTo(upcoming.get(3));
+        assertThat(redis).containsEntry("room:" + roomId + ":name", "Mine")
+                .containsEntry("room:" + upcoming.get(0) + ":name", "First")
+                .doesNotContainKey("room:" + upcoming.get(1) + ":name")
+                .doesNotContainKey("room:" + upcoming.get(2) + ":name");
+    }
+
+    @Test
+    void givesUpInsteadOfOverwriting() {
+        for (String id : upcomingIds(RoomIdAllocator.MAX_ATTEMPTS)) redis.put("room:" + id + ":seq", "7");
+
+        assertThatThrownBy(() -> allocator(0).allocate("Mine")).isInstanceOf(IllegalStateException.class);
+        assertThat(redis.keySet()).noneMatch(key -> key.endsWith(":name"));
+    }
+
+    @Test
+    void pooledIdsSkipExistingRoomsAndNeedNoCheck() {
+        List<String> upcoming = upcomingIds(10);
+        redis.put("room:" + upcoming.get(2) + ":name", "Taken");
+        RoomIdAllocator allocator = allocator(5);
+
+        allocator.refill();
+
+        assertThat(allocator.stats()).containsEntry("pooled", 5).containsEntry("collisions", 1L);
+        assertThat(redis).containsEntry("room:" + upcoming.get(0) + ":name", RoomIdAllocator.RESERVED);
+
+        String roomId = allocator.allocate("Mine");
+        assertThat(roomId).isEqualTo(upcoming.get(0));
+        assertThat(redis).containsEntry("room:" + roomId + ":name", "Mine")
+                .containsEntry("room:" + upcoming.get(2) + ":name", "Taken");
+        assertThat(allocator.stats()).containsEntry("poolHits", 1L);
+    }
+
+    private RoomIdAllocator allocator(int poolSize) {
+        return new RoomIdAllocator(template, poolSize, 100, new RandomGenerator[]{new SplittableRandom(SEED)});
+    }
+
+    // Same seed: the IDs a fresh allocator draws, in order
+    private List<String> upcomingIds(int count) {
+        RoomIdAllocator twin = new RoomIdAllocator(null, 0, 100, new RandomGenerator[]{new SplittableRandom(SEED)});
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) ids.add(twin.generateRoomId());
+        return ids;
+    }
+}
@@ -0,0 +1,55 @@
+package com.anonchat.backend.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomMessageRatesTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RoomMessageRates rates = new RoomMessageRates(registry, 2, 10_000);
+
+    @AfterEach
+    void tearDown() {
+        rates.shutdown();
+    }
+
+    @Test
+    void publishesOnlyTheBusiestRooms() {
+        record("quiet", 5);
+        record("busy", 300);
+        record("busier", 600);
+
+        rates.publish();
+
+        assertThat(registry.find("anonchat.room.messages.rate").gauges()).hasSize(2);
+        assertThat(rate("busier")).isEqualTo(60.0);
+        assertThat(rate("busy")).isEqualTo(30.0);
+        assertThat(registry.find("anonchat.room.messages.rate").tag("room", "quiet").gauge()).isNull();
+    }
+
+    @Test
+    void replacesRoomsThatWentQuiet() {
+        record("busy", 300);
+        rates.publish();
+
+        record("other", 10);
+        rates.publish();
+
+        assertThat(registry.find("anonchat.room.messages.rate").tag("room", "busy").gauge()).isNull();
+        assertThat(rate("other")).isEqualTo(1.0);
+    }
+
+    private void record(String roomId, int messages) {
+        for (int i = 0; i < messages; i++) rates.record(roomId);
+    }
+
+    private double rate(String roomId) {
+        Gauge gauge = registry.find("anonchat.room.messages.rate").tag("room", roomId).gauge();
+        assertThat(gauge).isNotNull();
+        return gauge.value();
+    }
+}
@@ -0,0 +1,138 @@
+package com.anonchat.backend.service;
+
+import com.anonchat.backend.service.RoomMetadataCache.Field;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoomMetadataCacheTests {
+
+    private final RoomMetadataCache cache = new RoomMetadataCache(null, null, true, 3, 30_000, 500, false, "", 0);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void bypassesUntilNotificationsArrive() {
+        assertThat(load("r1", Field.NAME, "Lobby")).isEqualTo("Lobby");
+        assertThat(load("r1", Field.NAME, "Lobby")).isEqualTo("Lobby");
+        assertThat(loads).hasValue(2);
+        assertThat(cache.stats()).containsEntry("live", false).containsEntry("bypasses", 2L);
+    }
+
+    @Test
+    void startsWithoutRedisAndBypasses() throws InterruptedException {
+        RedisConnectionFactory unreachable = mock(RedisConnectionFactory.class);
+        when(unreachable.getConnection()).thenThrow(new RedisConnectionFailureException("Connection refused"));
+        RoomMetadataCache down = new RoomMetadataCache(unreachable, null, true, 3, 30_000, 100, false,
+                RoomMetadataCache.REQUIRED_EVENTS, 0);
+        try {
+            down.start();
+            Thread.sleep(250);      // A few probes, each trying to subscribe
+
+            assertThat(down.isLive()).isFalse();
+            assertThat(down.get("r1", Field.NAME, () -> "Lobby")).isEqualTo("Lobby");
+            assertThat(down.stats()).containsEntry("bypasses", 1L);
+        } finally {
+            down.shutdown();
+        }
+    }
+
+    @Test
+    void servesRepeatReadsFromMemory() {
+        cache.probeReceived();
+
+        load("r1", Field.NAME, "Lobby");
+        assertThat(load("r1", Field.NAME, "Other")).isEqualTo("Lobby");
+        assertThat(loads).hasValue(1);
+        assertThat(cache.stats()).containsEntry("hits", 1L).containsEntry("misses", 1L).containsEntry("hitRate", 0.5);
+    }
+
+    @Test
+    void cachesAbsence() {
+        cache.probeReceived();
+
+        assertThat(load("r1", Field.DELETING, null)).isNull();
+        assertThat(load("r1", Field.DELETING, "true")).isNull();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void keyspaceNotificationInvalidates() {
+        cache.probeReceived();
+        load("r1", Field.OWNER, "hash-a");
+
+        cache.onMessage(notification("room:r1:owner", "del"), null);
+
+        assertThat(load("r1", Field.OWNER, "hash-b")).isEqualTo("hash-b");
+        assertThat(cache.stats()).containsEntry("invalidations", 1L);
+    }
+
+    @Test
+    void loadRacingAnInvalidationIsNotStored() {
+        cache.probeReceived();
+
+        String stale = cache.get("r1", Field.NAME, () -> {
+            // The name changes in Redis after this node read it, before the read returns
+            cache.onMessage(notification("room:r1:name", "set"), null);
+            return "Old";
+        });
+
+        assertThat(stale).isEqualTo("Old");
+        assertThat(load("r1", Field.NAME, "New")).isEqualTo("New");
+    }
+
+    @Test
+    void localWriteInvalidates() {
+        cache.probeReceived();
+        load("r1", Field.DELETING, null);
+
+        cache.invalidate("r1", Field.DELETING);
+
+        assertThat(load("r1", Field.DELETING, "true")).isEqualTo("true");
+    }
+
+    @Test
+    void staysBounded() {
+        cache.probeReceived();
+        for (int i = 0; i < 10; i++) load("r" + i, Field.NAME, "Room " + i);
+
+        assertThat(cache.stats()).containsEntry("entries", 3).containsEntry("evictions", 7L);
+    }
+
+    @Test
+    void ownerTokensAreComparedByHash() {
+        String hash = RoomMetadataCache.tokenHash("secret");
+
+        assertThat(hash).isNotEqualTo("secret").hasSize(64);
+        assertThat(RoomMetadataCache.tokenMatches(hash, "secret")).isTrue();
+        assertThat(RoomMetadataCache.tokenMatches(hash, "guess")).isFalse();
+        assertThat(RoomMetadataCache.tokenMatches(null, "secret")).isFalse();
+    }
+
+    @Test
+    void addsOnlyMissingEventFlags() {
+        assertThat(RoomMetadataCache.mergeEventFlags("", "Kg$x")).isEqualTo("Kg$x");
+        assertThat(RoomMetadataCache.mergeEventFlags("Ex", "Kg$x")).isEqualTo("ExKg$");
+        assertThat(RoomMetadataCache.mergeEventFlags("AK", "Kg$x")).isEqualTo("AK");
+        assertThat(RoomMetadataCache.mergeEventFlags("AE", "Kg$x")).isEqualTo("AEK");
+    }
+
+    private String load(String roomId, Field field, String value) {
+        return cache.get(roomId, field, () -> {
+            loads.incrementAndGet();
+            return value;
+        });
+    }
+
+    private static DefaultMessage notification(String key, String event) {
+        return new DefaultMessage(("__keyspace@0__:" + key).getBytes(StandardCharsets.UTF_8),
+                event.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,64 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoomPurgerTests {
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, String> template = mock(RedisTemplate.class);
+    private final List<List<String>> calls = new ArrayList<>();
+    private final RoomPurger purger = new RoomPurger(template);
+
+    RoomPurgerTests() {
+        when(template.execute(any(RedisScript.class), anyList(), any(), any())).thenAnswer(inv -> {
+            List<String> keys = inv.getArgument(1);
+            calls.add(List.copyOf(keys));
+            assertThat((String) inv.getArgument(2)).isEqualTo(Long.toString(RoomPurger.TOMBSTONE_TTL.toMillis()));
+            assertThat((String) inv.getArgument(3)).isEqualTo(Integer.toString(RoomPurger.SUFFIXES.length));
+            return (long) keys.size();
+        });
+    }
+
+    @Test
+    void deletesEveryKeyOfARoomInOneCall() {
+        purger.purge(List.of("abc123"));
+
+        assertThat(calls).containsExactly(RoomPurger.keysOf("abc123"));
+        assertThat(RoomPurger.keysOf("abc123")).startsWith("room:abc123:deleting")
+                .contains("room:abc123", "room:abc123:seq", "room:abc123:stream", "room:abc123:gen",
+                        "room:abc123:name", "room:abc123:owner");
+    }
+
+    @Test
+    void batchesManyRooms() {
+        List<String> roomIds = new ArrayList<>();
+        for (int i = 0; i < RoomPurger.BATCH_SIZE * 2 + 5; i++) roomIds.add("room" + i);
+
+        long removed = purger.purge(roomIds);
+
+        assertThat(calls).extracting(List::size).containsExactly(
+                RoomPurger.BATCH_SIZE * RoomPurger.SUFFIXES.length,
+                RoomPurger.BATCH_SIZE * RoomPurger.SUFFIXES.length,
+                5 * RoomPurger.SUFFIXES.length);
+        assertThat(removed).isEqualTo((long) roomIds.size() * RoomPurger.SUFFIXES.length);
+    }
+
+    @Test
+    void roomIdsAreReadFromKeys() {
+        assertThat(RoomReaper.roomIdOf("room:abc123")).isEqualTo("abc123");
+        assertThat(RoomReaper.roomIdOf("room:abc123:seq")).isEqualTo("abc123");
+        assertThat(RoomReaper.roomIdOf("room:")).isNull();
+        assertThat(RoomReaper.roomIdOf("presence:nodes")).isNull();
+    }
+}
@@ -0,0 +1,131 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Reaper passes over a real Redis (in a container; skipped without Docker), with batches small enough that a
+ * room's keys are split across them.
+ */
+class RoomReaperTests {
+
+    private static GenericContainer<?> redis;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate template;
+
+    private PresenceService presence;
+    private RoomReaper reaper;
+
+    @BeforeAll
+    static void startRedis() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Needs Docker for a real Redis");
+
+        redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (connectionFactory != null) connectionFactory.destroy();
+        if (redis != null) redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        template.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+        presence = new PresenceService(template, 100, 300);
+        reaper = new RoomReaper(template, presence, false, 60_000, 3, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (reaper != null) reaper.shutdown();
+        if (presence != null) presence.shutdown();
+    }
+
+    @Test
+    void leftoverCountsAreRemoved() throws InterruptedException {
+        template.opsForValue().set("room:r1:count", "2");
+        template.opsForValue().set("room:r1:name", "Lobby", ChatService.ROOM_TTL);
+
+        reaper.pass();
+
+        assertThat(template.hasKey("room:r1:count")).isFalse();
+        assertThat(template.hasKey("room:r1:name")).isTrue();
+        assertThat(reaper.stats()).containsEntry("obsoleteRemoved", 1L);
+    }
+
+    @Test
+    void historyWithNoNameOwnerOrMembersIsRemoved() throws InterruptedException {
+        history("gone");
+        history("named");
+        template.opsForValue().set("room:named:name", "Lobby", ChatService.ROOM_TTL);
+        history("owned");
+        template.opsForValue().set("room:owned:owner", "token", ChatService.ROOM_TTL);
+        history("occupied");
+        presence.heartbeat();
+        presence.join("occupied", "s1", "alice");
+
+        reaper.pass();
+
+        assertThat(template.keys("room:gone*")).isEmpty();
+        assertThat(template.keys("room:named*")).hasSize(5);
+        assertThat(template.keys("room:owned*")).hasSize(5);
+        assertThat(template.keys("room:occupied*")).hasSize(4);
+        assertThat(reaper.stats()).containsEntry("orphansRemoved", 4L);
+    }
+
+    @Test
+    void keysKeptGetTheRoomTtl() throws InterruptedException {
+        // A counter whose messages were never written, in a room that still has its name
+        template.opsForValue().set("room:r1:seq", "3");
+        template.opsForValue().set("room:r1:name", "Lobby", ChatService.ROOM_TTL);
+
+        reaper.pass();
+
+        assertThat(template.getExpire("room:r1:seq")).isPositive();
+        assertThat(reaper.stats()).containsEntry("expiriesSet", 1L).containsEntry("orphansRemoved", 0L);
+    }
+
+    @Test
+    void keysFromOutsideTheBatchAreNotCountedAsOrphans() {
+        history("r1");
+        template.opsForValue().set("room:r1:name", "Lobby", ChatService.ROOM_TTL);
+
+        // The name is not in this batch, but it exists
+        reaper.reap(List.of("room:r1", "room:r1:seq"));
+
+        assertThat(template.hasKey("room:r1")).isTrue();
+        assertThat(template.hasKey("room:r1:seq")).isTrue();
+    }
+
+    // A room's message keys as the history append leaves them, without their TTL
+    private static void history(String roomId) {
+        template.opsForList().rightPush("room:" + roomId, "{\"seq\":1}");
+        template.opsForValue().set("room:" + roomId + ":seq", "1");
+        template.opsForValue().set("room:" + roomId + ":stream", "x");
+        template.opsForValue().set("room:" + roomId + ":gen", "1", Duration.ofHours(1));
+    }
+}
@@ -0,0 +1,111 @@
+package com.anonchat.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SequenceLeasesTests {
+
+    private final HistoryStore historyStore = mock(HistoryStore.class);
+    // The room counter in Redis, shared with "other nodes"
+    private final AtomicLong counter = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        when(historyStore.allocateSequences(eq("r1"), anyInt()))
+                .thenAnswer(call -> counter.addAndGet(call.getArgument(1, Integer.class)));
+    }
+
+    @Test
+    void busyRoomLeasesGrowingBlocks() {
+        SequenceLeases leases = new SequenceLeases(historyStore, 8, 60_000, "simple");
+
+        List<Long> numbers = new ArrayList<>();
+        for (int i = 0; i < 23; i++) numbers.add(take(leases));
+
+        // Blocks of 1, 2, 4, 8, 8: one round trip per block, no number skipped
+        assertThat(numbers).isSorted().doesNotHaveDuplicates().startsWith(1L).endsWith(23L);
+        verify(historyStore, times(5)).allocateSequences(eq("r1"), anyInt());
+        assertThat(leases.stats()).containsEntry("blocks", 5L).containsEntry("numbers", 23L);
+    }
+
+    @Test
+    void usedUpBlockIsNotHandedOutFurther() {
+        SequenceLeases leases = new SequenceLeases(historyStore, 8, 60_000, "simple");
+
+        assertThat(leases.next("r1")).isZero();
+        assertThat(leases.ensure("r1")).isEqualTo(new SequenceLeases.Block(1, 1));
+        assertThat(leases.ensure("r1")).isNull();
+        assertThat(leases.next("r1")).isEqualTo(1);
+        assertThat(leases.next("r1")).isZero();
+    }
+
+    @Test
+    void expiredBlockIsSkippedAndTheNextOneHalves() throws InterruptedException {
+        SequenceLeases leases = new SequenceLeases(historyStore, 8, 500, "simple");
+        for (int i = 0; i < 8; i++) take(leases);     // Blocks of 1, 2, 4, then 8 of 8..15
+        Thread.sleep(600);                            // Nothing is sent for a while
+
+        // Read first, asserted after: the new block must not expire on the way
+        long expired = leases.next("r1");
+        SequenceLeases.Block block = leases.ensure("r1");
+        long seq = leases.next("r1");
+
+        assertThat(expired).isZero();
+        assertThat(block).isEqualTo(new SequenceLeases.Block(16, 19));
+        assertThat(seq).isEqualTo(16);
+    }
+
+    @Test
+    void unusedTailIsLeftOutOfTheLatestNumber() {
+        SequenceLeases leases = new SequenceLeases(historyStore, 8, 60_000, "simple");
+        for (int i = 0; i < 3; i++) take(leases);     // 1, then 2..3
+        take(leases);                                 // 4 of 4..7
+
+        assertThat(leases.lastUsed("r1", 7)).isEqualTo(4);
+        // Another node numbered after our block: 5..7 may still be skipped, but 8 and 9 may be messages
+        counter.addAndGet(2);
+        assertThat(leases.lastUsed("r1", 9)).isEqualTo(9);
+        // Rooms this node never numbered in are taken as they are
+        assertThat(leases.lastUsed("r2", 12)).isEqualTo(12);
+    }
+
+    @Test
+    void blockAfterAnotherNodesNumbersCountsThemAsUsed() {
+        SequenceLeases leases = new SequenceLeases(historyStore, 1, 60_000, "simple");
+        take(leases);
+        counter.addAndGet(3);                         // 2..4 went elsewhere
+
+        assertThat(take(leases)).isEqualTo(5);
+        leases.ensure("r1");                          // 6, not used yet
+        assertThat(leases.lastUsed("r1", 6)).isEqualTo(5);
+    }
+
+    @Test
+    void redisBrokerModeLeasesOneNumberAtATime() {
+        SequenceLeases leases = new SequenceLeases(historyStore, 8, 60_000, "redis");
+
+        List<Long> numbers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) numbers.add(take(leases));
+
+        assertThat(numbers).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(leases.consecutive()).isTrue();
+        verify(historyStore, times(5)).allocateSequences("r1", 1);
+    }
+
+    private static long take(SequenceLeases leases) {
+        while (true) {
+            leases.ensure("r1");
+            long seq = leases.next("r1");
+            if (seq > 0) return seq;
+        }
+    }
+}